@@ -0,0 +1,627 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The Aggregation class holds one parsed aggregation query, which summarizes groups of features instead of listing them:
+ * count by GROUPS counts the features of every group, and stats elev by GROUPS also gives their lowest, highest and
+ * average elevation. GROUPS is one or more of state, county and class separated by commas, and the features of a group
+ * have the same values in those columns. Like a Query, an aggregation can be followed by class CLASS, state STATE and
+ * elev MIN MAX, in any order, to only summarize the features that pass these restrictions.
+ *
+ * An aggregation runs in parallel over the rows of a FeatureStore: the smallest source of rows (every row, the posting
+ * lists of the selected classes or states, or the slice of the elevation index) is split into one chunk per processor,
+ * every chunk is summarized into its own partial table, and the partial tables are merged at the end. A group is
+ * numbered by the dictionary ordinals of its values, and a partial table keeps the count, sum, lowest and highest
+ * elevation of its groups in primitive arrays, so nothing is created per row.
+ * An OffHeapStore is summarized the same way, in chunks of all of its records, reading the ordinals from the records.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class Aggregation {
+
+	//columns the features can be grouped by
+	private static final List<String> COLUMNS = Arrays.asList("state", "county", "class");
+
+	//smallest number of rows given to a chunk
+	private static final int MIN_CHUNK = 1 << 14;
+
+	//groups numbered densely up to this many, hashed above
+	private static final int DENSE_GROUPS = 1 << 14;
+
+	private boolean stats;
+	private String[] groups;
+	private String featureClass;
+	private String state;
+	private boolean elevationRestricted;
+	private int minElevation = Integer.MIN_VALUE;
+	private int maxElevation = Integer.MAX_VALUE;
+
+	/**
+	 * Constructs an empty Aggregation, the values are set by parse
+	 */
+	private Aggregation() {
+	}
+
+	/**
+	 * Checks whether the words start an aggregation rather than a query
+	 * @param words, array of the words split by spaces and trimmed
+	 * @return true if the first word is count or stats, false otherwise
+	 */
+	public static boolean isAggregation(String[] words) {
+		return words != null && words.length > 0 && (words[0].equals("count") || words[0].equals("stats"));
+	}
+
+	/**
+	 * Parses the words of an aggregation of the form count by GROUPS or stats elev by GROUPS,
+	 * optionally followed by [class CLASS] [state STATE] [elev MIN MAX] in any order
+	 * @param words, array of the words split by spaces and trimmed
+	 * @return the aggregation
+	 * @throws IllegalArgumentException if the words are not a valid aggregation
+	 */
+	public static Aggregation parse(String[] words) throws IllegalArgumentException {
+
+		if (!isAggregation(words)) {
+			throw new IllegalArgumentException("Unknown Aggregation");
+		}
+
+		Aggregation aggregation = new Aggregation();
+		aggregation.stats = words[0].equals("stats");
+		int by = 1;
+		if (aggregation.stats) {
+			if (words.length < 2 || !words[1].equals("elev")) {
+				throw new IllegalArgumentException("Aggregated Column Input is Illegal");
+			}
+			by = 2;
+		}
+		if (words.length < by + 2 || !words[by].equals("by")) {
+			throw new IllegalArgumentException("Wrong Number of Words in Aggregation");
+		}
+
+		//every column can be grouped by once
+		aggregation.groups = words[by + 1].split(",", -1);
+		for (int i = 0; i < aggregation.groups.length; i++) {
+			if (!COLUMNS.contains(aggregation.groups[i])
+					|| Arrays.asList(aggregation.groups).subList(0, i).contains(aggregation.groups[i])) {
+				throw new IllegalArgumentException("Group Input is Illegal");
+			}
+		}
+
+		//each restriction can be given once, elev takes two numbers and the others one word
+		for (int i = by + 2; i < words.length; i += 2) {
+			if (i + 1 >= words.length) {
+				throw new IllegalArgumentException("Wrong Number of Words in Aggregation");
+			}
+			if (words[i].equals("elev") && !aggregation.elevationRestricted) {
+				if (i + 2 >= words.length || !words[i + 1].matches("-?[0-9]{1,9}") || !words[i + 2].matches("-?[0-9]{1,9}")
+						|| Integer.parseInt(words[i + 1]) > Integer.parseInt(words[i + 2])) {
+					throw new IllegalArgumentException("Elevation Input is Illegal");
+				}
+				aggregation.elevationRestricted = true;
+				aggregation.minElevation = Integer.parseInt(words[i + 1]);
+				aggregation.maxElevation = Integer.parseInt(words[i + 2]);
+				i++;
+			}
+			else if (words[i].equals("class") && aggregation.featureClass == null) {
+				aggregation.featureClass = words[i + 1];
+			}
+			else if (words[i].equals("state") && aggregation.state == null) {
+				aggregation.state = words[i + 1];
+			}
+			else {
+				throw new IllegalArgumentException("Restriction Input is Illegal");
+			}
+		}
+		return aggregation;
+	}
+
+	/**
+	 * Checks whether the aggregation gives the elevations of the groups
+	 * @return true for stats elev, false for count
+	 */
+	public boolean isStats() {
+		return stats;
+	}
+
+	/**
+	 * Returns the columns the features are grouped by
+	 * @return the column names, each of state, county and class, in the order they were given
+	 */
+	public String[] getGroups() {
+		return groups.clone();
+	}
+
+	/**
+	 * Returns the class restriction
+	 * @return the keyword the class has to contain, or null if the aggregation is not restricted by class
+	 */
+	public String getFeatureClass() {
+		return featureClass;
+	}
+
+	/**
+	 * Returns the state restriction
+	 * @return the state, or null if the aggregation is not restricted by state
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * Checks whether the aggregation is restricted to an elevation range
+	 * @return true if the features have to be in the range of getMinElevation and getMaxElevation, false otherwise
+	 */
+	public boolean isElevationRestricted() {
+		return elevationRestricted;
+	}
+
+	/**
+	 * Returns the lowest elevation of the elevation range
+	 * @return the lowest elevation (inclusive), Integer.MIN_VALUE if the aggregation has no range
+	 */
+	public int getMinElevation() {
+		return minElevation;
+	}
+
+	/**
+	 * Returns the highest elevation of the elevation range
+	 * @return the highest elevation (inclusive), Integer.MAX_VALUE if the aggregation has no range
+	 */
+	public int getMaxElevation() {
+		return maxElevation;
+	}
+
+	/**
+	 * Summarizes the rows of a store
+	 * @param store, the store
+	 * @param deleted, the rows of the store that were removed, or null if there are none
+	 * @return the groups with at least one feature, in no particular order
+	 * @throws IllegalArgumentException if the store is null or the groups cannot be numbered with a long
+	 */
+	public List<Group> run(FeatureStore store, BitSet deleted) throws IllegalArgumentException {
+
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in Aggregation");
+		}
+
+		//a group is numbered by the ordinals of its values, one digit per column
+		Dictionary[] dictionaries = new Dictionary[groups.length];
+		int[][] ordinals = new int[groups.length][];
+		for (int k = 0; k < groups.length; k++) {
+			DictionaryColumn column = column(store, groups[k]);
+			dictionaries[k] = column.getDictionary();
+			ordinals[k] = column.ordinals();
+		}
+		long[] multipliers = new long[groups.length];
+		long total = number(dictionaries, multipliers);
+
+		//the restrictions are checked as ordinals and elevations like a QueryPlan does
+		DictionaryColumn classes = store.getIndex().getClasses();
+		DictionaryColumn states = store.getIndex().getStates();
+		boolean[] classMatch = (featureClass == null) ? null : classes.getDictionary().matchContaining(featureClass);
+		boolean[] stateMatch = (state == null) ? null : states.getDictionary().matchIgnoreCase(state);
+
+		//the rows come from the smallest source, null stands for every row
+		int[] source = null;
+		int length = store.size();
+		if (classMatch != null && classes.count(classMatch) < length) {
+			length = classes.count(classMatch);
+			source = classes.rows(classMatch);
+		}
+		if (stateMatch != null && states.count(stateMatch) < length) {
+			length = states.count(stateMatch);
+			source = states.rows(stateMatch);
+		}
+		if (elevationRestricted && store.getElevationIndex().count(minElevation, maxElevation) < length) {
+			length = store.getElevationIndex().count(minElevation, maxElevation);
+			source = store.getElevationIndex().rows(minElevation, maxElevation);
+		}
+		if (length == 0) {
+			return new ArrayList<Group>();
+		}
+
+		//one chunk per processor, each summarized into its own table, merged when the chunks are done
+		int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_CHUNK));
+		long groupCount = total;
+		int[] rows = source;
+		int size = length;
+		Partial partial = IntStream.range(0, chunks).parallel()
+				.mapToObj(chunk -> aggregate(store, deleted, rows, (int) ((long) size * chunk / chunks),
+						(int) ((long) size * (chunk + 1) / chunks), ordinals, multipliers, classMatch, stateMatch, groupCount))
+				.reduce(Partial::merge).get();
+
+		return groups(partial, dictionaries, multipliers);
+	}
+
+	/**
+	 * Summarizes the records of an off-heap store. The store has no posting lists or elevation index,
+	 * so the restrictions are checked on every record while the records are split into chunks.
+	 * @param store, the store
+	 * @return the groups with at least one feature, in no particular order
+	 * @throws IllegalArgumentException if the store is null or the groups cannot be numbered with a long
+	 */
+	public List<Group> run(OffHeapStore store) throws IllegalArgumentException {
+
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in Aggregation");
+		}
+
+		//the ordinals of a group are read from the fields of the record
+		Dictionary[] dictionaries = new Dictionary[groups.length];
+		int[] fields = new int[groups.length];
+		for (int k = 0; k < groups.length; k++) {
+			dictionaries[k] = groups[k].equals("state") ? store.getStates()
+					: groups[k].equals("class") ? store.getClasses() : store.getCounties();
+			fields[k] = groups[k].equals("state") ? OffHeapStore.STATE
+					: groups[k].equals("class") ? OffHeapStore.CLASS : OffHeapStore.COUNTY;
+		}
+		long[] multipliers = new long[groups.length];
+		long total = number(dictionaries, multipliers);
+		if (store.size() == 0) {
+			return new ArrayList<Group>();
+		}
+
+		boolean[] classMatch = (featureClass == null) ? null : store.getClasses().matchContaining(featureClass);
+		boolean[] stateMatch = (state == null) ? null : store.getStates().matchIgnoreCase(state);
+		int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), store.size() / MIN_CHUNK));
+		int size = store.size();
+		Partial partial = IntStream.range(0, chunks).parallel()
+				.mapToObj(chunk -> aggregate(store, (int) ((long) size * chunk / chunks), (int) ((long) size * (chunk + 1) / chunks),
+						fields, multipliers, classMatch, stateMatch, total))
+				.reduce(Partial::merge).get();
+		return groups(partial, dictionaries, multipliers);
+	}
+
+	/**
+	 * Merges the groups with the same values, for example the groups of several segments, and sorts them
+	 * @param groups, the groups, which are not changed
+	 * @return the groups with distinct values, ordered by their values compared ignoring case one column after another
+	 */
+	public static List<Group> combine(List<Group> groups) {
+		HashMap<List<String>, Group> merged = new HashMap<List<String>, Group>();
+		for (Group group : groups) {
+			merged.merge(Arrays.asList(group.values), group, Group::merge);
+		}
+		ArrayList<Group> result = new ArrayList<Group>(merged.values());
+		result.sort(Group::compareTo);
+		return result;
+	}
+
+	/**
+	 * Writes this aggregation in a normal form: lower case restrictions in the order class, state, elev.
+	 * Aggregations with the same normal form summarize the same features.
+	 * @return the normalized aggregation
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(stats ? "stats elev" : "count");
+		text.append(" by ").append(String.join(",", groups));
+		if (featureClass != null) {
+			text.append(" class ").append(featureClass.toLowerCase());
+		}
+		if (state != null) {
+			text.append(" state ").append(state.toLowerCase());
+		}
+		if (elevationRestricted) {
+			text.append(" elev ").append(minElevation).append(' ').append(maxElevation);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the dictionary encoded column of a store with the given name
+	 */
+	private static DictionaryColumn column(FeatureStore store, String name) {
+		if (name.equals("state")) {
+			return store.getIndex().getStates();
+		}
+		if (name.equals("class")) {
+			return store.getIndex().getClasses();
+		}
+		return store.getCounties();
+	}
+
+	/**
+	 * Sets the multiplier of the ordinals of every grouped column, the last column counting by ones
+	 * @return the number of possible groups
+	 * @throws IllegalArgumentException if the groups cannot be numbered with a long
+	 */
+	private static long number(Dictionary[] dictionaries, long[] multipliers) throws IllegalArgumentException {
+		long total = 1;
+		for (int k = dictionaries.length - 1; k >= 0; k--) {
+			multipliers[k] = total;
+			try {
+				total = Math.multiplyExact(total, Math.max(1, dictionaries[k].size()));
+			}
+			catch (ArithmeticException e) {
+				throw new IllegalArgumentException("Too Many Groups in Aggregation");
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Creates the groups of a merged table, only the groups that were found get their values
+	 */
+	private static List<Group> groups(Partial partial, Dictionary[] dictionaries, long[] multipliers) {
+		ArrayList<Group> found = new ArrayList<Group>();
+		for (int slot = 0; slot < partial.capacity(); slot++) {
+			if (partial.counts[slot] > 0) {
+				long key = partial.key(slot);
+				String[] values = new String[dictionaries.length];
+				for (int k = 0; k < dictionaries.length; k++) {
+					int radix = Math.max(1, dictionaries[k].size());
+					values[k] = dictionaries[k].get((int) (key / multipliers[k] % radix));
+				}
+				found.add(new Group(values, partial.counts[slot], partial.sums[slot], partial.mins[slot], partial.maxs[slot]));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Summarizes the rows in source[from..to), or the rows from to to when source is null, into a new partial table
+	 */
+	private Partial aggregate(FeatureStore store, BitSet deleted, int[] source, int from, int to, int[][] ordinals,
+			long[] multipliers, boolean[] classMatch, boolean[] stateMatch, long groupCount) {
+		int[] classOrdinals = store.getIndex().getClasses().ordinals();
+		int[] stateOrdinals = store.getIndex().getStates().ordinals();
+		Partial partial = new Partial(groupCount);
+		for (int i = from; i < to; i++) {
+			int row = (source == null) ? i : source[i];
+			int elevation = store.getElevation(row);
+			if ((classMatch != null && !classMatch[classOrdinals[row]])
+					|| (stateMatch != null && !stateMatch[stateOrdinals[row]])
+					|| (elevationRestricted && (elevation < minElevation || elevation > maxElevation))
+					|| (deleted != null && deleted.get(row))) {
+				continue;
+			}
+			long key = 0;
+			for (int k = 0; k < ordinals.length; k++) {
+				key += ordinals[k][row] * multipliers[k];
+			}
+			partial.add(key, 1, elevation, elevation, elevation);
+		}
+		return partial;
+	}
+
+	/**
+	 * Summarizes the records of rows from..to of an off-heap store into a new partial table
+	 */
+	private Partial aggregate(OffHeapStore store, int from, int to, int[] fields, long[] multipliers,
+			boolean[] classMatch, boolean[] stateMatch, long groupCount) {
+		Partial partial = new Partial(groupCount);
+		for (int row = from; row < to; row++) {
+			int elevation = store.getElevation(row);
+			if ((classMatch != null && !classMatch[store.ordinal(row, OffHeapStore.CLASS)])
+					|| (stateMatch != null && !stateMatch[store.ordinal(row, OffHeapStore.STATE)])
+					|| (elevationRestricted && (elevation < minElevation || elevation > maxElevation))) {
+				continue;
+			}
+			long key = 0;
+			for (int k = 0; k < fields.length; k++) {
+				key += store.ordinal(row, fields[k]) * multipliers[k];
+			}
+			partial.add(key, 1, elevation, elevation, elevation);
+		}
+		return partial;
+	}
+
+	/**
+	 * The Partial class is the summary of the rows of one chunk: the count, sum, lowest and highest elevation
+	 * of every group. When there are few groups the number of a group is its slot, otherwise the groups are
+	 * kept in an open addressing hash table that grows when it is half full.
+	 */
+	private static class Partial {
+
+		private boolean dense;
+		private long[] keys;
+		private long[] counts;
+		private long[] sums;
+		private int[] mins;
+		private int[] maxs;
+		private int used;
+
+		/**
+		 * Constructs an empty Partial for the given number of possible groups
+		 */
+		private Partial(long groupCount) {
+			dense = groupCount <= DENSE_GROUPS;
+			allocate(dense ? (int) groupCount : 64);
+		}
+
+		/**
+		 * Returns the number of slots, some of which may be empty
+		 */
+		private int capacity() {
+			return counts.length;
+		}
+
+		/**
+		 * Returns the number of the group in a slot that is not empty
+		 */
+		private long key(int slot) {
+			return dense ? slot : keys[slot];
+		}
+
+		/**
+		 * Adds rows to a group
+		 */
+		private void add(long key, long count, long sum, int min, int max) {
+			int slot = dense ? (int) key : slot(key);
+			if (counts[slot] == 0) {
+				mins[slot] = min;
+				maxs[slot] = max;
+			}
+			else {
+				mins[slot] = Math.min(mins[slot], min);
+				maxs[slot] = Math.max(maxs[slot], max);
+			}
+			counts[slot] += count;
+			sums[slot] += sum;
+		}
+
+		/**
+		 * Adds the groups of another table to this one
+		 * @return this table
+		 */
+		private Partial merge(Partial other) {
+			for (int slot = 0; slot < other.capacity(); slot++) {
+				if (other.counts[slot] > 0) {
+					add(other.key(slot), other.counts[slot], other.sums[slot], other.mins[slot], other.maxs[slot]);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Finds the slot of a group in the hash table, taking an empty one for a new group
+		 */
+		private int slot(long key) {
+			int mask = keys.length - 1;
+			int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (keys[slot] != key && keys[slot] != -1) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == -1) {
+				if (used * 2 >= keys.length) {
+					grow();
+					return slot(key);
+				}
+				keys[slot] = key;
+				used++;
+			}
+			return slot;
+		}
+
+		/**
+		 * Doubles the hash table, placing the groups again
+		 */
+		private void grow() {
+			long[] oldKeys = keys;
+			long[] oldCounts = counts;
+			long[] oldSums = sums;
+			int[] oldMins = mins;
+			int[] oldMaxs = maxs;
+			allocate(keys.length * 2);
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldKeys[slot] != -1) {
+					add(oldKeys[slot], oldCounts[slot], oldSums[slot], oldMins[slot], oldMaxs[slot]);
+				}
+			}
+		}
+
+		/**
+		 * Creates empty arrays with the given number of slots
+		 */
+		private void allocate(int capacity) {
+			counts = new long[capacity];
+			sums = new long[capacity];
+			mins = new int[capacity];
+			maxs = new int[capacity];
+			used = 0;
+			if (!dense) {
+				keys = new long[capacity];
+				Arrays.fill(keys, -1);
+			}
+		}
+	}
+
+	/**
+	 * The Group class is the summary of the features with the same values in the grouped columns.
+	 */
+	public static class Group implements Comparable<Group> {
+
+		private String[] values;
+		private long count;
+		private long sum;
+		private int min;
+		private int max;
+
+		/**
+		 * Constructs a Group
+		 * @param values, the values of the grouped columns
+		 * @param count, the number of features
+		 * @param sum, the sum of their elevations
+		 * @param min, the lowest elevation
+		 * @param max, the highest elevation
+		 */
+		public Group(String[] values, long count, long sum, int min, int max) {
+			this.values = values;
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * Returns the values of the grouped columns
+		 * @return the values, in the order of the columns of the aggregation
+		 */
+		public String[] getValues() {
+			return values.clone();
+		}
+
+		/**
+		 * Returns the number of features in this group
+		 * @return the number of features
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the lowest elevation of the features in this group
+		 * @return the lowest elevation
+		 */
+		public int getMinElevation() {
+			return min;
+		}
+
+		/**
+		 * Returns the highest elevation of the features in this group
+		 * @return the highest elevation
+		 */
+		public int getMaxElevation() {
+			return max;
+		}
+
+		/**
+		 * Returns the average elevation of the features in this group
+		 * @return the average elevation
+		 */
+		public double getAverageElevation() {
+			return (double) sum / count;
+		}
+
+		/**
+		 * Merges two groups with the same values
+		 * @return a new group holding the features of both
+		 */
+		private static Group merge(Group a, Group b) {
+			return new Group(a.values, a.count + b.count, a.sum + b.sum, Math.min(a.min, b.min), Math.max(a.max, b.max));
+		}
+
+		/**
+		 * Compares the values of two groups ignoring case one column after another, then with case
+		 * @param o, the other group
+		 * @return a negative number, zero or a positive number if this group comes before, with or after o
+		 */
+		@Override
+		public int compareTo(Group o) {
+			for (int k = 0; k < values.length; k++) {
+				int c = values[k].compareToIgnoreCase(o.values[k]);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return Arrays.compare(values, o.values);
+		}
+	}
+}
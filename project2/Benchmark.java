@@ -0,0 +1,444 @@
+package project2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The Benchmark class measures the load and query paths on a synthetic GNIS file (or any GNIS file) and writes the
+ * results as JSON, so runs on the same machine can be compared to find regressions.
+ *
+ * Every benchmark is an operation that is warmed up first, which also sets how many operations fill one iteration
+ * of about the given number of milliseconds, and then timed for the given number of iterations.
+ * The result of an operation is always used, so the work cannot be optimized away.
+ * A result holds the time per operation in milliseconds: the mean, lowest, highest and standard deviation over the
+ * iterations. Keyword operations cycle through a few keywords, from common to rare.
+ *
+ * The benchmarks are:
+ * load.parse, parsing the GNIS file into a FeatureStore as the program does without a snapshot;
+ * load.snapshot, reading the store from its snapshot; load.offheap, mapping the snapshot into an OffHeapStore;
+ * store.getByName, store.getByClass and store.getByState on the store;
+ * list.sortAdd, adding features one at a time in order to an empty FeatureList;
+ * chain.getBy, narrowing getByName with getByClass and getByState on the returned lists;
+ * chain.query, the same search as one parsed query run by FeatureStore.search.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class Benchmark {
+
+	//rows generated when no file is given
+	private static final int DEFAULT_ROWS = 1000000;
+
+	//features added by one list.sortAdd operation
+	private static final int SORT_ADD = 10000;
+
+	//keywords that are common in the real and the generated data, the first ones match the most features
+	private static final String[] NAMES = {"Creek", "Church", "Spring", "Oak", "Walnut"};
+	private static final String[] CLASSES = {"Stream", "School", "Summit", "Dam", "Island"};
+	private static final String[] STATES = {"TX", "CA", "KY", "VT", "DE"};
+	private static final String[] CHAINS = {"name Creek class Stream state TX", "name Church class Church state CA",
+			"name Spring class Spring state KY", "name Oak class School state VT"};
+
+	//results of the operations, summed so that their work is used
+	private static long sink = 0;
+
+	private int warmups;
+	private int iterations;
+	private long iterationNanos;
+	private ArrayList<Result> results = new ArrayList<Result>();
+
+	/**
+	 * The Operation interface is the work that is timed, it returns its result so the result can be used
+	 */
+	public interface Operation {
+		/**
+		 * Runs the operation once
+		 * @param i, the number of the run, for choosing a keyword
+		 * @return the result of the operation
+		 * @throws Exception if the operation fails
+		 */
+		Object run(int i) throws Exception;
+	}
+
+	/**
+	 * Constructs a Benchmark
+	 * @param warmups, the number of iterations that are run before the timed ones
+	 * @param iterations, the number of timed iterations
+	 * @param iterationMillis, about how long an iteration takes; an operation that takes longer is run once per iteration
+	 * @throws IllegalArgumentException if warmups is negative or iterations or iterationMillis is not positive
+	 */
+	public Benchmark(int warmups, int iterations, int iterationMillis) throws IllegalArgumentException {
+		if (warmups < 0 || iterations <= 0 || iterationMillis <= 0) {
+			throw new IllegalArgumentException("Iteration Input is Illegal");
+		}
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+
+	/**
+	 * Warms up and times an operation, and keeps its result
+	 * @param name, the name of the benchmark
+	 * @param operation, the operation
+	 * @return the result
+	 * @throws Exception if the operation fails
+	 */
+	public Result measure(String name, Operation operation) throws Exception {
+
+		//every warm up iteration sets the number of operations of the next one from its time
+		int operations = 1;
+		for (int i = 0; i < warmups; i++) {
+			long nanos = time(operation, operations);
+			operations = (int) Math.max(1, Math.min(1 << 24, (double) operations * iterationNanos / Math.max(1, nanos)));
+		}
+
+		double[] millis = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			millis[i] = time(operation, operations) / 1e6 / operations;
+		}
+		Result result = new Result(name, operations, millis);
+		results.add(result);
+		return result;
+	}
+
+	/**
+	 * Returns the results measured so far
+	 * @return the results, in the order they were measured
+	 */
+	public List<Result> getResults() {
+		return Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Writes the results as one JSON object with the settings of the run and one object per benchmark
+	 * @param out, where the JSON is written
+	 * @param rows, the number of rows of the file
+	 * @param file, the GNIS file
+	 * @param threads, the number of threads that parse the file
+	 * @throws IOException if writing fails
+	 */
+	public void writeJson(Writer out, int rows, String file, int threads) throws IOException {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"rows\": ").append(rows)
+			.append(",\n  \"file\": ").append(quote(file))
+			.append(",\n  \"threads\": ").append(threads)
+			.append(",\n  \"processors\": ").append(Runtime.getRuntime().availableProcessors())
+			.append(",\n  \"maxHeapMb\": ").append(Runtime.getRuntime().maxMemory() >> 20)
+			.append(",\n  \"java\": ").append(quote(System.getProperty("java.version")))
+			.append(",\n  \"warmups\": ").append(warmups)
+			.append(",\n  \"iterations\": ").append(iterations)
+			.append(",\n  \"unit\": \"ms/op\"")
+			.append(",\n  \"benchmarks\": [");
+		for (int i = 0; i < results.size(); i++) {
+			json.append((i == 0) ? "\n    " : ",\n    ").append(results.get(i).toJson());
+		}
+		json.append("\n  ]\n}\n");
+		out.write(json.toString());
+		out.flush();
+	}
+
+	/**
+	 * Runs the benchmarks and writes the results as JSON
+	 * @param args, the settings, any of -rows N to generate a file of N rows (1000000 by default),
+	 * -file FILE to measure an existing GNIS file instead, -seed N for the generated file (1 by default),
+	 * -warmup N and -iterations N (3 and 5 by default), -ms N for the length of an iteration (500 by default),
+	 * -threads N for the threads that parse the file (the number of processors by default),
+	 * and -out FILE to write the JSON to a file instead of the standard output
+	 */
+	public static void main(String[] args) {
+
+		int rows = DEFAULT_ROWS;
+		String fileName = null;
+		long seed = 1;
+		int warmups = 3;
+		int iterations = 5;
+		int millis = 500;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String outName = null;
+		for (int i = 0; i < args.length; i++) {
+			try {
+				if (args[i].equals("-rows") && i + 1 < args.length) {
+					rows = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-file") && i + 1 < args.length) {
+					fileName = args[++i];
+				}
+				else if (args[i].equals("-seed") && i + 1 < args.length) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (args[i].equals("-warmup") && i + 1 < args.length) {
+					warmups = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-iterations") && i + 1 < args.length) {
+					iterations = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-ms") && i + 1 < args.length) {
+					millis = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-threads") && i + 1 < args.length) {
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("-out") && i + 1 < args.length) {
+					outName = args[++i];
+				}
+				else {
+					System.err.println("Unknown option "+args[i]+"\n");
+					System.exit(1);
+				}
+			}
+			catch (NumberFormatException e) {
+				System.err.println("The value of "+args[i - 1]+" has to be an integer.\n");
+				System.exit(1);
+			}
+		}
+		if (rows < 1 || rows > GnisGenerator.MAX_ROWS) {
+			System.err.println("The number of rows has to be from 1 to "+GnisGenerator.MAX_ROWS+".\n");
+			System.exit(1);
+		}
+		if (threads < 1) {
+			System.err.println("The number of threads has to be a positive integer.\n");
+			System.exit(1);
+		}
+		threads = Math.min(threads, FeatureLoader.MAX_THREADS);
+
+		try {
+			Benchmark benchmark = new Benchmark(warmups, iterations, millis);
+			File file;
+			if (fileName == null) {
+				file = File.createTempFile("gnis", ".txt");
+				file.deleteOnExit();
+				System.err.println("Generating "+rows+" rows in "+file.getAbsolutePath());
+				new GnisGenerator(seed).write(file, rows);
+			}
+			else {
+				file = new File(fileName);
+			}
+			File snapshot = File.createTempFile("gnis", ".snapshot");
+			snapshot.deleteOnExit();
+
+			FeatureStore store = benchmark.run(file, snapshot, threads);
+			Writer out = (outName == null)
+					? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+					: new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outName), StandardCharsets.UTF_8));
+			benchmark.writeJson(out, store.size(), file.getAbsolutePath(), threads);
+			if (outName != null) {
+				out.close();
+			}
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage()+"\n");
+			System.exit(1);
+		}
+		catch (Exception e) {
+			System.err.println("The benchmark failed: "+e+"\n");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs every benchmark on a GNIS file, printing each result on the error stream as it is measured
+	 * @param file, the GNIS file
+	 * @param snapshot, the file the snapshot is written to
+	 * @param threads, the number of threads that parse the file
+	 * @return the store loaded from the file
+	 * @throws Exception if the file cannot be read or an operation fails
+	 */
+	public FeatureStore run(File file, File snapshot, int threads) throws Exception {
+
+		report(measure("load.parse", i -> FeatureSnapshot.load(file, null, threads)));
+		FeatureStore store = FeatureSnapshot.load(file, null, threads);
+		FeatureSnapshot.write(store, file, snapshot);
+		report(measure("load.snapshot", i -> FeatureSnapshot.read(snapshot)));
+		report(measure("load.offheap", i -> FeatureSnapshot.map(snapshot)));
+
+		report(measure("store.getByName", i -> store.getByName(NAMES[i % NAMES.length])));
+		report(measure("store.getByClass", i -> store.getByClass(CLASSES[i % CLASSES.length])));
+		report(measure("store.getByState", i -> store.getByState(STATES[i % STATES.length])));
+
+		//the same shuffled features are added in every operation
+		ArrayList<Feature> features = new ArrayList<Feature>();
+		Random random = new Random(1);
+		for (int i = 0; i < Math.min(SORT_ADD, store.size()); i++) {
+			features.add(store.getFeature(random.nextInt(store.size())));
+		}
+		report(measure("list.sortAdd", i -> {
+			FeatureList list = new FeatureList();
+			for (Feature f : features) {
+				list.sortAdd(f);
+			}
+			return list;
+		}));
+
+		report(measure("chain.getBy", i -> {
+			String[] words = CHAINS[i % CHAINS.length].split(" ");
+			FeatureList list = store.getByName(words[1]);
+			list = (list == null) ? null : list.getByClass(words[3]);
+			return (list == null) ? null : list.getByState(words[5]);
+		}));
+		Query[] queries = new Query[CHAINS.length];
+		for (int i = 0; i < CHAINS.length; i++) {
+			queries[i] = Query.parse(CHAINS[i].split(" "));
+		}
+		report(measure("chain.query", i -> store.search(queries[i % queries.length])));
+		return store;
+	}
+
+	/**
+	 * Runs an operation the given number of times
+	 * @return the time it took in nanoseconds
+	 */
+	private static long time(Operation operation, int operations) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			Object result = operation.run(i);
+			sink += (result instanceof Collection) ? ((Collection<?>) result).size()
+					: (result instanceof FeatureTable) ? ((FeatureTable) result).size() : (result == null) ? 0 : 1;
+		}
+		long nanos = System.nanoTime() - start;
+		if (sink == Long.MIN_VALUE) {
+			System.err.println();
+		}
+		return nanos;
+	}
+
+	/**
+	 * Prints a result on the error stream
+	 */
+	private static void report(Result result) {
+		System.err.println(result);
+	}
+
+	/**
+	 * Quotes and escapes a JSON string
+	 */
+	private static String quote(String text) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * The Result class is the time per operation of one benchmark over its timed iterations
+	 */
+	public static class Result {
+
+		private String name;
+		private int operations;
+		private double[] millis;
+
+		/**
+		 * Constructs a Result
+		 * @param name, the name of the benchmark
+		 * @param operations, the number of operations of every iteration
+		 * @param millis, the time per operation of every iteration in milliseconds
+		 */
+		public Result(String name, int operations, double[] millis) {
+			this.name = name;
+			this.operations = operations;
+			this.millis = millis.clone();
+		}
+
+		/**
+		 * Returns the name of the benchmark
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the mean time per operation
+		 * @return the mean in milliseconds
+		 */
+		public double getMean() {
+			double sum = 0;
+			for (double m : millis) {
+				sum += m;
+			}
+			return sum / millis.length;
+		}
+
+		/**
+		 * Returns the lowest time per operation of an iteration
+		 * @return the lowest time in milliseconds
+		 */
+		public double getMin() {
+			double min = Double.MAX_VALUE;
+			for (double m : millis) {
+				min = Math.min(min, m);
+			}
+			return min;
+		}
+
+		/**
+		 * Returns the highest time per operation of an iteration
+		 * @return the highest time in milliseconds
+		 */
+		public double getMax() {
+			double max = 0;
+			for (double m : millis) {
+				max = Math.max(max, m);
+			}
+			return max;
+		}
+
+		/**
+		 * Returns the standard deviation of the time per operation over the iterations
+		 * @return the standard deviation in milliseconds
+		 */
+		public double getStdDev() {
+			double mean = getMean();
+			double sum = 0;
+			for (double m : millis) {
+				sum += (m - mean) * (m - mean);
+			}
+			return Math.sqrt(sum / millis.length);
+		}
+
+		/**
+		 * Writes this result as a JSON object
+		 * @return the object with the fields name, operations, mean, min, max and stddev
+		 */
+		public String toJson() {
+			return "{\"name\": " + quote(name) + ", \"operations\": " + operations + ", \"mean\": " + round(getMean())
+					+ ", \"min\": " + round(getMin()) + ", \"max\": " + round(getMax()) + ", \"stddev\": " + round(getStdDev()) + "}";
+		}
+
+		/**
+		 * Returns the name followed by the mean and standard deviation
+		 * @return the result in the format name mean +- stddev ms/op
+		 */
+		@Override
+		public String toString() {
+			return name + " " + round(getMean()) + " +- " + round(getStdDev()) + " ms/op";
+		}
+
+		/**
+		 * Rounds a time to four significant digits after the decimal point of a millisecond
+		 */
+		private static double round(double millis) {
+			return Math.round(millis * 10000) / 10000.0;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package project2;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The DeltaStore class holds the features loaded from the GNIS file together with the updates applied to them later,
+ * without reloading the file. The loaded store is never changed: the rows added by a delta go into a new, small
+ * segment with its own name, state, class and spatial indexes, and removed rows are marked in a bit set of the
+ * segment holding them. Applying a delta therefore only costs building the indexes of its own rows.
+ *
+ * Readers call snapshot and keep using the table they got: a delta builds the next snapshot next to it and
+ * publishes it atomically, so a query never sees half of a delta. When too many added segments pile up
+ * they are merged into one, and compact rebuilds everything into a single store. A store loaded again from
+ * the GNIS file is published the same way by replace, while readers keep the snapshot they hold.
+ *
+ * A delta file has one change per line: + followed by a line of the GNIS file adds that feature,
+ * - followed by a line of the GNIS file removes every feature with exactly the same name, class, state,
+ * county, latitude, longitude and elevation. The removals of a delta are applied before its additions,
+ * so a changed feature is given as its old line removed and its new line added.
+ * Empty lines and lines starting with # are skipped.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class DeltaStore {
+
+	//most segments of added rows kept before they are merged into one
+	private static final int MAX_DELTA_SEGMENTS = 8;
+
+	private AtomicReference<FeatureTable> current;
+
+	/**
+	 * Constructs a DeltaStore holding the loaded features and no changes
+	 * @param store, the store loaded from the GNIS file
+	 * @throws IllegalArgumentException if the store is null
+	 */
+	public DeltaStore(FeatureStore store) throws IllegalArgumentException {
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in DeltaStore");
+		}
+		current = new AtomicReference<FeatureTable>(store);
+	}
+
+	/**
+	 * Returns the current features; the table does not change when later deltas are applied
+	 * @return the loaded store if no delta was applied, a SegmentedTable otherwise
+	 */
+	public FeatureTable snapshot() {
+		return current.get();
+	}
+
+	/**
+	 * Applies a delta file and publishes the new snapshot
+	 * @param delta, the delta file
+	 * @return the new snapshot
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line does not start with +, - or #
+	 */
+	public FeatureTable apply(File delta) throws IOException, IllegalArgumentException {
+		try (InputStream in = new FileInputStream(delta)) {
+			return apply(in);
+		}
+	}
+
+	/**
+	 * Applies the changes of a delta read from a stream and publishes the new snapshot, the stream is not closed
+	 * @param delta, the lines of the delta in UTF-8
+	 * @return the new snapshot
+	 * @throws IOException if the stream cannot be read
+	 * @throws IllegalArgumentException if a line does not start with +, - or #
+	 */
+	public synchronized FeatureTable apply(InputStream delta) throws IOException, IllegalArgumentException {
+
+		//splits the changes into the GNIS lines to remove and to add
+		ByteArrayOutputStream removed = new ByteArrayOutputStream();
+		ByteArrayOutputStream added = new ByteArrayOutputStream();
+		BufferedReader in = new BufferedReader(new InputStreamReader(delta, StandardCharsets.UTF_8));
+		String line;
+		int number = 0;
+		while ((line = in.readLine()) != null) {
+			number++;
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			ByteArrayOutputStream target = line.startsWith("+") ? added : line.startsWith("-") ? removed : null;
+			if (target == null) {
+				throw new IllegalArgumentException("Invalid Delta Line " + number);
+			}
+			byte[] bytes = (line.substring(1) + "\n").getBytes(StandardCharsets.UTF_8);
+			target.write(bytes, 0, bytes.length);
+		}
+		return apply(parse(removed), parse(added));
+	}
+
+	/**
+	 * Removes and adds features and publishes the new snapshot
+	 * @param removed, the features to remove, every row with exactly the same values is removed
+	 * @param added, the features to add
+	 * @return the new snapshot
+	 * @throws IllegalArgumentException if a store is null
+	 */
+	public synchronized FeatureTable apply(FeatureStore removed, FeatureStore added) throws IllegalArgumentException {
+
+		if (removed == null || added == null) {
+			throw new IllegalArgumentException("Null Argument Error in DeltaStore");
+		}
+
+		FeatureTable table = current.get();
+		ArrayList<FeatureStore> segments = new ArrayList<FeatureStore>();
+		ArrayList<BitSet> deleted = new ArrayList<BitSet>();
+		if (table instanceof SegmentedTable) {
+			SegmentedTable segmented = (SegmentedTable) table;
+			for (int i = 0; i < segmented.getSegmentCount(); i++) {
+				segments.add(segmented.getSegment(i));
+				deleted.add(segmented.getDeleted(i));
+			}
+		}
+		else {
+			segments.add((FeatureStore) table);
+			deleted.add(null);
+		}
+
+		//the removed rows grouped by name, to find the rows with exactly the same values
+		HashMap<String, ArrayList<Integer>> byName = new HashMap<String, ArrayList<Integer>>();
+		for (int row = 0; row < removed.size(); row++) {
+			byName.computeIfAbsent(removed.getName(row), name -> new ArrayList<Integer>()).add(row);
+		}
+		for (int i = 0; i < segments.size() && removed.size() > 0; i++) {
+			deleted.set(i, remove(segments.get(i), deleted.get(i), removed, byName));
+		}
+
+		if (added.size() > 0) {
+			segments.add(added);
+			deleted.add(null);
+		}
+		if (segments.size() > MAX_DELTA_SEGMENTS + 1) {
+			FeatureStore merged = merge(segments, deleted, 1);
+			while (segments.size() > 1) {
+				segments.remove(segments.size() - 1);
+				deleted.remove(deleted.size() - 1);
+			}
+			segments.add(merged);
+			deleted.add(null);
+		}
+
+		table = (segments.size() == 1 && deleted.get(0) == null) ? segments.get(0)
+				: new SegmentedTable(segments.toArray(new FeatureStore[0]), deleted.toArray(new BitSet[0]));
+		current.set(table);
+		return table;
+	}
+
+	/**
+	 * Rebuilds all features into a single store without removed rows and publishes it
+	 * @return the new snapshot
+	 */
+	public synchronized FeatureTable compact() {
+		FeatureTable table = current.get();
+		if (table instanceof SegmentedTable) {
+			SegmentedTable segmented = (SegmentedTable) table;
+			ArrayList<FeatureStore> segments = new ArrayList<FeatureStore>();
+			ArrayList<BitSet> deleted = new ArrayList<BitSet>();
+			for (int i = 0; i < segmented.getSegmentCount(); i++) {
+				segments.add(segmented.getSegment(i));
+				deleted.add(segmented.getDeleted(i));
+			}
+			table = merge(segments, deleted, 0);
+			current.set(table);
+		}
+		return table;
+	}
+
+	/**
+	 * Publishes another store in place of the current features, for example the GNIS file loaded again;
+	 * the deltas applied so far are dropped
+	 * @param store, the new store
+	 * @return the new snapshot
+	 * @throws IllegalArgumentException if the store is null
+	 */
+	public synchronized FeatureTable replace(FeatureStore store) throws IllegalArgumentException {
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in DeltaStore");
+		}
+		current.set(store);
+		return store;
+	}
+
+	/**
+	 * Parses lines of the GNIS file into a store
+	 */
+	private static FeatureStore parse(ByteArrayOutputStream lines) {
+		FeatureStore.Builder builder = new FeatureStore.Builder();
+		byte[] bytes = lines.toByteArray();
+		new FeatureLoader().parse(ByteBuffer.wrap(bytes), 0, bytes.length, builder);
+		return builder.build();
+	}
+
+	/**
+	 * Marks the rows of a segment that have exactly the values of a removed row.
+	 * The rows with the name of a removed row are looked up in the name index of the segment,
+	 * unless that would check more rows than the segment has, then the whole segment is scanned once.
+	 * @param segment, the store of the segment
+	 * @param deleted, the removed rows of the segment, or null if there are none; it is not changed
+	 * @param removed, the store of the removed rows
+	 * @param byName, the rows of removed grouped by name
+	 * @return the removed rows of the segment, deleted itself if no row was found, a new bit set otherwise
+	 */
+	private static BitSet remove(FeatureStore segment, BitSet deleted, FeatureStore removed,
+			HashMap<String, ArrayList<Integer>> byName) {
+
+		NameIndex names = segment.getIndex().getNames();
+		long checks = 0;
+		for (String name : byName.keySet()) {
+			int estimate = names.estimate(name);
+			checks += (estimate < 0) ? segment.size() : estimate;
+		}
+
+		BitSet result = deleted;
+		if (checks >= segment.size()) {
+			for (int r = 0; r < segment.size(); r++) {
+				result = remove(segment, r, result, deleted, removed, byName.get(segment.getName(r)));
+			}
+			return result;
+		}
+		for (Map.Entry<String, ArrayList<Integer>> entry : byName.entrySet()) {
+			int[] candidates = names.candidates(entry.getKey());
+			int count = (candidates == null) ? segment.size() : candidates.length;
+			for (int i = 0; i < count; i++) {
+				int r = (candidates == null) ? i : candidates[i];
+				if (segment.getName(r).equals(entry.getKey())) {
+					result = remove(segment, r, result, deleted, removed, entry.getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Marks a row of a segment if it has exactly the values of one of the given removed rows.
+	 * Coordinates are compared like Double.equals, so NaN matches NaN and -0.0 does not match 0.0.
+	 * @return the bit set of removed rows, copied from deleted the first time a row is marked
+	 */
+	private static BitSet remove(FeatureStore segment, int r, BitSet result, BitSet deleted, FeatureStore removed,
+			ArrayList<Integer> rows) {
+		if (rows == null) {
+			return result;
+		}
+		for (int row : rows) {
+			if (segment.getName(r).equals(removed.getName(row))
+					&& Double.compare(segment.getLatitude(r), removed.getLatitude(row)) == 0
+					&& Double.compare(segment.getLongitude(r), removed.getLongitude(row)) == 0
+					&& segment.getElevation(r) == removed.getElevation(row)
+					&& segment.getFeatureClass(r).equals(removed.getFeatureClass(row))
+					&& segment.getState(r).equals(removed.getState(row))
+					&& segment.getCounty(r).equals(removed.getCounty(row))) {
+				//the bit sets of the published snapshot are shared with readers, so they are copied before the first change
+				if (result == deleted) {
+					result = (deleted == null) ? new BitSet(segment.size()) : (BitSet) deleted.clone();
+				}
+				result.set(r);
+				return result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Builds one store from the rows that are not removed in the segments from the given one on
+	 */
+	private static FeatureStore merge(ArrayList<FeatureStore> segments, ArrayList<BitSet> deleted, int from) {
+		FeatureStore.Builder builder = new FeatureStore.Builder();
+		for (int i = from; i < segments.size(); i++) {
+			FeatureStore segment = segments.get(i);
+			BitSet removed = deleted.get(i);
+			for (int row = 0; row < segment.size(); row++) {
+				if (removed == null || !removed.get(row)) {
+					builder.add(segment.getName(row), segment.getFeatureClass(row), segment.getState(row),
+							segment.getCounty(row), segment.getLatitude(row), segment.getLongitude(row), segment.getElevation(row));
+				}
+			}
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,119 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The Dictionary class assigns a small integer (ordinal) to every distinct value of a column
+ * such as the state or the class of the features. A column with few distinct values can then
+ * be stored and compared as integers, and a keyword only has to be checked once per distinct value.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class Dictionary {
+
+	private ArrayList<String> values = new ArrayList<String>();
+	private HashMap<String, Integer> ordinals = new HashMap<String, Integer>();
+
+	/**
+	 * Default constructor for the Dictionary
+	 * Constructs an empty Dictionary.
+	 */
+	public Dictionary() {
+	}
+
+	/**
+	 * Returns the ordinal of the value, adding the value to the dictionary if it is not in it yet.
+	 * @param value, a non-null String
+	 * @return the ordinal of the value
+	 */
+	public int add(String value) {
+		Integer ordinal = ordinals.get(value);
+		if (ordinal == null) {
+			ordinal = values.size();
+			values.add(value);
+			ordinals.put(value, ordinal);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Returns the ordinal of the value
+	 * @param value, the value to look up
+	 * @return the ordinal of the value, or -1 if the value is not in the dictionary
+	 */
+	public int ordinalOf(String value) {
+		Integer ordinal = ordinals.get(value);
+		return (ordinal == null) ? -1 : ordinal;
+	}
+
+	/**
+	 * Returns the value with the given ordinal
+	 * @param ordinal, the ordinal of the value
+	 * @return the value with the given ordinal
+	 */
+	public String get(int ordinal) {
+		return values.get(ordinal);
+	}
+
+	/**
+	 * Returns the number of distinct values in this dictionary
+	 * @return the number of distinct values
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Finds the values that are equal to the keyword, ignoring case
+	 * @param keyword; the value for which to search
+	 * @return array with one entry per ordinal which is true if the value matches the keyword
+	 */
+	public boolean[] matchIgnoreCase(String keyword) {
+		boolean[] match = new boolean[values.size()];
+		for (int i = 0; i < match.length; i++) {
+			match[i] = values.get(i).equalsIgnoreCase(keyword);
+		}
+		return match;
+	}
+
+	/**
+	 * Finds the values that contain the keyword, ignoring case
+	 * @param keyword; the keyword for which to search
+	 * @return array with one entry per ordinal which is true if the value contains the keyword
+	 */
+	public boolean[] matchContaining(String keyword) {
+		String key = keyword.toLowerCase();
+		boolean[] match = new boolean[values.size()];
+		for (int i = 0; i < match.length; i++) {
+			match[i] = values.get(i).toLowerCase().contains(key);
+		}
+		return match;
+	}
+
+	/**
+	 * Ranks the values in case insensitive order: the rank of a value is its position in that order,
+	 * and values that are equal ignoring case share a rank.
+	 * Comparing the ranks of two values gives the same sign as compareToIgnoreCase on the values.
+	 * @return array with the rank of the value of every ordinal
+	 */
+	public int[] ranksIgnoreCase() {
+		//sort keys decide most comparisons with one primitive compare
+		int[] order = new int[values.size()];
+		long[] keys = new long[order.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			keys[i] = Location.sortKey(values.get(i));
+		}
+		IntSort.sort(order, 0, order.length, (a, b) -> Location.compareIgnoreCase(values.get(a), keys[a], values.get(b), keys[b]));
+		int[] ranks = new int[order.length];
+		for (int i = 1; i < order.length; i++) {
+			int a = order[i];
+			int b = order[i - 1];
+			boolean same = Location.compareIgnoreCase(values.get(a), keys[a], values.get(b), keys[b]) == 0;
+			ranks[a] = same ? ranks[b] : i;
+		}
+		return ranks;
+	}
+}
@@ -0,0 +1,157 @@
+package project2;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The DictionaryColumn class stores one column of the features (for example the state) as
+ * dictionary ordinals, one per row, together with a posting list for every distinct value
+ * listing the rows that have it. Filtering by a value is then a lookup of its posting list
+ * instead of a string comparison against every row.
+ *
+ * The posting lists are kept in one flat array: the rows with ordinal i are stored in
+ * rows[offsets[i]] up to (not including) rows[offsets[i+1]], in increasing order.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class DictionaryColumn {
+
+	private Dictionary dictionary;
+	private int[] ordinals;
+	private int[] offsets;
+	private int[] rows;
+
+	/**
+	 * Constructs a DictionaryColumn from a dictionary and the ordinal of every row
+	 * @param dictionary, the dictionary of the column values
+	 * @param ordinals, the ordinal of every row, or -1 for a row without a value
+	 */
+	public DictionaryColumn(Dictionary dictionary, int[] ordinals) {
+
+		this.dictionary = dictionary;
+		this.ordinals = ordinals;
+
+		//counts the rows of every value, then places each row in the posting list of its value
+		offsets = new int[dictionary.size() + 1];
+		for (int ordinal : ordinals) {
+			if (ordinal >= 0) {
+				offsets[ordinal + 1]++;
+			}
+		}
+		for (int i = 0; i < dictionary.size(); i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		rows = new int[offsets[dictionary.size()]];
+		int[] next = Arrays.copyOf(offsets, dictionary.size());
+		for (int row = 0; row < ordinals.length; row++) {
+			if (ordinals[row] >= 0) {
+				rows[next[ordinals[row]]++] = row;
+			}
+		}
+	}
+
+	/**
+	 * Builds the column from the value of every row
+	 * @param values, the value of every row, null for a row without a value
+	 * @return the column
+	 */
+	public static DictionaryColumn of(String[] values) {
+		Dictionary dictionary = new Dictionary();
+		int[] ordinals = new int[values.length];
+		for (int row = 0; row < values.length; row++) {
+			ordinals[row] = (values[row] == null) ? -1 : dictionary.add(values[row]);
+		}
+		return new DictionaryColumn(dictionary, ordinals);
+	}
+
+	/**
+	 * Returns the dictionary of the column values
+	 * @return the dictionary
+	 */
+	public Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Returns the ordinal of the value of a row
+	 * @param row, the row
+	 * @return the ordinal of the value, or -1 if the row has no value
+	 */
+	public int ordinal(int row) {
+		return ordinals[row];
+	}
+
+	/**
+	 * Returns the ordinal of every row
+	 * @return the ordinals, indexed by row
+	 */
+	int[] ordinals() {
+		return ordinals;
+	}
+
+	/**
+	 * Returns the number of rows in this column
+	 * @return the number of rows
+	 */
+	public int size() {
+		return ordinals.length;
+	}
+
+	/**
+	 * Counts the rows whose value is selected
+	 * @param selected, array with one entry per ordinal which is true if rows with that value are wanted
+	 * @return the number of rows with a selected value
+	 */
+	public int count(boolean[] selected) {
+		int count = 0;
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i]) {
+				count += offsets[i + 1] - offsets[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the rows whose value is selected by merging the posting lists of the selected values
+	 * @param selected, array with one entry per ordinal which is true if rows with that value are wanted
+	 * @return sorted array of the rows with a selected value
+	 */
+	public int[] rows(boolean[] selected) {
+
+		int[] result = new int[count(selected)];
+		int size = 0;
+		int lists = 0;
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i] && offsets[i + 1] > offsets[i]) {
+				System.arraycopy(rows, offsets[i], result, size, offsets[i + 1] - offsets[i]);
+				size += offsets[i + 1] - offsets[i];
+				lists++;
+			}
+		}
+		//a single posting list is sorted already
+		if (lists > 1) {
+			Arrays.sort(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Streams the rows whose value is selected, without copying them when a single value is selected
+	 * @param selected, array with one entry per ordinal which is true if rows with that value are wanted
+	 * @return increasing stream of the rows with a selected value
+	 */
+	public IntStream stream(boolean[] selected) {
+		int only = -1;
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i] && offsets[i + 1] > offsets[i]) {
+				if (only >= 0) {
+					return Arrays.stream(rows(selected));
+				}
+				only = i;
+			}
+		}
+		return (only < 0) ? IntStream.empty() : Arrays.stream(rows, offsets[only], offsets[only + 1]);
+	}
+}
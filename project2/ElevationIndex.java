@@ -0,0 +1,123 @@
+package project2;
+
+import java.util.Arrays;
+
+/**
+ * The ElevationIndex class finds the rows of a FeatureStore whose elevation is in a range without looking at every row.
+ * It keeps the rows sorted by elevation next to their elevations in that order, so the rows in a range are
+ * one slice of the array, found with two binary searches. Rows with the same elevation are increasing.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class ElevationIndex {
+
+	//the rows sorted by elevation and the elevation of each of them
+	private int[] order;
+	private int[] sorted;
+
+	/**
+	 * Constructs an ElevationIndex from an already sorted order
+	 * @param elevations, the elevation of every row
+	 * @param order, the rows sorted by elevation
+	 */
+	public ElevationIndex(int[] elevations, int[] order) {
+		this.order = order;
+		sorted = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = elevations[order[i]];
+		}
+	}
+
+	/**
+	 * Builds the index over the given elevations
+	 * @param elevations, the elevation of every row
+	 * @return the index
+	 */
+	public static ElevationIndex of(int[] elevations) {
+		//elevation in the high half and row in the low half, so one primitive sort orders by both
+		long[] keys = new long[elevations.length];
+		for (int row = 0; row < elevations.length; row++) {
+			keys[row] = ((long) elevations[row] << 32) | row;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return new ElevationIndex(elevations, order);
+	}
+
+	/**
+	 * Returns the rows sorted by elevation
+	 * @return the order array
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Counts the rows with an elevation in the given range (inclusive)
+	 * @param min, the lowest elevation
+	 * @param max, the highest elevation
+	 * @return the number of rows
+	 */
+	public int count(int min, int max) {
+		return Math.max(0, upper(max) - lower(min));
+	}
+
+	/**
+	 * Finds the rows with an elevation in the given range (inclusive)
+	 * @param min, the lowest elevation
+	 * @param max, the highest elevation
+	 * @return increasing array of the rows
+	 */
+	public int[] rows(int min, int max) {
+		int from = lower(min);
+		int to = upper(max);
+		if (from >= to) {
+			return new int[0];
+		}
+		int[] rows = Arrays.copyOfRange(order, from, to);
+		Arrays.sort(rows);
+		return rows;
+	}
+
+	/**
+	 * Finds the first position with an elevation not lower than min
+	 * @return the position
+	 */
+	private int lower(int min) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < min) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Finds the first position with an elevation higher than max
+	 * @return the position
+	 */
+	private int upper(int max) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] <= max) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
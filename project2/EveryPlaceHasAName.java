@@ -1,8 +1,17 @@
 package project2;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.NoSuchElementException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
 import java.util.Scanner;
 
 /**
@@ -24,7 +33,17 @@ public class EveryPlaceHasAName{
 	/**
 	 * The main() method of the program.
 	 * @param args array of Strings provided in the command line when program is executed
-	 * the first string should be name of input file containing the list of features
+	 * the first string should be name of input file containing the list of features,
+	 * it can be followed by -threads N to set the number of threads that parse the file (at least 1),
+	 * -snapshot FILE to set where the binary snapshot of the data is kept (FILE.snapshot by default)
+	 * and -nosnapshot to always parse the input file,
+	 * -cache N to keep the results of the last N queries (256 by default, 0 turns the cache off)
+	 * and -cachemb MB to limit the memory used by the cached results (64 by default),
+	 * -batch FILE to answer all queries in FILE (or standard input if FILE is -) without interaction
+	 * and -format FORMAT to print the results as text (the default), tsv or json lines,
+	 * -delta FILE, which can be given several times, to apply delta files after loading,
+	 * -dedup to keep only one of the features in the file that are equal
+	 * and -serve PORT to answer queries over HTTP on the loopback address (any free port if PORT is 0) without interaction
 	 */
 	public static void main(String[] args) {
 		
@@ -47,100 +66,146 @@ public class EveryPlaceHasAName{
 			
 		}
 		
-		//check file for reading
-		Scanner in = null;
+		//optional settings that follow the file name
+		int threads = Runtime.getRuntime().availableProcessors();
+		File snapshot = new File(args[0] + ".snapshot");
+		int cacheEntries = 256;
+		int cacheMegabytes = 64;
+		String batch = null;
+		String format = ResultWriter.TEXT;
+		ArrayList<String> deltas = new ArrayList<String>();
+		boolean dedup = false;
+		int port = -1;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				try {
+					threads = Integer.parseInt(args[++i]);
+					if (threads < 1) {
+						throw new NumberFormatException();
+					}
+					threads = Math.min(threads, FeatureLoader.MAX_THREADS);
+				}
+				catch (NumberFormatException e) {
+					System.err.println("The number of threads has to be a positive integer.\n");
+					System.exit(1);
+				}
+			}
+			else if ((args[i].equals("-cache") || args[i].equals("-cachemb")) && i + 1 < args.length) {
+				try {
+					int value = Integer.parseInt(args[i + 1]);
+					if (value < 0) {
+						throw new NumberFormatException();
+					}
+					if (args[i].equals("-cache")) {
+						cacheEntries = value;
+					}
+					else {
+						cacheMegabytes = value;
+					}
+					i++;
+				}
+				catch (NumberFormatException e) {
+					System.err.println("The cache size has to be a non-negative integer.\n");
+					System.exit(1);
+				}
+			}
+			else if (args[i].equals("-snapshot") && i + 1 < args.length) {
+				snapshot = new File(args[++i]);
+			}
+			else if (args[i].equals("-nosnapshot")) {
+				snapshot = null;
+			}
+			else if (args[i].equals("-batch") && i + 1 < args.length) {
+				batch = args[++i];
+			}
+			else if (args[i].equals("-format") && i + 1 < args.length && ResultWriter.isFormat(args[i + 1])) {
+				format = args[++i];
+			}
+			else if (args[i].equals("-delta") && i + 1 < args.length) {
+				deltas.add(args[++i]);
+			}
+			else if (args[i].equals("-dedup")) {
+				dedup = true;
+			}
+			else if (args[i].equals("-serve") && i + 1 < args.length) {
+				try {
+					port = Integer.parseInt(args[++i]);
+					if (port < 0 || port > 65535) {
+						throw new NumberFormatException();
+					}
+				}
+				catch (NumberFormatException e) {
+					System.err.println("The port has to be an integer from 0 to 65535.\n");
+					System.exit(1);
+				}
+			}
+			else {
+				System.err.println("Unknown option "+args[i]+"\n");
+				System.exit(1);
+			}
+		}
+		
+		//reads the file (or its snapshot, when it is newer) and saves the necessary data in the columns
+		//of a FeatureStore, Feature objects are only created for search results
+		//with -dedup the rows that repeat an earlier row are dropped while loading
+		FeatureStore store = null;
 		try {
-			in = new Scanner (file);
-		} 
-		catch (FileNotFoundException e) {
+			store = FeatureSnapshot.load(file, snapshot, threads, dedup);
+		}
+		catch (IOException e) {
 			System.err.println("The file "+file.getAbsolutePath()+
 					" cannot be read.\n");
 			System.exit(1);
 		}
 		
-		//necessary data to extract from each line in file
-		FeatureList list = new FeatureList();
-		String line = null; 
-		String featureID;
-		String stateName, countyName = null;
-		String fName, fClass = null;
+		//updates published after the file are applied on top of the loaded features
+		DeltaStore features = new DeltaStore(store);
+		//reported on the error stream, so that the output only holds results
+		for (String delta : deltas) {
+			applyDelta(features, delta, System.err);
+		}
 		
-		double lat=0; 
-		double lon = 0;
-		int elev = 0;
+		QueryCache cache = new QueryCache(cacheEntries, cacheMegabytes * (1L << 20));
 		
-		Feature current = null;
-		Location loc = null;
-	
-		//read the file and save the necessary data in a list of features (FeatureList)
-		while(in.hasNextLine()) {
-			
-			line = in.nextLine();
-			//splits each Line by the delimiter (|) and saves each string into an array
-			String [] f = splitInputLine(line);
-			
-			if (line.startsWith("FEATURE_ID")) { 
-				continue;
-				}
-			
+		//server mode answers queries over HTTP until the program is stopped, reloading the same way it loaded
+		if (port >= 0) {
+			File source = snapshot;
+			int loadThreads = threads;
+			boolean loadDedup = dedup;
+			QueryServer server = new QueryServer(features, cache, () -> FeatureSnapshot.load(file, source, loadThreads, loadDedup));
 			try {
-				
-				featureID = f[0];
-				if (!("0123456789").contains(featureID.substring(0,1))) {
-					continue;
-				}
-				fName = f[1];
-				fClass = f[2];
-				stateName = f[3];
-				countyName = f[5];	
-			}
-			catch (NoSuchElementException | StringIndexOutOfBoundsException e) { 
-				continue;
+				port = server.start(port);
 			}
-			
-			/**
-			 * Checks to see if there are valid latitude, longitude, and elevation values. 
-			 * @throws NumberFormatException or IndexOutOfBoundsException if these values are not provided or valid
-			 * and a value of 0 is assigned to these values.
-			 */
-			
-			try {
-				lat = Double.parseDouble(f[9]);
-			} catch (NumberFormatException | IndexOutOfBoundsException e) {
-				lat =0; //sets default value to 0
-			}
-			try {
-				lon = Double.parseDouble(f[10]);
-			} catch(NumberFormatException | IndexOutOfBoundsException e) {
-				lon =0; //sets default value to 0
+			catch (IOException e) {
+				System.err.println("The port "+port+" cannot be opened.\n");
+				System.exit(1);
 			}
+			System.err.println("Answering queries on http://127.0.0.1:"+port+"/query?q=QUERY \n");
+			return;
+		}
+		
+		//batch mode answers the queries of a file on several threads and exits
+		if (batch != null) {
 			try {
-				elev = Integer.parseInt(f[16]);
-			} catch(NumberFormatException | IndexOutOfBoundsException e) {
-				elev = 0; //sets default value to 0
+				BufferedReader queries = batch.equals("-")
+						? new BufferedReader(new InputStreamReader(System.in))
+						: new BufferedReader(new FileReader(batch));
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+				new QueryBatch(features, cache, format).run(queries, out, threads);
+				queries.close();
 			}
-			
-			//saves the data in list of Feature objects
-			try {
-				 loc = new Location (stateName.trim(),countyName.trim());
-				 loc.setLatitude(lat);
-				 loc.setLongitude(lon);
-				 loc.setElevation(elev);				 
-				 current = new Feature(fName.trim(),fClass.trim(), loc);
-				 list.add(current);
-				
-			} catch (IllegalArgumentException e) {
-				//Ignores this exception, and keeps going
+			catch (IOException e) {
+				System.err.println("The queries in "+batch+" cannot be read.\n");
+				System.exit(1);
 			}
+			return;
 		}
 		
 		//start of user interactive mode
 		
 		Scanner userInput = new Scanner(System.in);
 		String input = "";
-		String inputName= null;
-		String id1 = null;
-		FeatureList search = new FeatureList();
+		ResultWriter results = new ResultWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), format);
 		
 		while(!input.equalsIgnoreCase("quit")) {
 			System.out.println("Search the dataset by using one of the following queries. \n"
@@ -154,6 +219,33 @@ public class EveryPlaceHasAName{
 					+ "\t name KEYWORD class CLASS state STATE \n"
 					+ "   or \n"
 					+ "\t name KEYWORD state STATE class CLASS \n"
+					+ " To search for features with a word in their name spelled like KEYWORD, \n"
+					+ " with at most MAX_EDITS (up to 3) letters different, enter \n"
+					+ "\t fuzzy KEYWORD [MAX_EDITS] \n"
+					+ " To search for features within RADIUS_KM kilometers of a point, enter \n"
+					+ "\t near LAT LON RADIUS_KM \n"
+					+ " To search for features inside a box given by two opposite corners, enter \n"
+					+ "\t bbox LAT1 LON1 LAT2 LON2 \n"
+					+ " To find the K features closest to a point, enter \n"
+					+ "\t nearest K LAT LON \n"
+					+ " To search for features with an elevation from MIN to MAX, enter \n"
+					+ "\t elev MIN MAX \n"
+					+ " All of these can be limited to a class and a state like the name search \n"
+					+ " and all but the last to an elevation range by adding \n"
+					+ "\t elev MIN MAX \n"
+					+ " To show only N results after skipping the first M, add \n"
+					+ "\t limit N offset M \n"
+					+ " To list the most used names that start with TEXT, which may hold spaces, enter \n"
+					+ "\t prefix TEXT \n"
+					+ "   and add limit N to list N names instead of 10 \n"
+					+ " To count the features of every state, county or class, or of every combination \n"
+					+ " of them separated by commas (for example state,class), enter \n"
+					+ "\t count by GROUPS \n"
+					+ " To also show their lowest, highest and average elevation, enter \n"
+					+ "\t stats elev by GROUPS \n"
+					+ "   and add class CLASS, state STATE or elev MIN MAX to count only those features \n"
+					+ " To apply a file of added and removed features, enter \n"
+					+ "\t delta FILE \n"
 					+ "   To terminate the program, enter \n"
 					+ "\t quit \n");
 			
@@ -168,60 +260,75 @@ public class EveryPlaceHasAName{
 			
 			//splits user input into individual strings
 			String [] inputList = splitLine(input);
-		
-			//validates user input
-			if (checkInput(inputList) == false) {
-				System.out.println("Invalid query, please try again. \n");
-				continue;
-			}
 			
-			//searches through list of Feature objects by name
-			inputName = inputList[1];
-			search = list.getByName(inputName);
-			
-			//If search finds nothing, prompts user to try again.
-			if (search == null || search.size() == 0) {
-				System.out.println("No Matches Found. Try Again. \n");
+			//applies a delta file, the following queries see its changes
+			if (inputList.length == 2 && inputList[0].equals("delta")) {
+				applyDelta(features, inputList[1], System.out);
 				continue;
 			}
-			
-			//search case when user gives only two identifiers name and (state/class)
-			if (inputList.length == 4) {
-				id1 = inputList[2];
-				
-				if (id1.equals("class")) {
-					search = search.getByClass(inputList[3]);
+		
+			//completes the beginning of a name
+			if (inputList.length > 0 && inputList[0].equals("prefix")) {
+				int count = checkPrefix(inputList);
+				if (count < 0) {
+					System.out.println("Invalid query, please try again. \n");
+					continue;
 				}
-				else if(id1.equals("state")) {
-					search = search.getByState(inputList[3]);	
+				try {
+					if (results.writeCompletions(features.snapshot().complete(prefixText(inputList), count), null) == 0) {
+						System.out.println("No Matches Found. Try Again. \n");
+					}
 				}
+				catch (IOException e) {
+					System.err.println("The results cannot be printed.\n");
+					System.exit(1);
+				}
+				continue;
 			}
-			
-			//search case when user gives all possible identifiers name, class and state
-			if (inputList.length == 6) {
-				id1 = inputList[2];
-				
-				if (id1.equals("class")) {
-					search = search.getByClass(inputList[3]);
-					search = search.getByState(inputList[5]);
+		
+			//summarizes groups of features instead of listing them
+			if (Aggregation.isAggregation(inputList)) {
+				if (checkAggregation(inputList) == false) {
+					System.out.println("Invalid query, please try again. \n");
+					continue;
+				}
+				Aggregation aggregation = Aggregation.parse(inputList);
+				try {
+					if (results.writeGroups(aggregation, features.snapshot().aggregate(aggregation), null) == 0) {
+						System.out.println("No Matches Found. Try Again. \n");
+					}
 				}
-				else if(id1.equals("state")) {
-					search = search.getByState(inputList[3]);
-					search = search.getByClass(inputList[5]);
+				catch (IOException e) {
+					System.err.println("The results cannot be printed.\n");
+					System.exit(1);
 				}
+				continue;
+			}
+		
+			//validates user input
+			if (checkInput(inputList) == false) {
+				System.out.println("Invalid query, please try again. \n");
+				continue;
 			}
 			
+			//runs the whole query, restrictions included, in a single pass over the current features,
+			//unless the same query was answered recently
+			FeatureTable table = features.snapshot();
+			PrimitiveIterator.OfInt found = cache.rowStream(table, Query.parse(inputList)).iterator();
+			
 			//If search finds nothing, prompts user to try again.
-			if (search == null || search.size() == 0) {
+			if (!found.hasNext()) {
 				System.out.println("No Matches Found. Try Again. \n");
 				continue;
 			}
 			
-			//prints all the Feature objects in the list
-			for (Feature f : search) {
-				System.out.println(f.toString());
-				System.out.println();
-				System.out.println("-----------");
+			//prints all the features found straight from the store, flushing once at the end
+			try {
+				results.write(table, found, null);
+			}
+			catch (IOException e) {
+				System.err.println("The results cannot be printed.\n");
+				System.exit(1);
 			}
 			
 		}
@@ -229,34 +336,86 @@ public class EveryPlaceHasAName{
 	}
 	
 	/**
-	 * checks whether the user input follows the name KEYWORD, state/class KEYWORD, state/class KEYWORD query format
+	 * Applies a delta file to the features and reports the result
+	 * @param features, the features to change
+	 * @param delta, the name of the delta file
+	 * @param report, where the result is printed
+	 */
+	private static void applyDelta(DeltaStore features, String delta, PrintStream report) {
+		try {
+			FeatureTable table = features.apply(new File(delta));
+			report.println("Delta " + delta + " applied, " + table.size() + " features. \n");
+		}
+		catch (IOException | IllegalArgumentException e) {
+			report.println("The delta " + delta + " cannot be applied: " + e.getMessage() + "\n");
+		}
+	}
+	
+	/**
+	 * checks whether the user input follows the prefix TEXT [limit N] format of a name completion,
+	 * where TEXT is one or more words
+	 * @param input, array of input line Strings split by spaces and trimmed
+	 * @return the number of completions to list, N or 10 if it is not given, or -1 if the input is not a valid completion
+	 */
+	public static int checkPrefix(String [] input) {
+		if (input.length < 2 || !input[0].equals("prefix")) {
+			return -1;
+		}
+		if (input.length < 4 || !input[input.length - 2].equals("limit")) {
+			return 10;
+		}
+		String count = input[input.length - 1];
+		if (!count.matches("[0-9]{1,9}") || Integer.parseInt(count) == 0) {
+			return -1;
+		}
+		return Integer.parseInt(count);
+	}
+	
+	/**
+	 * returns the beginning of the names to complete from a valid prefix TEXT [limit N] input
+	 * @param input, array of input line Strings split by spaces and trimmed
+	 * @return the words of TEXT joined by single spaces
+	 */
+	public static String prefixText(String [] input) {
+		int end = (input.length >= 4 && input[input.length - 2].equals("limit")) ? input.length - 2 : input.length;
+		return String.join(" ", Arrays.asList(input).subList(1, end));
+	}
+	
+	/**
+	 * checks whether the user input follows the SEARCH, state/class KEYWORD, state/class KEYWORD query format
+	 * where SEARCH is one of name KEYWORD, fuzzy KEYWORD [MAX_EDITS], near LAT LON RADIUS_KM, bbox LAT1 LON1 LAT2 LON2,
+	 * nearest K LAT LON or elev MIN MAX
 	 * @author Eugene Chang
 	 * @param input, array of input line Strings split by spaces and trimmed
-	 * @return boolean value indicating if the identifier words are match "class" or "state" and if they are in the correct location and if "name" is the first word in query
+	 * @return boolean value indicating if the identifier words are "class", "state" and "elev" (each at most once) and in the correct location,
+	 * if the first word in query is "name", "fuzzy", "near", "bbox", "nearest" or "elev" and if the edits, coordinates, distance,
+	 * count and elevations are valid numbers
 	 */
 	public static boolean checkInput(String []	input) {
-		int length = input.length;
-		
-		if (length > 6 || length <2) {
-			return false;
+		try {
+			Query.parse(input);
+			return true;
 		}
-		
-		if ( !(input[0].equals("name")) )  {
+		catch (IllegalArgumentException e) {
 			return false;
 		}
-		
-		if (length == 4) {
-			if ( !(input[2]).equals("class") && !(input[2]).equals("state") ){
-				return false;
-			}
+	}
+	
+	/**
+	 * checks whether the user input follows the count by GROUPS or stats elev by GROUPS aggregation format,
+	 * where GROUPS is one or more of state, county and class separated by commas
+	 * @param input, array of input line Strings split by spaces and trimmed
+	 * @return boolean value indicating if the groups are valid and the words after them are
+	 * "class", "state" and "elev" restrictions (each at most once) with valid elevations
+	 */
+	public static boolean checkAggregation(String [] input) {
+		try {
+			Aggregation.parse(input);
+			return true;
 		}
-		
-		if (length == 6) {
-			if ( (!(input[2]).equals("class") && !(input[4]).equals("state") ) && ( !(input[2]).equals("state") && !(input[4]).equals("class") ) ) {
-				return false;
-			}	
+		catch (IllegalArgumentException e) {
+			return false;
 		}
-		return true;
 	}
 	
 	/**
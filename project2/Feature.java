@@ -15,6 +15,10 @@ public class Feature implements Comparable<Feature> {
 	private String featureClass;
 	private Location featureLocation;
 	
+	//sort keys of the name and class, so most comparisons do not fold the Strings
+	private long nameKey;
+	private long classKey;
+	
 	/**
 	 * Constructs a new Feature object with specified feature name, feature class and Location object
 	 * @param featureName, name of the feature
@@ -35,6 +39,8 @@ public class Feature implements Comparable<Feature> {
 		this.featureName = featureName;
 		this.featureClass = featureClass;
 		this.featureLocation = featureLocation;
+		nameKey = Location.sortKey(featureName);
+		classKey = Location.sortKey(featureClass);
 	}
 	
 	/**
@@ -69,16 +75,15 @@ public class Feature implements Comparable<Feature> {
 	@Override
 	public int compareTo(Feature o) {
 	
-		if (!(this.featureName.equalsIgnoreCase(o.featureName))) {
-			return this.featureName.compareToIgnoreCase(o.featureName);
-		}
-		if (this.featureLocation.compareTo(o.featureLocation) != 0)	{
-			return this.featureLocation.compareTo(o.featureLocation);	
+		int c = Location.compareIgnoreCase(featureName, nameKey, o.featureName, o.nameKey);
+		if (c != 0) {
+			return c;
 		}
-		if (!(this.featureClass.equalsIgnoreCase(o.featureClass))) {
-			return this.featureClass.compareToIgnoreCase(o.featureClass);
+		c = featureLocation.compareTo(o.featureLocation);
+		if (c != 0) {
+			return c;
 		}
-	return 0;
+		return Location.compareIgnoreCase(featureClass, classKey, o.featureClass, o.classKey);
 	}
 	
 	/**
@@ -110,6 +115,27 @@ public class Feature implements Comparable<Feature> {
 	return true;
 	}
 	
+	/**
+	 * Returns a hash code consistent with equals: Features that are equal have the same hash code
+	 * @return the hash of the case folded name and class and of the Location
+	 */
+	@Override
+	public int hashCode() {
+		return hash(Location.hashIgnoreCase(featureName), Location.hashIgnoreCase(featureClass), featureLocation.hashCode());
+	}
+	
+	/**
+	 * Combines the hashes of the parts of a feature into its hash code, so that a feature stored in columns
+	 * can be hashed without creating a Feature object
+	 * @param nameHash, Location.hashIgnoreCase of the name
+	 * @param classHash, Location.hashIgnoreCase of the class
+	 * @param locationHash, the hash code of the Location
+	 * @return the hash code a Feature with these parts has
+	 */
+	static int hash(int nameHash, int classHash, int locationHash) {
+		return 31 * (31 * nameHash + locationHash) + classHash;
+	}
+	
 	/**
 	 * Returns a string of feature name, feature class, feature Location in a readable fashion
 	 * @return a string in the format:
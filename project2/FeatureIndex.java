@@ -0,0 +1,72 @@
+package project2;
+
+import java.util.List;
+
+/**
+ * The FeatureIndex class groups the secondary indexes of a list of features:
+ * the trigram index over the names and the dictionary encoded state and class columns.
+ * Rows are the positions of the features in the indexed list.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class FeatureIndex {
+
+	private NameIndex names;
+	private DictionaryColumn states;
+	private DictionaryColumn classes;
+
+	/**
+	 * Constructs a FeatureIndex from already built indexes over the same rows
+	 * @param names, the trigram index over the feature names
+	 * @param states, the state column
+	 * @param classes, the class column
+	 */
+	public FeatureIndex(NameIndex names, DictionaryColumn states, DictionaryColumn classes) {
+		this.names = names;
+		this.states = states;
+		this.classes = classes;
+	}
+
+	/**
+	 * Builds all indexes over the given features
+	 * @param features, list of features to index
+	 * @return the index over the features
+	 */
+	public static FeatureIndex of(List<Feature> features) {
+		String[] stateValues = new String[features.size()];
+		String[] classValues = new String[features.size()];
+		for (int i = 0; i < features.size(); i++) {
+			Feature f = features.get(i);
+			classValues[i] = f.getFeatureClass();
+			if (f.getFeatureLocation() != null) {
+				stateValues[i] = f.getFeatureLocation().getState();
+			}
+		}
+		return new FeatureIndex(NameIndex.of(features), DictionaryColumn.of(stateValues), DictionaryColumn.of(classValues));
+	}
+
+	/**
+	 * Returns the trigram index over the feature names
+	 * @return the name index
+	 */
+	public NameIndex getNames() {
+		return names;
+	}
+
+	/**
+	 * Returns the dictionary encoded state column
+	 * @return the state column
+	 */
+	public DictionaryColumn getStates() {
+		return states;
+	}
+
+	/**
+	 * Returns the dictionary encoded class column
+	 * @return the class column
+	 */
+	public DictionaryColumn getClasses() {
+		return classes;
+	}
+}
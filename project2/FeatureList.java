@@ -1,10 +1,13 @@
 package project2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The FeatureList class is used to store all Feature Objects and inherits from the ArrayList<Feature> class
- * Provides methods for searching through lists by keywords: name, class and state
+ * Provides methods for searching through lists by keywords: name, class and state, and for completing names
+ * The search results are sorted lists; once buildIndex is called the searches use the indexes of the list
  * 
  * @author Eugene Chang
  * @version 10/12/21
@@ -13,30 +16,73 @@ import java.util.ArrayList;
 @SuppressWarnings("serial")
 public class FeatureList extends ArrayList<Feature> {
 	
+	//indexes over the features and the modification count of the list when they were attached
+	private transient FeatureIndex index = null;
+	private transient int indexedModCount = -1;
+	
+	//row of every element in the indexed list this list was selected from, null if this is the indexed list
+	private transient int[] indexRows = null;
+	
+	//modification count of the list when it was last known to be sorted
+	private transient int sortedModCount = -1;
+	
+	//completions of the names and the modification count of the list when they were built
+	private transient PrefixIndex prefixIndex = null;
+	private transient int prefixModCount = -1;
+	
 	/**
 	 * This method adds an element to FeatureList by natural ordering of Feature elements
 	 * Utilizes the CompareTo methods defined in respective classes
+	 * The element goes in front of the first element that is not less than it. In a list known to be sorted
+	 * that position is found with a binary search, otherwise the list is scanned from the start.
 	 * @author Eugene Chang
 	 * @param Feature e
 	 */
 	public void sortAdd(Feature e) {
 		
-		if (size() == 0) {
-			add(e);
+		boolean sorted = isSorted();
+		if (!sorted) {
+			int i = 0;
+			while (i < size() && e.compareTo(get(i)) > 0) {
+				i++;
+			}
+			add(i, e);
+			return;
 		}
-		else {
-		 for (int i = 0; i < size(); i++) {
-			
-			 if (e.compareTo(get(i)) > 0) { 
-				 continue; 
-			 }
-			 
-			 add(i,e);	
-			 return;
-		} 
-		 add(e);
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (e.compareTo(get(mid)) > 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		add(low, e);
+		sortedModCount = modCount;
+	}
+	
+	/**
+	 * Sorts this list by natural ordering of Feature elements, unless it is known to be sorted already.
+	 * Features that compare equal keep their order in this list.
+	 */
+	public void sortAll() {
+		if (!isSorted()) {
+			sort(null);
+		}
+		sortedModCount = modCount;
+	}
+	
+	/**
+	 * Checks whether this list is known to be in natural ordering of Feature elements,
+	 * which is the case for the results of the getBy methods until the list is modified.
+	 * @return true if the list is known to be sorted, false otherwise
+	 */
+	public boolean isSorted() {
+		return sortedModCount == modCount || size() < 2;
 	}
-}
 	
 	/**
 	 * Default constructor for the FeatureList
@@ -45,6 +91,66 @@ public class FeatureList extends ArrayList<Feature> {
 	public FeatureList() {	
 	}
 	
+	/**
+	 * Replaces the element at the specified position.
+	 * Unlike ArrayList, this counts as a modification so that the indexes of this list are rebuilt.
+	 * @param index, position of the element to replace
+	 * @param e, the new element
+	 * @return the element previously at the position
+	 */
+	@Override
+	public Feature set(int index, Feature e) {
+		Feature old = super.set(index, e);
+		modCount++;
+		return old;
+	}
+	
+	/**
+	 * Builds the indexes over this list: a trigram index over the feature names so that getByName only checks
+	 * the features that can contain the keyword, and dictionary encoded state and class columns so that
+	 * getByState and getByClass look up posting lists instead of comparing strings.
+	 * The lists returned by the getBy methods share these indexes, and each list drops them as soon as it is modified.
+	 */
+	public void buildIndex() {
+		index = FeatureIndex.of(this);
+		indexRows = null;
+		indexedModCount = modCount;
+	}
+	
+	/**
+	 * Attaches indexes over another list (or FeatureStore) that this list was selected from.
+	 * @param index, the indexes of the list this list was selected from
+	 * @param rows, the row of every element of this list in the indexed list
+	 * @param sorted, true if this list is in natural ordering of Feature elements
+	 */
+	void attachIndex(FeatureIndex index, int[] rows, boolean sorted) {
+		this.index = index;
+		this.indexRows = rows;
+		indexedModCount = modCount;
+		if (sorted) {
+			sortedModCount = modCount;
+		}
+	}
+	
+	/**
+	 * Returns the indexes of this list if they are up to date with its content
+	 * @return the indexes, or null if there are none or the list changed since they were attached
+	 */
+	private FeatureIndex index() {
+		if (index != null && indexedModCount != modCount) {
+			index = null;
+			indexRows = null;
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the row in the indexed list of the element at the given position
+	 */
+	private int rowOf(int position) {
+		return (indexRows == null) ? position : indexRows[position];
+	}
+	
 	/**
 	 * Searches through this FeatureList for an object which contains the given name.
 	 * @param keyword; the name of the feature for which to search
@@ -58,23 +164,31 @@ public class FeatureList extends ArrayList<Feature> {
 			throw new IllegalArgumentException("Keyword Input is Illegal");
 		}
 		
-		FeatureList byName = new FeatureList();
+		String key = keyword.toLowerCase();
+		int[] matches = new int[Math.min(size(), 1024)];
+		int count = 0;
 		
-		for (Feature f : this) {
-			String name = f.getFeatureName();
-			if (name == null)
-				continue;
-			if (name.toLowerCase().contains(keyword.toLowerCase()) ) 
-				byName.sortAdd(f);
+		//only the candidates from the name index can contain the keyword
+		FeatureIndex index = index();
+		int[] candidates = (index == null || indexRows != null) ? null : index.getNames().candidates(keyword);
+		if (candidates != null) {
+			for (int i : candidates) {
+				if (get(i).getFeatureName().toLowerCase().contains(key)) {
+					matches = append(matches, count++, i);
+				}
+			}
 		}
-		if (this.size() == 0) {
-			return null;
-		} 
-		if (byName.size() == 0) {
-			return null;
+		else {
+			for (int i = 0; i < size(); i++) {
+				String name = get(i).getFeatureName();
+				if (name == null)
+					continue;
+				if (name.toLowerCase().contains(key) ) 
+					matches = append(matches, count++, i);
+			}
 		}
 		
-		return byName;
+		return select(matches, count);
 	}
 	
 	/**
@@ -90,23 +204,25 @@ public class FeatureList extends ArrayList<Feature> {
 			throw new IllegalArgumentException("Keyword Input is Illegal");
 		}
 		
-		FeatureList byClass = new FeatureList();
-
-		for (Feature f : this) {
-			String fclass = f.getFeatureClass();
+		//the keyword is checked once per distinct class, then the rows of the matching classes are selected
+		FeatureIndex index = index();
+		if (index != null) {
+			DictionaryColumn classes = index.getClasses();
+			return select(classes, classes.getDictionary().matchContaining(keyword));
+		}
+		
+		String key = keyword.toLowerCase();
+		int[] matches = new int[Math.min(size(), 1024)];
+		int count = 0;
+		for (int i = 0; i < size(); i++) {
+			String fclass = get(i).getFeatureClass();
 			if (fclass == null)
 				continue;
-			if (fclass.toLowerCase().contains(keyword.toLowerCase()) ) 
-				byClass.sortAdd(f);
-		}
-		if (this.size() == 0) {
-			return null;
-		}
-		if (byClass.size() == 0) {
-			return null;
+			if (fclass.toLowerCase().contains(key) ) 
+				matches = append(matches, count++, i);
 		}
 		
-		return byClass;	
+		return select(matches, count);	
 	}
 	
 	/**
@@ -122,22 +238,130 @@ public class FeatureList extends ArrayList<Feature> {
 			throw new IllegalArgumentException("Keyword Input is Illegal");
 		}
 		
-		FeatureList byState = new FeatureList();
+		//the keyword is checked once per distinct state, then the rows of the matching states are selected
+		FeatureIndex index = index();
+		if (index != null) {
+			DictionaryColumn states = index.getStates();
+			return select(states, states.getDictionary().matchIgnoreCase(keyword));
+		}
 		
-		for (Feature f : this) {
-			String state = f.getFeatureLocation().getState();
+		int[] matches = new int[Math.min(size(), 1024)];
+		int count = 0;
+		for (int i = 0; i < size(); i++) {
+			String state = get(i).getFeatureLocation().getState();
 			if (state == null)
 				continue;
 			if (state.equalsIgnoreCase(keyword))  
-				byState.sortAdd(f);
+				matches = append(matches, count++, i);
 		}
-		if (this.size() == 0) {
-			return null;
+		
+		return select(matches, count);
+	}
+	
+	/**
+	 * Completes the beginning of a feature name. The names are indexed the first time, and again after the list changes.
+	 * @param prefix; the beginning of the names, compared ignoring case
+	 * @param count; the largest number of completions returned
+	 * @return the distinct names (ignoring case) that start with the prefix, the ones used by the most features first
+	 * and names used by as many features in alphabetical order, each written like the first feature with it in this list
+	 * @throws IllegalArgumentException if prefix is null or empty or count is not positive.
+	 */
+	public List<PrefixIndex.Completion> complete(String prefix, int count) throws IllegalArgumentException {
+		
+		if (prefix == null || prefix.equals("") || count <= 0) {
+			throw new IllegalArgumentException("Prefix Input is Illegal");
+		}
+		
+		if (prefixIndex == null || prefixModCount != modCount) {
+			String[] names = new String[size()];
+			for (int i = 0; i < size(); i++) {
+				names[i] = get(i).getFeatureName();
+			}
+			prefixIndex = PrefixIndex.of(names);
+			prefixModCount = modCount;
+		}
+		
+		ArrayList<PrefixIndex.Completion> completions = new ArrayList<PrefixIndex.Completion>();
+		for (int entry : prefixIndex.complete(prefix, count)) {
+			completions.add(new PrefixIndex.Completion(get(prefixIndex.getRow(entry, 0)).getFeatureName(),
+					prefixIndex.getCount(entry)));
 		}
-		if (byState.size() == 0) {
+		return completions;
+	}
+	
+	/**
+	 * Selects the elements of this list whose value in the given indexed column is selected.
+	 * The indexed list reads the posting lists of the selected values,
+	 * a list selected from it checks the ordinal of each of its rows.
+	 * @param column, a dictionary encoded column of the indexed list
+	 * @param selected, array with one entry per ordinal which is true if rows with that value are wanted
+	 * @return the list of selected elements, or null if there are none
+	 */
+	private FeatureList select(DictionaryColumn column, boolean[] selected) {
+		
+		if (indexRows == null) {
+			int[] rows = column.rows(selected);
+			return select(rows, rows.length);
+		}
+		
+		int[] matches = new int[Math.min(size(), 1024)];
+		int count = 0;
+		for (int i = 0; i < size(); i++) {
+			int ordinal = column.ordinal(indexRows[i]);
+			if (ordinal >= 0 && selected[ordinal]) {
+				matches = append(matches, count++, i);
+			}
+		}
+		return select(matches, count);
+	}
+	
+	/**
+	 * Builds the sorted list of the elements at the given positions of this list.
+	 * The positions are sorted once; elements that compare equal come out last position first,
+	 * as if every match had been added with sortAdd.
+	 * The new list shares the indexes of this list.
+	 * @param positions, increasing positions of the selected elements in positions[0..count)
+	 * @param count, the number of selected elements
+	 * @return the list of selected elements, or null if there are none
+	 */
+	private FeatureList select(int[] positions, int count) {
+		
+		if (count == 0) {
 			return null;
 		}
+		IntSort.sort(positions, 0, count, (a, b) -> {
+			int c = get(a).compareTo(get(b));
+			return (c != 0) ? c : Integer.compare(b, a);
+		});
 		
-		return byState;
+		FeatureList selected = new FeatureList();
+		selected.ensureCapacity(count);
+		FeatureIndex index = index();
+		int[] rows = (index == null) ? null : new int[count];
+		for (int i = 0; i < count; i++) {
+			selected.add(get(positions[i]));
+			if (rows != null) {
+				rows[i] = rowOf(positions[i]);
+			}
+		}
+		selected.sortedModCount = selected.modCount;
+		if (index != null) {
+			selected.index = index;
+			selected.indexRows = rows;
+			selected.indexedModCount = selected.modCount;
+		}
+		return selected;
+	}
+	
+	/**
+	 * Stores value at position count of the array, growing the array when it is full
+	 * @return the array holding the value
+	 */
+	private static int[] append(int[] array, int count, int value) {
+		if (count == array.length) {
+			array = Arrays.copyOf(array, Math.max(16, count * 2));
+		}
+		array[count] = value;
+		return array;
 	}
 }
@@ -0,0 +1,454 @@
+package project2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The FeatureLoader class reads a pipe-delimited GNIS file into a FeatureStore.
+ * The file is memory mapped and scanned byte by byte for | and line breaks; only the columns that are
+ * stored (id, name, class, state, county, latitude, longitude and elevation) are decoded, and the numbers
+ * are parsed straight from the bytes. The name, class, state and county go through a StringCache,
+ * so a repeated value is decoded once and shares one String.
+ *
+ * Large files can be split into chunks of whole lines that are parsed on a ForkJoinPool and merged in file order.
+ * Optionally the rows that are duplicates of an earlier row (equal as Features) are dropped after parsing.
+ *
+ * Rows are accepted or rejected exactly like the line by line reader in EveryPlaceHasAName did:
+ * the header line and lines whose id does not start with a digit are skipped, a latitude, longitude or
+ * elevation that is missing or not a number becomes 0, and rows that do not make a valid Feature are dropped.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class FeatureLoader {
+
+	//columns of the GNIS file that are stored
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int CLASS = 2;
+	private static final int STATE = 3;
+	private static final int COUNTY = 5;
+	private static final int LATITUDE = 9;
+	private static final int LONGITUDE = 10;
+	private static final int ELEVATION = 16;
+	private static final int COLUMNS = ELEVATION + 1;
+
+	//largest part of the file mapped at once
+	private static final int WINDOW = 1 << 28;
+
+	//most threads of a ForkJoinPool, more threads are capped to it
+	static final int MAX_THREADS = 0x7fff;
+
+	//smallest part of the file parsed as one task when parsing on several threads
+	private static final int MIN_CHUNK = 1 << 20;
+
+	private static final byte[] HEADER = "FEATURE_ID".getBytes(StandardCharsets.US_ASCII);
+
+	//powers of ten that are exact doubles
+	private static final double[] POWERS = new double[23];
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+		}
+	}
+
+	//start and end of each stored column in the current line
+	private int[] starts = new int[COLUMNS];
+	private int[] ends = new int[COLUMNS];
+	private byte[] scratch = new byte[256];
+	private StringCache cache = new StringCache();
+
+	/**
+	 * Default constructor for the FeatureLoader
+	 * Constructs a FeatureLoader with an empty string cache.
+	 */
+	public FeatureLoader() {
+	}
+
+	/**
+	 * Reads all features of a GNIS file
+	 * @param file, the pipe-delimited input file
+	 * @return the store holding all valid features of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static FeatureStore load(File file) throws IOException {
+		return load(file, 1);
+	}
+
+	/**
+	 * Reads all features of a GNIS file, parsing parts of the file on several threads at the same time
+	 * @param file, the pipe-delimited input file
+	 * @param threads, the number of threads to parse with, 1 parses on the calling thread
+	 * @return the store holding all valid features of the file, in the same order as with a single thread
+	 * @throws IOException if the file cannot be read
+	 */
+	public static FeatureStore load(File file, int threads) throws IOException {
+		return load(file, threads, false);
+	}
+
+	/**
+	 * Reads all features of a GNIS file, parsing parts of the file on several threads at the same time
+	 * @param file, the pipe-delimited input file
+	 * @param threads, the number of threads to parse with, 1 parses on the calling thread, at most MAX_THREADS are used
+	 * @param deduplicate, true to keep only the first of the rows that are equal as Features
+	 * @return the store holding all valid features of the file, in the same order as with a single thread
+	 * @throws IOException if the file cannot be read
+	 */
+	public static FeatureStore load(File file, int threads, boolean deduplicate) throws IOException {
+		FeatureStore.Builder builder = new FeatureStore.Builder();
+		if (threads <= 1) {
+			new FeatureLoader().read(file, builder, null);
+		}
+		else {
+			ForkJoinPool pool = new ForkJoinPool(Math.min(threads, MAX_THREADS));
+			try {
+				new FeatureLoader().read(file, builder, pool);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		if (deduplicate) {
+			builder.deduplicate();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Reads all features of a GNIS file and adds them to the builder
+	 * @param file, the pipe-delimited input file
+	 * @param builder, the builder receiving the rows
+	 * @param pool, the pool to parse chunks of the file on, or null to parse on the calling thread
+	 * @throws IOException if the file cannot be read
+	 */
+	public void read(File file, FeatureStore.Builder builder, ForkJoinPool pool) throws IOException {
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			long size = channel.size();
+			long position = 0;
+			//maps the file a window at a time, each window ends after the last complete line in it
+			while (position < size) {
+				int length = (int) Math.min(WINDOW, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				boolean last = position + length == size;
+				int end = last ? length : lastLineEnd(buffer, length);
+				if (end == 0) {
+					throw new IOException("Line longer than " + WINDOW + " bytes at offset " + position);
+				}
+				if (pool == null) {
+					parse(buffer, 0, end, builder);
+				}
+				else {
+					parseChunks(buffer, end, builder, pool);
+				}
+				position += end;
+			}
+		}
+	}
+
+	/**
+	 * Splits buffer[0..end) into chunks of whole lines, parses each chunk on the pool into its own builder
+	 * and appends the chunk builders to the builder in file order.
+	 */
+	private static void parseChunks(ByteBuffer buffer, int end, FeatureStore.Builder builder, ForkJoinPool pool) {
+
+		int chunkSize = Math.max(MIN_CHUNK, end / (pool.getParallelism() * 4));
+		List<ForkJoinTask<FeatureStore.Builder>> chunks = new ArrayList<ForkJoinTask<FeatureStore.Builder>>();
+		int from = 0;
+		while (from < end) {
+			int to = (end - from <= chunkSize) ? end : nextLineStart(buffer, from + chunkSize, end);
+			int start = from;
+			//every chunk gets its own loader since the scratch buffers and string cache are not shared
+			chunks.add(pool.submit(() -> {
+				FeatureStore.Builder chunk = new FeatureStore.Builder();
+				new FeatureLoader().parse(buffer, start, to, chunk);
+				return chunk;
+			}));
+			from = to;
+		}
+		for (ForkJoinTask<FeatureStore.Builder> chunk : chunks) {
+			builder.append(chunk.join());
+		}
+	}
+
+	/**
+	 * Parses the complete lines in buffer[from..to) and adds the valid features to the builder
+	 * @param buffer, the bytes of the file
+	 * @param from, start of the first line
+	 * @param to, end of the last line
+	 * @param builder, the builder receiving the rows
+	 */
+	public void parse(ByteBuffer buffer, int from, int to, FeatureStore.Builder builder) {
+
+		int lineStart = from;
+		while (lineStart < to) {
+			int lineEnd = lineStart;
+			while (lineEnd < to && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+				lineEnd++;
+			}
+			parseLine(buffer, lineStart, lineEnd, builder);
+
+			//skips the line break, \r\n counts as one
+			lineStart = lineEnd + 1;
+			if (lineEnd < to && buffer.get(lineEnd) == '\r' && lineStart < to && buffer.get(lineStart) == '\n') {
+				lineStart++;
+			}
+		}
+	}
+
+	/**
+	 * Parses one line and adds it to the builder if it is a valid feature
+	 */
+	private void parseLine(ByteBuffer buffer, int start, int end, FeatureStore.Builder builder) {
+
+		if (startsWith(buffer, start, end, HEADER)) {
+			return;
+		}
+
+		//finds the bounds of the stored columns, columns that are not in the line start at -1
+		Arrays.fill(starts, -1);
+		int column = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end && column < COLUMNS; i++) {
+			if (i == end || buffer.get(i) == '|') {
+				starts[column] = fieldStart;
+				ends[column] = i;
+				column++;
+				fieldStart = i + 1;
+			}
+		}
+
+		//the feature id has to start with a digit
+		if (starts[ID] < 0 || ends[ID] == starts[ID]) {
+			return;
+		}
+		byte first = buffer.get(starts[ID]);
+		if (first < '0' || first > '9') {
+			return;
+		}
+		if (starts[COUNTY] < 0) {
+			return;
+		}
+
+		double lat = parseDouble(buffer, LATITUDE);
+		double lon = parseDouble(buffer, LONGITUDE);
+		int elev = parseInt(buffer, ELEVATION);
+
+		try {
+			builder.add(decode(buffer, NAME, true), decode(buffer, CLASS, true), decode(buffer, STATE, true),
+					decode(buffer, COUNTY, true), lat, lon, elev);
+		} catch (IllegalArgumentException e) {
+			//Ignores this row, and keeps going
+		}
+	}
+
+	/**
+	 * Decodes a column as trimmed UTF-8 text
+	 * @param shared, true if the value repeats across rows and should come from the string cache
+	 */
+	private String decode(ByteBuffer buffer, int column, boolean shared) {
+		int start = starts[column];
+		int end = ends[column];
+		//same as String.trim: drops the characters up to and including space at both ends
+		while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		int length = end - start;
+		if (length > scratch.length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		buffer.get(start, scratch, 0, length);
+		if (shared) {
+			return cache.get(scratch, length);
+		}
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a column as a double like Double.parseDouble does
+	 * @return the value, or 0 if the column is missing or not a number
+	 */
+	private double parseDouble(ByteBuffer buffer, int column) {
+
+		if (starts[column] < 0) {
+			return 0;
+		}
+		int start = starts[column];
+		int end = ends[column];
+		while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		if (start == end) {
+			return 0;
+		}
+
+		//plain decimals with at most 15 significant digits: the mantissa and the power of ten are
+		//exact doubles, so the division is rounded exactly like Double.parseDouble rounds
+		int i = start;
+		boolean negative = false;
+		byte b = buffer.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int significant = 0;
+		int scale = -1;
+		for (; i < end && significant <= 15; i++) {
+			b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (mantissa != 0) {
+					significant++;
+				}
+				if (scale >= 0) {
+					scale++;
+				}
+			}
+			else if (b == '.' && scale < 0) {
+				scale = 0;
+			}
+			else {
+				break;
+			}
+		}
+		if (i == end && digits > 0 && significant <= 15 && scale < POWERS.length) {
+			double value = (scale > 0) ? mantissa / POWERS[scale] : mantissa;
+			return negative ? -value : value;
+		}
+
+		//anything else (exponents, long fractions, text) goes through the regular parser
+		try {
+			return Double.parseDouble(decode(buffer, column, false));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Parses a column as an int like Integer.parseInt does
+	 * @return the value, or 0 if the column is missing or not an integer
+	 */
+	private int parseInt(ByteBuffer buffer, int column) {
+
+		if (starts[column] < 0) {
+			return 0;
+		}
+		int start = starts[column];
+		int end = ends[column];
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		if (i == end) {
+			return 0;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				break;
+			}
+			value = value * 10 + (b - '0');
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				return 0;
+			}
+		}
+		if (i < end) {
+			//non-ASCII digits are still accepted by Integer.parseInt
+			if ((buffer.get(i) & 0x80) == 0) {
+				return 0;
+			}
+			try {
+				return Integer.parseInt(new String(bytes(buffer, start, end), StandardCharsets.UTF_8));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			return 0;
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Copies buffer[start..end) into a new array
+	 */
+	private static byte[] bytes(ByteBuffer buffer, int start, int end) {
+		byte[] copy = new byte[end - start];
+		buffer.get(start, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Checks whether buffer[start..end) starts with the given bytes
+	 */
+	private static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] prefix) {
+		if (end - start < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(start + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the start of the first line that begins at or after position from
+	 * @return the position after the next line break, or end if there is none
+	 */
+	private static int nextLineStart(ByteBuffer buffer, int from, int end) {
+		for (int i = from; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == '\n') {
+				return i + 1;
+			}
+			if (b == '\r') {
+				return (i + 1 < end && buffer.get(i + 1) == '\n') ? i + 2 : i + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Finds the end of the last complete line in buffer[0..length)
+	 * @return the position after the last line break, or 0 if there is none
+	 */
+	private static int lastLineEnd(ByteBuffer buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			byte b = buffer.get(i);
+			if (b == '\n') {
+				return i + 1;
+			}
+			//a \r at the very end may be followed by the \n of the same line break in the next window
+			if (b == '\r' && i < length - 1) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,594 @@
+package project2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The FeatureSnapshot class saves a FeatureStore in a compact binary file and reads it back,
+ * so that a program start does not have to parse the text file and sort and index the rows again.
+ * The snapshot holds the dictionaries, the rows in their sorted order, the names, the
+ * trigram name index, the spatial index and the elevation index.
+ * It is memory mapped when it is read and the records are split into the columns of a FeatureStore.
+ * The rows and names can also be mapped as they are into an OffHeapStore, which leaves the indexes out.
+ *
+ * Layout (little endian): magic, version, length and modification time of the source file,
+ * 1 if duplicate rows were dropped and 0 otherwise, row count,
+ * the state, county and class dictionaries, zeros up to a multiple of 8 bytes, one record per row in the
+ * layout of OffHeapStore, the names as offsets into one UTF-8 block, the name index arrays, the k-d tree order
+ * and the rows sorted by elevation.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class FeatureSnapshot {
+
+	private static final long MAGIC = 0x474e49534e415031L;
+	private static final int VERSION = 5;
+
+	//largest part of the file mapped at once
+	private static final int WINDOW = 1 << 28;
+
+	/**
+	 * Loads the features of a GNIS file, from its snapshot when there is a usable one.
+	 * When the snapshot is missing or older than the file, the file is parsed and a new snapshot is written.
+	 * @param source, the pipe-delimited input file
+	 * @param snapshot, the snapshot file, or null to always parse the input file
+	 * @param threads, the number of threads that parse the input file
+	 * @return the store holding all valid features of the file
+	 * @throws IOException if the input file cannot be read
+	 */
+	public static FeatureStore load(File source, File snapshot, int threads) throws IOException {
+		return load(source, snapshot, threads, false);
+	}
+
+	/**
+	 * Loads the features of a GNIS file, from its snapshot when there is a usable one.
+	 * When the snapshot is missing, older than the file or made with the other deduplicate setting,
+	 * the file is parsed and a new snapshot is written.
+	 * @param source, the pipe-delimited input file
+	 * @param snapshot, the snapshot file, or null to always parse the input file
+	 * @param threads, the number of threads that parse the input file
+	 * @param deduplicate, true to keep only the first of the rows that are equal as Features
+	 * @return the store holding all valid features of the file
+	 * @throws IOException if the input file cannot be read
+	 */
+	public static FeatureStore load(File source, File snapshot, int threads, boolean deduplicate) throws IOException {
+
+		if (snapshot != null && isCurrent(snapshot, source)) {
+			try {
+				return read(snapshot, source, deduplicate);
+			}
+			catch (IOException | RuntimeException e) {
+				//a damaged snapshot is replaced below
+			}
+		}
+
+		FeatureStore store = FeatureLoader.load(source, threads, deduplicate);
+		if (snapshot != null) {
+			try {
+				write(store, source, snapshot, deduplicate);
+			}
+			catch (IOException e) {
+				System.err.println("The snapshot "+snapshot.getAbsolutePath()+" cannot be written.\n");
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Checks whether the snapshot exists and is newer than the source file
+	 * @param snapshot, the snapshot file
+	 * @param source, the file the snapshot was made from
+	 * @return true if the snapshot can be used instead of the source file, false otherwise
+	 */
+	public static boolean isCurrent(File snapshot, File source) {
+		return snapshot.isFile() && snapshot.canRead() && snapshot.lastModified() > source.lastModified();
+	}
+
+	/**
+	 * Writes the store to a snapshot file. The file is written under a new temporary name and then renamed,
+	 * so a program that reads the snapshot at the same time never sees a partial file and programs that write
+	 * it at the same time never write into each other's file.
+	 * @param store, the store to save
+	 * @param source, the file the store was loaded from
+	 * @param snapshot, the snapshot file
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public static void write(FeatureStore store, File source, File snapshot) throws IOException {
+		write(store, source, snapshot, false);
+	}
+
+	/**
+	 * Writes the store to a snapshot file. The file is written under a new temporary name and then renamed,
+	 * so a program that reads the snapshot at the same time never sees a partial file and programs that write
+	 * it at the same time never write into each other's file.
+	 * @param store, the store to save
+	 * @param source, the file the store was loaded from
+	 * @param snapshot, the snapshot file
+	 * @param deduplicated, true if the duplicate rows of the source file were dropped
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public static void write(FeatureStore store, File source, File snapshot, boolean deduplicated) throws IOException {
+
+		//the temporary file is next to the snapshot, so it can be renamed to it atomically
+		Path temp = Files.createTempFile(snapshot.getAbsoluteFile().getParentFile().toPath(), snapshot.getName() + ".", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				Output out = new Output(channel);
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+				out.writeInt(deduplicated ? 1 : 0);
+
+				int size = store.size();
+				out.writeInt(size);
+				FeatureIndex index = store.getIndex();
+				writeDictionary(out, index.getStates().getDictionary());
+				writeDictionary(out, store.getCounties().getDictionary());
+				writeDictionary(out, index.getClasses().getDictionary());
+				out.align(8);
+				out.writeRecords(store);
+
+				//names are stored as one block of UTF-8 bytes with the offset of every name
+				byte[][] encoded = new byte[size][];
+				int[] offsets = new int[size + 1];
+				for (int i = 0; i < size; i++) {
+					encoded[i] = store.getName(i).getBytes(StandardCharsets.UTF_8);
+					offsets[i + 1] = offsets[i] + encoded[i].length;
+				}
+				out.writeInts(offsets);
+				for (byte[] name : encoded) {
+					out.writeBytes(name);
+				}
+
+				NameIndex names = index.getNames();
+				out.writeInt(names.gramCount());
+				out.writeInt(names.getRows().length);
+				out.writeLongs(names.getGrams());
+				out.writeInts(names.getOffsets());
+				out.writeInts(names.getRows());
+				out.writeInts(store.getSpatialIndex().getOrder());
+				out.writeInts(store.getElevationIndex().getOrder());
+				out.flush();
+			}
+			setPermissions(temp, source);
+			Files.move(temp, snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Gives the temporary file the read and write permissions of the source file, so everyone who can read the
+	 * GNIS file can also read its snapshot; createTempFile makes a file only its owner can read.
+	 * The owner can always read and write it, and rw-r--r-- is used when the source has no POSIX permissions.
+	 * Nothing is changed on a file system without POSIX permissions.
+	 */
+	private static void setPermissions(Path temp, File source) throws IOException {
+		Set<PosixFilePermission> permissions;
+		try {
+			permissions = EnumSet.copyOf(Files.getPosixFilePermissions(source.toPath()));
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			permissions = PosixFilePermissions.fromString("rw-r--r--");
+		}
+		permissions.retainAll(EnumSet.of(PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE,
+				PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE));
+		permissions.add(PosixFilePermission.OWNER_READ);
+		permissions.add(PosixFilePermission.OWNER_WRITE);
+		try {
+			Files.setPosixFilePermissions(temp, permissions);
+		}
+		catch (UnsupportedOperationException e) {
+			//the file system has no POSIX permissions, the file keeps the ones it was created with
+		}
+	}
+
+	/**
+	 * Reads a store from a snapshot file
+	 * @param snapshot, the snapshot file
+	 * @return the store saved in the file
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static FeatureStore read(File snapshot) throws IOException {
+		return read(snapshot, null, false);
+	}
+
+	/**
+	 * Reads a store from a snapshot file, checking that it was made from the current version of the source file
+	 * @param snapshot, the snapshot file
+	 * @param source, the file the snapshot should be made from, or null to skip the checks
+	 * @param deduplicated, whether the duplicate rows of the source file should have been dropped
+	 * @return the store saved in the file
+	 * @throws IOException if the file cannot be read, is not a snapshot or was made from a different source file
+	 * or with the other deduplicate setting
+	 */
+	private static FeatureStore read(File snapshot, File source, boolean deduplicated) throws IOException {
+
+		try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r"); FileChannel channel = raf.getChannel()) {
+			Input in = new Input(channel);
+			int size = readHeader(in, snapshot, source, deduplicated);
+			Dictionary states = readDictionary(in);
+			Dictionary counties = readDictionary(in);
+			Dictionary classes = readDictionary(in);
+			int[] stateOrdinals = new int[size];
+			int[] countyOrdinals = new int[size];
+			int[] classOrdinals = new int[size];
+			double[] latitudes = new double[size];
+			double[] longitudes = new double[size];
+			int[] elevations = new int[size];
+			in.align(8);
+			in.readRecords(size, latitudes, longitudes, elevations, stateOrdinals, countyOrdinals, classOrdinals);
+
+			int[] offsets = in.readInts(size + 1);
+			byte[] block = in.readBytes(offsets[size]);
+			//repeated names are decoded once and share one String
+			StringCache cache = new StringCache();
+			String[] names = new String[size];
+			for (int i = 0; i < size; i++) {
+				names[i] = cache.get(block, offsets[i], offsets[i + 1] - offsets[i]);
+			}
+
+			int gramCount = in.readInt();
+			int postings = in.readInt();
+			long[] grams = in.readLongs(gramCount);
+			int[] gramOffsets = in.readInts(gramCount + 1);
+			int[] rows = in.readInts(postings);
+			int[] spatialOrder = in.readInts(size);
+			int[] elevationOrder = in.readInts(size);
+
+			FeatureIndex index = new FeatureIndex(new NameIndex(grams, gramOffsets, rows),
+					new DictionaryColumn(states, stateOrdinals), new DictionaryColumn(classes, classOrdinals));
+			return new FeatureStore(names, latitudes, longitudes, elevations,
+					new DictionaryColumn(counties, countyOrdinals), index,
+					new SpatialIndex(latitudes, longitudes, spatialOrder), new ElevationIndex(elevations, elevationOrder));
+		}
+	}
+
+	/**
+	 * Maps the rows of a snapshot file into an OffHeapStore, without copying them or reading the indexes
+	 * @param snapshot, the snapshot file
+	 * @return the store over the mapped records and names
+	 * @throws IOException if the file cannot be read or mapped or is not a snapshot
+	 */
+	public static OffHeapStore map(File snapshot) throws IOException {
+		return map(snapshot, null, false);
+	}
+
+	/**
+	 * Maps the features of a GNIS file from its snapshot into an OffHeapStore. When the snapshot is missing,
+	 * older than the file or made with the other deduplicate setting, the file is parsed, a new snapshot is written
+	 * and the new snapshot is mapped, so the rows are only on the heap while the snapshot is written.
+	 * @param source, the pipe-delimited input file
+	 * @param snapshot, the snapshot file
+	 * @param threads, the number of threads that parse the input file
+	 * @param deduplicate, true to keep only the first of the rows that are equal as Features
+	 * @return the store over the mapped records and names
+	 * @throws IOException if the input file cannot be read or the snapshot cannot be written or mapped
+	 * @throws IllegalArgumentException if the snapshot is null
+	 */
+	public static OffHeapStore loadOffHeap(File source, File snapshot, int threads, boolean deduplicate)
+			throws IOException, IllegalArgumentException {
+
+		if (snapshot == null) {
+			throw new IllegalArgumentException("Null Argument Error in FeatureSnapshot");
+		}
+		if (isCurrent(snapshot, source)) {
+			try {
+				return map(snapshot, source, deduplicate);
+			}
+			catch (IOException | RuntimeException e) {
+				//a damaged snapshot is replaced below
+			}
+		}
+		write(FeatureLoader.load(source, threads, deduplicate), source, snapshot, deduplicate);
+		return map(snapshot, source, deduplicate);
+	}
+
+	/**
+	 * Maps the rows of a snapshot file, checking that it was made from the current version of the source file
+	 * @param snapshot, the snapshot file
+	 * @param source, the file the snapshot should be made from, or null to skip the checks
+	 * @param deduplicated, whether the duplicate rows of the source file should have been dropped
+	 * @return the store over the mapped records and names
+	 * @throws IOException if the file cannot be read or mapped, is not a snapshot or was made from a different
+	 * source file or with the other deduplicate setting
+	 */
+	private static OffHeapStore map(File snapshot, File source, boolean deduplicated) throws IOException {
+
+		//the mappings stay valid after the channel is closed
+		try (RandomAccessFile raf = new RandomAccessFile(snapshot, "r"); FileChannel channel = raf.getChannel()) {
+			Input in = new Input(channel);
+			int size = readHeader(in, snapshot, source, deduplicated);
+			Dictionary states = readDictionary(in);
+			Dictionary counties = readDictionary(in);
+			Dictionary classes = readDictionary(in);
+			in.align(8);
+			ByteBuffer records = in.mapSection((long) size * OffHeapStore.RECORD);
+			ByteBuffer offsets = in.mapSection(4L * (size + 1));
+			ByteBuffer names = in.mapSection(offsets.getInt(4 * size));
+			return new OffHeapStore(size, records, offsets, names, states, counties, classes);
+		}
+	}
+
+	/**
+	 * Reads the header of a snapshot file, checking that it was made from the current version of the source file
+	 * @return the number of rows
+	 * @throws IOException if the file is not a snapshot or was made from a different source file
+	 * or with the other deduplicate setting
+	 */
+	private static int readHeader(Input in, File snapshot, File source, boolean deduplicated) throws IOException {
+		if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("The file " + snapshot.getAbsolutePath() + " is not a snapshot");
+		}
+		long sourceLength = in.readLong();
+		long sourceModified = in.readLong();
+		if (source != null && (sourceLength != source.length() || sourceModified != source.lastModified())) {
+			throw new IOException("The snapshot " + snapshot.getAbsolutePath() + " was made from a different file");
+		}
+		boolean sourceDeduplicated = in.readInt() == 1;
+		if (source != null && sourceDeduplicated != deduplicated) {
+			throw new IOException("The snapshot " + snapshot.getAbsolutePath() + " was made with other settings");
+		}
+		int size = in.readInt();
+		if (size < 0) {
+			throw new IOException("The snapshot " + snapshot.getAbsolutePath() + " is damaged");
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the values of a dictionary in ordinal order
+	 */
+	private static void writeDictionary(Output out, Dictionary dictionary) throws IOException {
+		out.writeInt(dictionary.size());
+		for (int i = 0; i < dictionary.size(); i++) {
+			byte[] value = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(value.length);
+			out.writeBytes(value);
+		}
+	}
+
+	/**
+	 * Reads the values of a dictionary, which get back their ordinals since they are added in order
+	 */
+	private static Dictionary readDictionary(Input in) throws IOException {
+		Dictionary dictionary = new Dictionary();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			dictionary.add(new String(in.readBytes(in.readInt()), StandardCharsets.UTF_8));
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Writes primitive values and arrays to a channel through a buffer
+	 */
+	private static class Output {
+
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+		//bytes written to the channel so far
+		private long written = 0;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void writeInt(int value) throws IOException {
+			room(4);
+			buffer.putInt(value);
+		}
+
+		void writeLong(long value) throws IOException {
+			room(8);
+			buffer.putLong(value);
+		}
+
+		void writeInts(int[] values) throws IOException {
+			for (int i = 0; i < values.length; ) {
+				room(4);
+				int count = Math.min(values.length - i, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, i, count);
+				buffer.position(buffer.position() + count * 4);
+				i += count;
+			}
+		}
+
+		void writeLongs(long[] values) throws IOException {
+			for (int i = 0; i < values.length; ) {
+				room(8);
+				int count = Math.min(values.length - i, buffer.remaining() / 8);
+				buffer.asLongBuffer().put(values, i, count);
+				buffer.position(buffer.position() + count * 8);
+				i += count;
+			}
+		}
+
+		void writeRecords(FeatureStore store) throws IOException {
+			for (int row = 0; row < store.size(); ) {
+				room(OffHeapStore.RECORD);
+				int count = Math.min(store.size() - row, buffer.remaining() / OffHeapStore.RECORD);
+				OffHeapStore.putRecords(buffer, store, row, row + count);
+				row += count;
+			}
+		}
+
+		/**
+		 * Writes zeros up to the next multiple of the given number of bytes
+		 */
+		void align(int bytes) throws IOException {
+			room(bytes);
+			while ((written + buffer.position()) % bytes != 0) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		void writeBytes(byte[] values) throws IOException {
+			for (int i = 0; i < values.length; ) {
+				room(1);
+				int count = Math.min(values.length - i, buffer.remaining());
+				buffer.put(values, i, count);
+				i += count;
+			}
+		}
+
+		/**
+		 * Makes sure the buffer has room for at least the given number of bytes
+		 */
+		private void room(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			written += buffer.remaining();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Reads primitive values and arrays from a memory mapped channel, mapping one window of the file at a time
+	 */
+	private static class Input {
+
+		private FileChannel channel;
+		private long size;
+		private MappedByteBuffer window = null;
+		private long windowStart = 0;
+		private long position = 0;
+
+		Input(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		int readInt() throws IOException {
+			int value = map(4).getInt();
+			position += 4;
+			return value;
+		}
+
+		long readLong() throws IOException {
+			long value = map(8).getLong();
+			position += 8;
+			return value;
+		}
+
+		int[] readInts(int count) throws IOException {
+			int[] values = new int[count];
+			for (int i = 0; i < count; ) {
+				ByteBuffer buffer = map(4);
+				int n = Math.min(count - i, buffer.remaining() / 4);
+				buffer.asIntBuffer().get(values, i, n);
+				position += 4L * n;
+				i += n;
+			}
+			return values;
+		}
+
+		long[] readLongs(int count) throws IOException {
+			long[] values = new long[count];
+			for (int i = 0; i < count; ) {
+				ByteBuffer buffer = map(8);
+				int n = Math.min(count - i, buffer.remaining() / 8);
+				buffer.asLongBuffer().get(values, i, n);
+				position += 8L * n;
+				i += n;
+			}
+			return values;
+		}
+
+		void readRecords(int count, double[] latitudes, double[] longitudes, int[] elevations,
+				int[] states, int[] counties, int[] classes) throws IOException {
+			for (int i = 0; i < count; ) {
+				ByteBuffer buffer = map(OffHeapStore.RECORD);
+				int n = Math.min(count - i, buffer.remaining() / OffHeapStore.RECORD);
+				for (int end = i + n, at = buffer.position(); i < end; i++, at += OffHeapStore.RECORD) {
+					latitudes[i] = buffer.getDouble(at + OffHeapStore.LATITUDE);
+					longitudes[i] = buffer.getDouble(at + OffHeapStore.LONGITUDE);
+					elevations[i] = buffer.getInt(at + OffHeapStore.ELEVATION);
+					states[i] = buffer.getInt(at + OffHeapStore.STATE);
+					counties[i] = buffer.getInt(at + OffHeapStore.COUNTY);
+					classes[i] = buffer.getInt(at + OffHeapStore.CLASS);
+				}
+				position += (long) OffHeapStore.RECORD * n;
+			}
+		}
+
+		/**
+		 * Skips the zeros up to the next multiple of the given number of bytes
+		 */
+		void align(int bytes) {
+			position = (position + bytes - 1) / bytes * bytes;
+		}
+
+		/**
+		 * Maps the next bytes of the file into a buffer of their own and skips them
+		 * @throws IOException if the file ends before that many bytes or they are too many for one buffer
+		 */
+		ByteBuffer mapSection(long bytes) throws IOException {
+			if (bytes < 0 || position + bytes > size) {
+				throw new IOException("Snapshot ends unexpectedly");
+			}
+			if (bytes > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot section too large to map");
+			}
+			ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+			position += bytes;
+			return section;
+		}
+
+		byte[] readBytes(int count) throws IOException {
+			byte[] values = new byte[count];
+			for (int i = 0; i < count; ) {
+				ByteBuffer buffer = map(1);
+				int n = Math.min(count - i, buffer.remaining());
+				buffer.get(values, i, n);
+				position += n;
+				i += n;
+			}
+			return values;
+		}
+
+		/**
+		 * Returns a buffer positioned at the current position with at least the given number of bytes remaining,
+		 * mapping a new window of the file when the current one ends too early
+		 * @throws IOException if the file ends before that many bytes
+		 */
+		private ByteBuffer map(int bytes) throws IOException {
+			if (position + bytes > size) {
+				throw new IOException("Snapshot ends unexpectedly");
+			}
+			if (window == null || position < windowStart || position + bytes > windowStart + window.limit()) {
+				windowStart = position;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+			}
+			ByteBuffer buffer = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position((int) (position - windowStart));
+			return buffer;
+		}
+	}
+}
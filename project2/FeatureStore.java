@@ -0,0 +1,802 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The FeatureStore class stores a large set of features column by column instead of as Feature objects.
+ * Latitude, longitude and elevation are kept in primitive arrays, and state, county and class are
+ * dictionary encoded, so a row costs a few primitive entries plus its name.
+ * Feature objects are only created (as views of a row) for the features returned by a search.
+ * Besides the name, state and class indexes, a k-d tree over the coordinates answers distance and box searches
+ * and a sorted elevation index answers elevation ranges.
+ *
+ * The rows are stored in natural ordering of Feature elements, so any increasing list of rows
+ * (for example a posting list) is already in the order the search results are returned in,
+ * except for the order of features that compare equal: their rows are in the order the features were read,
+ * and queries return them ordered by Query.compareTies, so a single name, class or state search gives the last row
+ * first, as FeatureList does.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class FeatureStore implements FeatureTable {
+
+	private String[] names;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int[] elevations;
+	private DictionaryColumn counties;
+
+	//name, state and class indexes over the rows
+	private FeatureIndex index;
+
+	//k-d tree over latitude and longitude
+	private SpatialIndex spatial;
+
+	//rows sorted by elevation
+	private ElevationIndex elevationIndex;
+
+	//completions of the names, built the first time a name is completed
+	private volatile PrefixIndex prefixIndex;
+
+	//words of the names for fuzzy searches, built the first time one runs
+	private volatile FuzzyIndex fuzzyIndex;
+
+	/**
+	 * Constructs a FeatureStore from columns that are already in natural ordering of Feature elements
+	 * @param names, the feature names
+	 * @param latitudes, the latitudes
+	 * @param longitudes, the longitudes
+	 * @param elevations, the elevations
+	 * @param counties, the county column
+	 * @param index, the name, state and class indexes over the rows
+	 * @param spatial, the k-d tree over latitude and longitude, or null to build it here
+	 * @param elevationIndex, the rows sorted by elevation, or null to build it here
+	 */
+	public FeatureStore(String[] names, double[] latitudes, double[] longitudes, int[] elevations,
+			DictionaryColumn counties, FeatureIndex index, SpatialIndex spatial, ElevationIndex elevationIndex) {
+		this.names = names;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.elevations = elevations;
+		this.counties = counties;
+		this.index = index;
+		this.spatial = (spatial == null) ? SpatialIndex.of(latitudes, longitudes) : spatial;
+		this.elevationIndex = (elevationIndex == null) ? ElevationIndex.of(elevations) : elevationIndex;
+	}
+
+	/**
+	 * Builds a store holding the given features
+	 * @param features, the features to store
+	 * @return the store
+	 */
+	public static FeatureStore of(Iterable<Feature> features) {
+		Builder builder = new Builder();
+		for (Feature f : features) {
+			builder.add(f);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the number of features in this store
+	 * @return the number of rows
+	 */
+	@Override
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the name of the feature in the given row
+	 * @param row, the row
+	 * @return the feature name
+	 */
+	@Override
+	public String getName(int row) {
+		return names[row];
+	}
+
+	/**
+	 * Returns the class of the feature in the given row
+	 * @param row, the row
+	 * @return the feature class
+	 */
+	@Override
+	public String getFeatureClass(int row) {
+		DictionaryColumn classes = index.getClasses();
+		return classes.getDictionary().get(classes.ordinal(row));
+	}
+
+	/**
+	 * Returns the state of the feature in the given row
+	 * @param row, the row
+	 * @return the state
+	 */
+	@Override
+	public String getState(int row) {
+		DictionaryColumn states = index.getStates();
+		return states.getDictionary().get(states.ordinal(row));
+	}
+
+	/**
+	 * Returns the county of the feature in the given row
+	 * @param row, the row
+	 * @return the county
+	 */
+	@Override
+	public String getCounty(int row) {
+		return counties.getDictionary().get(counties.ordinal(row));
+	}
+
+	/**
+	 * Returns the latitude of the feature in the given row
+	 * @param row, the row
+	 * @return the latitude
+	 */
+	@Override
+	public double getLatitude(int row) {
+		return latitudes[row];
+	}
+
+	/**
+	 * Returns the longitude of the feature in the given row
+	 * @param row, the row
+	 * @return the longitude
+	 */
+	@Override
+	public double getLongitude(int row) {
+		return longitudes[row];
+	}
+
+	/**
+	 * Returns the elevation of the feature in the given row
+	 * @param row, the row
+	 * @return the elevation
+	 */
+	@Override
+	public int getElevation(int row) {
+		return elevations[row];
+	}
+
+	/**
+	 * Returns the names of all rows
+	 */
+	String[] names() {
+		return names;
+	}
+
+	/**
+	 * Returns the county column
+	 * @return the dictionary encoded county column
+	 */
+	public DictionaryColumn getCounties() {
+		return counties;
+	}
+
+	/**
+	 * Returns the name, state and class indexes over the rows
+	 * @return the indexes
+	 */
+	public FeatureIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the k-d tree over latitude and longitude
+	 * @return the spatial index
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatial;
+	}
+
+	/**
+	 * Returns the rows sorted by elevation
+	 * @return the elevation index
+	 */
+	public ElevationIndex getElevationIndex() {
+		return elevationIndex;
+	}
+
+	/**
+	 * Returns the prefix index over the names, building it the first time
+	 * @return the prefix index
+	 */
+	public PrefixIndex getPrefixIndex() {
+		PrefixIndex index = prefixIndex;
+		if (index == null) {
+			synchronized (this) {
+				if (prefixIndex == null) {
+					prefixIndex = PrefixIndex.of(names);
+				}
+				index = prefixIndex;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index of the words of the names, building it the first time
+	 * @return the fuzzy index
+	 */
+	public FuzzyIndex getFuzzyIndex() {
+		FuzzyIndex index = fuzzyIndex;
+		if (index == null) {
+			synchronized (this) {
+				if (fuzzyIndex == null) {
+					fuzzyIndex = FuzzyIndex.of(names);
+				}
+				index = fuzzyIndex;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a Feature object holding the data of the given row
+	 * @param row, the row
+	 * @return a new Feature with its Location
+	 */
+	@Override
+	public Feature getFeature(int row) {
+		Location loc = new Location(getState(row), getCounty(row));
+		loc.setLatitude(latitudes[row]);
+		loc.setLongitude(longitudes[row]);
+		loc.setElevation(elevations[row]);
+		return new Feature(names[row], getFeatureClass(row), loc);
+	}
+
+	/**
+	 * Searches the store for features whose name contains the given keyword, ignoring case.
+	 * @param keyword; the name of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByName(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		String key = keyword.toLowerCase();
+		int[] candidates = index.getNames().candidates(keyword);
+		int count = (candidates == null) ? size() : candidates.length;
+		int[] rows = new int[count];
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			int row = (candidates == null) ? i : candidates[i];
+			if (names[row].toLowerCase().contains(key)) {
+				rows[found++] = row;
+			}
+		}
+		QueryPlan.sortTies(rows, found, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, found);
+	}
+
+	/**
+	 * Completes the beginning of a feature name.
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @param count, the largest number of completions returned
+	 * @return the distinct names (ignoring case) that start with the prefix, the ones used by the most features first,
+	 * each written like its first feature in natural ordering
+	 * @throws IllegalArgumentException if prefix is null or empty or count is not positive.
+	 */
+	@Override
+	public List<PrefixIndex.Completion> complete(String prefix, int count) throws IllegalArgumentException {
+
+		if (prefix == null || prefix.equals("") || count <= 0) {
+			throw new IllegalArgumentException("Prefix Input is Illegal");
+		}
+
+		PrefixIndex prefixes = getPrefixIndex();
+		ArrayList<PrefixIndex.Completion> completions = new ArrayList<PrefixIndex.Completion>();
+		for (int entry : prefixes.complete(prefix, count)) {
+			completions.add(new PrefixIndex.Completion(names[prefixes.getRow(entry, 0)], prefixes.getCount(entry)));
+		}
+		return completions;
+	}
+
+	/**
+	 * Summarizes the features of every group of an aggregation, in parallel over the rows
+	 * @param aggregation, the parsed aggregation
+	 * @return the groups with at least one feature, ordered by their values
+	 * @throws IllegalArgumentException if aggregation is null.
+	 */
+	@Override
+	public List<Aggregation.Group> aggregate(Aggregation aggregation) throws IllegalArgumentException {
+		if (aggregation == null) {
+			throw new IllegalArgumentException("Null Argument Error in FeatureStore");
+		}
+		return Aggregation.combine(aggregation.run(this, null));
+	}
+
+	/**
+	 * Searches the store for features whose class contains the given keyword, ignoring case.
+	 * @param keyword; the class of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByClass(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		DictionaryColumn classes = index.getClasses();
+		int[] rows = classes.rows(classes.getDictionary().matchContaining(keyword));
+		QueryPlan.sortTies(rows, rows.length, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, rows.length);
+	}
+
+	/**
+	 * Searches the store for features in the given state, ignoring case.
+	 * @param keyword; the state of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByState(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		DictionaryColumn states = index.getStates();
+		int[] rows = states.rows(states.getDictionary().matchIgnoreCase(keyword));
+		QueryPlan.sortTies(rows, rows.length, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, rows.length);
+	}
+
+	/**
+	 * Searches the store for features with an elevation in the given range.
+	 * @param min, the lowest elevation (inclusive)
+	 * @param max, the highest elevation (inclusive)
+	 * @return the sorted FeatureList containing all of the features in the range, or null if there are none
+	 * @throws IllegalArgumentException if min is greater than max.
+	 */
+	public FeatureList getByElevation(int min, int max) throws IllegalArgumentException {
+
+		if (min > max) {
+			throw new IllegalArgumentException("Elevation Range is Illegal");
+		}
+
+		int[] rows = elevationIndex.rows(min, max);
+		return getFeatures(rows, rows.length);
+	}
+
+	/**
+	 * Searches the store for features within a distance of a point.
+	 * @param lat, latitude of the point
+	 * @param lon, longitude of the point
+	 * @param radiusKm, the great circle distance in kilometers
+	 * @return the sorted FeatureList containing all of the features within the distance, or null if there are none
+	 * @throws IllegalArgumentException if the point or the distance is invalid.
+	 */
+	public FeatureList getNear(double lat, double lon, double radiusKm) throws IllegalArgumentException {
+
+		if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180) || !(radiusKm >= 0)) {
+			throw new IllegalArgumentException("Point or Distance Input is Illegal");
+		}
+
+		int[] rows = spatial.near(lat, lon, radiusKm);
+		return getFeatures(rows, rows.length);
+	}
+
+	/**
+	 * Searches the store for features inside a latitude/longitude box given by two opposite corners.
+	 * @param lat1, latitude of the first corner
+	 * @param lon1, longitude of the first corner
+	 * @param lat2, latitude of the opposite corner
+	 * @param lon2, longitude of the opposite corner
+	 * @return the sorted FeatureList containing all of the features inside the box, or null if there are none
+	 * @throws IllegalArgumentException if a corner is invalid.
+	 */
+	public FeatureList getInBox(double lat1, double lon1, double lat2, double lon2) throws IllegalArgumentException {
+
+		if (!(lat1 >= -90 && lat1 <= 90 && lat2 >= -90 && lat2 <= 90)
+				|| !(lon1 >= -180 && lon1 <= 180 && lon2 >= -180 && lon2 <= 180)) {
+			throw new IllegalArgumentException("Corner Input is Illegal");
+		}
+
+		int[] rows = spatial.inBox(Math.min(lat1, lat2), Math.min(lon1, lon2), Math.max(lat1, lat2), Math.max(lon1, lon2));
+		return getFeatures(rows, rows.length);
+	}
+
+	/**
+	 * Searches the store for the features closest to a point, optionally only among features of a class and state.
+	 * @param lat, latitude of the point
+	 * @param lon, longitude of the point
+	 * @param k, the number of features to find
+	 * @param featureClass, keyword the class of the features has to contain (ignoring case), or null for any class
+	 * @param state, the state of the features (ignoring case), or null for any state
+	 * @return the FeatureList of the k closest features, closest first, or null if there are none
+	 * @throws IllegalArgumentException if the point or k is invalid.
+	 */
+	public FeatureList getNearest(double lat, double lon, int k, String featureClass, String state)
+			throws IllegalArgumentException {
+
+		if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180) || k <= 0) {
+			throw new IllegalArgumentException("Point or Count Input is Illegal");
+		}
+
+		//the restrictions are checked while searching, so that k matching features are found
+		DictionaryColumn classes = index.getClasses();
+		DictionaryColumn states = index.getStates();
+		boolean[] classMatch = (featureClass == null) ? null : classes.getDictionary().matchContaining(featureClass);
+		boolean[] stateMatch = (state == null) ? null : states.getDictionary().matchIgnoreCase(state);
+		IntPredicate filter = null;
+		if (classMatch != null || stateMatch != null) {
+			filter = row -> (classMatch == null || classMatch[classes.ordinal(row)])
+					&& (stateMatch == null || stateMatch[states.ordinal(row)]);
+		}
+
+		int[] rows = spatial.nearest(lat, lon, k, filter);
+		return getFeatures(rows, rows.length, false);
+	}
+
+	/**
+	 * Runs a query in a single pass over the smallest source of rows the query can use.
+	 * @param query; the parsed query
+	 * @return the sorted FeatureList (closest first for a nearest search) of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	public FeatureList search(Query query) throws IllegalArgumentException {
+		return QueryPlan.of(this, query).run();
+	}
+
+	/**
+	 * Runs a query lazily without creating the features
+	 * @param query; the parsed query
+	 * @return the stream of the matching rows in natural ordering of their features (closest first for a nearest search)
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	@Override
+	public IntStream rowStream(Query query) throws IllegalArgumentException {
+		return QueryPlan.of(this, query).rowStream();
+	}
+
+	/**
+	 * Runs a query lazily, creating the features one at a time as the stream is consumed.
+	 * Use limit and offset in the query to page through large results.
+	 * @param query; the parsed query
+	 * @return the stream of the matching features in natural ordering of Feature elements (closest first for a nearest search)
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	public Stream<Feature> stream(Query query) throws IllegalArgumentException {
+		return QueryPlan.of(this, query).stream();
+	}
+
+	/**
+	 * Creates the features of the given rows.
+	 * The list shares the indexes of this store, so it can be narrowed down further without comparing strings.
+	 * @param rows, rows in natural ordering of their features in rows[0..count)
+	 * @param count, the number of rows
+	 * @return the sorted FeatureList of the features in the rows, or null if count is 0
+	 */
+	public FeatureList getFeatures(int[] rows, int count) {
+		return getFeatures(rows, count, true);
+	}
+
+	/**
+	 * Creates the features of the given rows, in the order of the rows
+	 * @param rows, rows in rows[0..count)
+	 * @param count, the number of rows
+	 * @param sorted, true if the rows are in natural ordering of their features
+	 * @return the FeatureList of the features in the rows, or null if count is 0
+	 */
+	@Override
+	public FeatureList getFeatures(int[] rows, int count, boolean sorted) {
+		if (count == 0) {
+			return null;
+		}
+		FeatureList list = new FeatureList();
+		list.ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			list.add(getFeature(rows[i]));
+		}
+		list.attachIndex(index, Arrays.copyOf(rows, count), sorted);
+		return list;
+	}
+
+	/**
+	 * The Builder class collects the rows of a FeatureStore, validating them like the Feature and Location classes do.
+	 * When all rows are added, build sorts them and creates the indexes.
+	 */
+	public static class Builder {
+
+		//names are ordinals of the name dictionary, so every distinct name is kept once
+		private int[] names = new int[1024];
+		private double[] latitudes = new double[1024];
+		private double[] longitudes = new double[1024];
+		private int[] elevations = new int[1024];
+		private int[] states = new int[1024];
+		private int[] counties = new int[1024];
+		private int[] classes = new int[1024];
+		private int size = 0;
+
+		private Dictionary nameDictionary = new Dictionary();
+		private Dictionary stateDictionary = new Dictionary();
+		private Dictionary countyDictionary = new Dictionary();
+		private Dictionary classDictionary = new Dictionary();
+
+		/**
+		 * Default constructor for the Builder
+		 * Constructs a Builder with no rows.
+		 */
+		public Builder() {
+		}
+
+		/**
+		 * Adds the data of a feature as a new row
+		 * @param f, the feature to add
+		 * @throws IllegalArgumentException if the feature is null
+		 */
+		public void add(Feature f) throws IllegalArgumentException {
+			if (f == null) {
+				throw new IllegalArgumentException("Null Argument Error in FeatureStore");
+			}
+			Location loc = f.getFeatureLocation();
+			add(f.getFeatureName(), f.getFeatureClass(), loc.getState(), loc.getCounty(),
+					loc.getLatitude(), loc.getLongitude(), loc.getElevation());
+		}
+
+		/**
+		 * Adds a new row
+		 * @param name, name of the feature, should be a non-empty String
+		 * @param featureClass, class of the feature, should be a non-empty String
+		 * @param state, should be a non-empty String
+		 * @param county, should be a non-empty String
+		 * @param latitude, in the range -90 to +90 (inclusive)
+		 * @param longitude, in the range -180 to +180 (inclusive)
+		 * @param elevation, the elevation
+		 * @throws IllegalArgumentException if the values would not make a valid Feature and Location
+		 */
+		public void add(String name, String featureClass, String state, String county,
+				double latitude, double longitude, int elevation) throws IllegalArgumentException {
+
+			//same validation as the Location and Feature classes
+			if (state == null || county == null) {
+				throw new IllegalArgumentException("Null Argument Error in Location Class");
+			}
+			if (state.equals("") || county.equals("")) {
+				throw new IllegalArgumentException("Empty String Argument Error in Location Class");
+			}
+			if (latitude > 90 || latitude < -90) {
+				throw new IllegalArgumentException("Invalid value for latitude. Valid range is -90 to +90 (inclusive)");
+			}
+			if (longitude > 180 || longitude < -180) {
+				throw new IllegalArgumentException("Invalid value for longitude. Valid range is -180 to +180 (inclusive)");
+			}
+			if (name == null || featureClass == null) {
+				throw new IllegalArgumentException("Null Agrgument Error in Feature Class");
+			}
+			if (name.equals("") || featureClass.equals("")) {
+				throw new IllegalArgumentException("Empty String Agrgument Error in Feature Class");
+			}
+
+			if (size == names.length) {
+				grow();
+			}
+			names[size] = nameDictionary.add(name);
+			latitudes[size] = latitude;
+			longitudes[size] = longitude;
+			elevations[size] = elevation;
+			states[size] = stateDictionary.add(state);
+			counties[size] = countyDictionary.add(county);
+			classes[size] = classDictionary.add(featureClass);
+			size++;
+		}
+
+		/**
+		 * Adds all rows of another builder after the rows of this one, in the order they were added there
+		 * @param other, the builder whose rows are added
+		 */
+		public void append(Builder other) {
+
+			//the other builder numbers its dictionary values on its own
+			int[] nameMap = remap(other.nameDictionary, nameDictionary);
+			int[] stateMap = remap(other.stateDictionary, stateDictionary);
+			int[] countyMap = remap(other.countyDictionary, countyDictionary);
+			int[] classMap = remap(other.classDictionary, classDictionary);
+
+			while (size + other.size > names.length) {
+				grow();
+			}
+			System.arraycopy(other.latitudes, 0, latitudes, size, other.size);
+			System.arraycopy(other.longitudes, 0, longitudes, size, other.size);
+			System.arraycopy(other.elevations, 0, elevations, size, other.size);
+			for (int i = 0; i < other.size; i++) {
+				names[size + i] = nameMap[other.names[i]];
+				states[size + i] = stateMap[other.states[i]];
+				counties[size + i] = countyMap[other.counties[i]];
+				classes[size + i] = classMap[other.classes[i]];
+			}
+			size += other.size;
+		}
+
+		/**
+		 * Maps every ordinal of one dictionary to the ordinal of the same value in another, adding missing values
+		 */
+		private static int[] remap(Dictionary from, Dictionary to) {
+			int[] map = new int[from.size()];
+			for (int i = 0; i < map.length; i++) {
+				map[i] = to.add(from.get(i));
+			}
+			return map;
+		}
+
+		/**
+		 * Returns the number of rows added so far
+		 * @return the number of rows
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Drops every row that is equal to an earlier row the way Feature.equals defines it: the same name, class,
+		 * state and county ignoring case, the same latitude and longitude truncated 6 places after the decimal point
+		 * and the same elevation. The first of the equal rows is kept and the kept rows stay in the order they were added.
+		 * Each row is looked up once in an open addressing table of the kept rows, keyed by the hash code its Feature
+		 * would have, so the cost per row does not grow with the number of rows.
+		 * @return the number of rows dropped
+		 */
+		public int deduplicate() {
+
+			//equal ranks are equal values ignoring case, and the hash of each distinct value is computed once
+			int[] nameRanks = nameDictionary.ranksIgnoreCase();
+			int[] stateRanks = stateDictionary.ranksIgnoreCase();
+			int[] countyRanks = countyDictionary.ranksIgnoreCase();
+			int[] classRanks = classDictionary.ranksIgnoreCase();
+			int[] nameHashes = hashes(nameDictionary);
+			int[] stateHashes = hashes(stateDictionary);
+			int[] countyHashes = hashes(countyDictionary);
+			int[] classHashes = hashes(classDictionary);
+
+			int capacity = 2;
+			while (capacity < size * 2) {
+				capacity *= 2;
+			}
+			int mask = capacity - 1;
+			int[] table = new int[capacity];
+			int[] tableHashes = new int[capacity];
+			Arrays.fill(table, -1);
+
+			int kept = 0;
+			for (int row = 0; row < size; row++) {
+				int hash = Feature.hash(nameHashes[names[row]], classHashes[classes[row]],
+						Location.hash(stateHashes[states[row]], countyHashes[counties[row]],
+								latitudes[row], longitudes[row], elevations[row]));
+				int i = (hash ^ (hash >>> 16)) & mask;
+				boolean duplicate = false;
+				while (table[i] >= 0) {
+					int other = table[i];
+					if (tableHashes[i] == hash
+							&& elevations[other] == elevations[row]
+							&& Location.truncate(latitudes[other]) == Location.truncate(latitudes[row])
+							&& Location.truncate(longitudes[other]) == Location.truncate(longitudes[row])
+							&& stateRanks[states[other]] == stateRanks[states[row]]
+							&& countyRanks[counties[other]] == countyRanks[counties[row]]
+							&& classRanks[classes[other]] == classRanks[classes[row]]
+							&& nameRanks[names[other]] == nameRanks[names[row]]) {
+						duplicate = true;
+						break;
+					}
+					i = (i + 1) & mask;
+				}
+				if (duplicate) {
+					continue;
+				}
+
+				//moves the row down over the dropped ones, the rows before kept are all final
+				names[kept] = names[row];
+				latitudes[kept] = latitudes[row];
+				longitudes[kept] = longitudes[row];
+				elevations[kept] = elevations[row];
+				states[kept] = states[row];
+				counties[kept] = counties[row];
+				classes[kept] = classes[row];
+				table[i] = kept;
+				tableHashes[i] = hash;
+				kept++;
+			}
+
+			int dropped = size - kept;
+			size = kept;
+			return dropped;
+		}
+
+		/**
+		 * Hashes every value of a dictionary ignoring case
+		 */
+		private static int[] hashes(Dictionary dictionary) {
+			int[] hashes = new int[dictionary.size()];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = Location.hashIgnoreCase(dictionary.get(i));
+			}
+			return hashes;
+		}
+
+		/**
+		 * Sorts the rows in natural ordering of Feature elements and builds the store and its indexes.
+		 * Rows that compare equal keep the order they were added in.
+		 * @return the store holding all added rows
+		 */
+		public FeatureStore build() {
+
+			//ranks replace the case insensitive string comparisons of the dictionary encoded columns,
+			//so every distinct name is compared as a String only while its dictionary is ranked
+			int[] nameRanks = nameDictionary.ranksIgnoreCase();
+			int[] stateRanks = stateDictionary.ranksIgnoreCase();
+			int[] countyRanks = countyDictionary.ranksIgnoreCase();
+			int[] classRanks = classDictionary.ranksIgnoreCase();
+
+			int[] order = new int[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			//same order as Feature.compareTo and Location.compareTo
+			IntSort.sort(order, 0, size, (a, b) -> {
+				int c = Integer.compare(nameRanks[names[a]], nameRanks[names[b]]);
+				if (c != 0) {
+					return c;
+				}
+				c = Integer.compare(stateRanks[states[a]], stateRanks[states[b]]);
+				if (c != 0) {
+					return c;
+				}
+				c = Integer.compare(countyRanks[counties[a]], countyRanks[counties[b]]);
+				if (c != 0) {
+					return c;
+				}
+				c = Location.compare(latitudes[a], longitudes[a], elevations[a], latitudes[b], longitudes[b], elevations[b]);
+				if (c != 0) {
+					return c;
+				}
+				return Integer.compare(classRanks[classes[a]], classRanks[classes[b]]);
+			});
+
+			String[] sortedNames = new String[size];
+			double[] sortedLatitudes = new double[size];
+			double[] sortedLongitudes = new double[size];
+			int[] sortedElevations = new int[size];
+			int[] sortedStates = new int[size];
+			int[] sortedCounties = new int[size];
+			int[] sortedClasses = new int[size];
+			for (int i = 0; i < size; i++) {
+				int row = order[i];
+				sortedNames[i] = nameDictionary.get(names[row]);
+				sortedLatitudes[i] = latitudes[row];
+				sortedLongitudes[i] = longitudes[row];
+				sortedElevations[i] = elevations[row];
+				sortedStates[i] = states[row];
+				sortedCounties[i] = counties[row];
+				sortedClasses[i] = classes[row];
+			}
+
+			FeatureIndex index = new FeatureIndex(NameIndex.of(sortedNames),
+					new DictionaryColumn(stateDictionary, sortedStates),
+					new DictionaryColumn(classDictionary, sortedClasses));
+			return new FeatureStore(sortedNames, sortedLatitudes, sortedLongitudes, sortedElevations,
+					new DictionaryColumn(countyDictionary, sortedCounties), index, null, null);
+		}
+
+		/**
+		 * Doubles the capacity of all columns
+		 */
+		private void grow() {
+			int capacity = names.length * 2;
+			names = Arrays.copyOf(names, capacity);
+			latitudes = Arrays.copyOf(latitudes, capacity);
+			longitudes = Arrays.copyOf(longitudes, capacity);
+			elevations = Arrays.copyOf(elevations, capacity);
+			states = Arrays.copyOf(states, capacity);
+			counties = Arrays.copyOf(counties, capacity);
+			classes = Arrays.copyOf(classes, capacity);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package project2;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The FeatureTable interface is a read-only set of features addressed by row number, which queries can be run against.
+ * A single FeatureStore is a table, and so is a SegmentedTable that combines a store with the deltas applied to it
+ * and an OffHeapStore that keeps the rows of a store outside of the Java heap.
+ * Queries return rows, and the features (or just their values) are read from the table only for the rows that are used.
+ * Aggregations read the columns of the rows directly and return one summary per group.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public interface FeatureTable {
+
+	/**
+	 * Returns the number of features in this table
+	 * @return the number of features
+	 */
+	int size();
+
+	/**
+	 * Returns the name of the feature in the given row
+	 * @param row, the row
+	 * @return the feature name
+	 */
+	String getName(int row);
+
+	/**
+	 * Returns the class of the feature in the given row
+	 * @param row, the row
+	 * @return the feature class
+	 */
+	String getFeatureClass(int row);
+
+	/**
+	 * Returns the state of the feature in the given row
+	 * @param row, the row
+	 * @return the state
+	 */
+	String getState(int row);
+
+	/**
+	 * Returns the county of the feature in the given row
+	 * @param row, the row
+	 * @return the county
+	 */
+	String getCounty(int row);
+
+	/**
+	 * Returns the latitude of the feature in the given row
+	 * @param row, the row
+	 * @return the latitude
+	 */
+	double getLatitude(int row);
+
+	/**
+	 * Returns the longitude of the feature in the given row
+	 * @param row, the row
+	 * @return the longitude
+	 */
+	double getLongitude(int row);
+
+	/**
+	 * Returns the elevation of the feature in the given row
+	 * @param row, the row
+	 * @return the elevation
+	 */
+	int getElevation(int row);
+
+	/**
+	 * Creates a Feature object holding the data of the given row
+	 * @param row, the row
+	 * @return a new Feature with its Location
+	 */
+	Feature getFeature(int row);
+
+	/**
+	 * Creates the features of the given rows, in the order of the rows
+	 * @param rows, rows in rows[0..count)
+	 * @param count, the number of rows
+	 * @param sorted, true if the rows are in natural ordering of Feature elements
+	 * @return the FeatureList of the features in the rows, or null if count is 0
+	 */
+	FeatureList getFeatures(int[] rows, int count, boolean sorted);
+
+	/**
+	 * Runs a query lazily without creating the features
+	 * @param query, the parsed query
+	 * @return the stream of the matching rows, in natural ordering of their features
+	 * (closest first for a nearest search), after the offset and up to the limit of the query
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	IntStream rowStream(Query query) throws IllegalArgumentException;
+
+	/**
+	 * Completes the beginning of a feature name
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @param count, the largest number of completions returned
+	 * @return the distinct names (ignoring case) that start with the prefix, the ones used by the most features first
+	 * and names used by as many features in alphabetical order
+	 * @throws IllegalArgumentException if prefix is null or empty or count is not positive.
+	 */
+	List<PrefixIndex.Completion> complete(String prefix, int count) throws IllegalArgumentException;
+
+	/**
+	 * Summarizes the features of every group of an aggregation
+	 * @param aggregation, the parsed aggregation
+	 * @return the groups with at least one feature, ordered by their values
+	 * @throws IllegalArgumentException if aggregation is null.
+	 */
+	List<Aggregation.Group> aggregate(Aggregation aggregation) throws IllegalArgumentException;
+}
@@ -0,0 +1,313 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The FuzzyIndex class finds the features with a word in their name that is spelled almost like a keyword:
+ * within a given number of edits (characters inserted, deleted or replaced, the Levenshtein distance), ignoring case.
+ *
+ * The names are split into words (runs of letters and digits), folded like PrefixIndex.fold, and every distinct word
+ * gets a posting list of the rows whose name has it. The distinct words are kept in a BK-tree: every child of a word
+ * is at a known distance from it, so by the triangle inequality a search within k edits of a keyword only has to
+ * go down the children at distance d - k to d + k from a word at distance d. This way the distance is only computed
+ * to a small part of the distinct words, and never to every name.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class FuzzyIndex {
+
+	//largest number of edits a search allows
+	public static final int MAX_EDITS = 3;
+
+	//the distinct words and the rows of each one in rows[offsets[w]..offsets[w + 1])
+	private String[] words;
+	private HashMap<String, Integer> ids;
+	private int[] offsets;
+	private int[] rows;
+
+	//BK-tree over the words: the first child and next sibling of every word and its distance to its parent
+	private int[] firstChild;
+	private int[] nextSibling;
+	private int[] distances;
+
+	/**
+	 * Constructs a FuzzyIndex, use of to build one
+	 */
+	private FuzzyIndex() {
+	}
+
+	/**
+	 * Builds the index over the given names
+	 * @param names, the name of every row
+	 * @return the index
+	 */
+	public static FuzzyIndex of(String[] names) {
+
+		//numbers the distinct words and counts their rows, a word used twice in a name counts once
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<String> distinct = new ArrayList<String>();
+		int[] rowWords = new int[Math.max(16, names.length * 2)];
+		int[] rowOffsets = new int[names.length + 1];
+		int[] counts = new int[16];
+		int total = 0;
+		for (int row = 0; row < names.length; row++) {
+			rowOffsets[row] = total;
+			for (String word : words(names[row])) {
+				Integer id = ids.get(word);
+				if (id == null) {
+					id = distinct.size();
+					ids.put(word, id);
+					distinct.add(word);
+					if (id == counts.length) {
+						counts = Arrays.copyOf(counts, counts.length * 2);
+					}
+				}
+				boolean repeated = false;
+				for (int i = rowOffsets[row]; i < total; i++) {
+					repeated |= rowWords[i] == id;
+				}
+				if (!repeated) {
+					if (total == rowWords.length) {
+						rowWords = Arrays.copyOf(rowWords, rowWords.length * 2);
+					}
+					rowWords[total++] = id;
+					counts[id]++;
+				}
+			}
+		}
+		rowOffsets[names.length] = total;
+
+		FuzzyIndex index = new FuzzyIndex();
+		int size = distinct.size();
+		index.words = distinct.toArray(new String[0]);
+		index.ids = ids;
+		index.offsets = new int[size + 1];
+		for (int w = 0; w < size; w++) {
+			index.offsets[w + 1] = index.offsets[w] + counts[w];
+		}
+		//rows are visited in order, so every posting list is increasing
+		index.rows = new int[total];
+		int[] next = Arrays.copyOf(index.offsets, size);
+		for (int row = 0; row < names.length; row++) {
+			for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+				index.rows[next[rowWords[i]]++] = row;
+			}
+		}
+		index.buildTree();
+		return index;
+	}
+
+	/**
+	 * Splits a name into its folded words
+	 * @param name, the name
+	 * @return the runs of letters and digits of the name, folded like PrefixIndex.fold
+	 */
+	public static ArrayList<String> words(String name) {
+		ArrayList<String> words = new ArrayList<String>(4);
+		String folded = PrefixIndex.fold(name);
+		int start = -1;
+		for (int i = 0; i <= folded.length(); ) {
+			int c = (i < folded.length()) ? folded.codePointAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				if (start < 0) {
+					start = i;
+				}
+			}
+			else if (start >= 0) {
+				words.add(folded.substring(start, i));
+				start = -1;
+			}
+			i += (i < folded.length()) ? Character.charCount(c) : 1;
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the number of edits allowed when a search does not give one, growing with the length of the keyword
+	 * @param keyword, the keyword
+	 * @return 0 for up to 2 characters, 1 for up to 5 and 2 for longer keywords
+	 */
+	public static int defaultEdits(String keyword) {
+		int length = keyword.codePointCount(0, keyword.length());
+		return (length <= 2) ? 0 : (length <= 5) ? 1 : 2;
+	}
+
+	/**
+	 * Returns the number of distinct words
+	 * @return the number of words
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * Finds the words within the given number of edits of a keyword
+	 * @param keyword, the keyword, compared ignoring case
+	 * @param maxEdits, the largest number of edits
+	 * @return the folded words
+	 */
+	public Set<String> match(String keyword, int maxEdits) {
+		HashSet<String> found = new HashSet<String>();
+		if (words.length == 0) {
+			return found;
+		}
+		String key = PrefixIndex.fold(keyword);
+		int[] previous = new int[key.length() + 1];
+		int[] current = new int[key.length() + 1];
+
+		//words still to visit, the root is word 0
+		int[] stack = new int[16];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int word = stack[--top];
+			int d = distance(key, words[word], previous, current);
+			if (d <= maxEdits) {
+				found.add(words[word]);
+			}
+			for (int child = firstChild[word]; child >= 0; child = nextSibling[child]) {
+				if (distances[child] >= d - maxEdits && distances[child] <= d + maxEdits) {
+					if (top == stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[top++] = child;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Counts the rows with one of the given words, a row with several of them is counted for each
+	 * @param matched, folded words of this index
+	 * @return the sum of the lengths of their posting lists
+	 */
+	public int estimate(Set<String> matched) {
+		long count = 0;
+		for (String word : matched) {
+			int w = find(word);
+			count += offsets[w + 1] - offsets[w];
+		}
+		return (int) Math.min(count, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the rows with one of the given words
+	 * @param matched, folded words of this index
+	 * @return increasing array of the rows
+	 */
+	public int[] rows(Set<String> matched) {
+		if (matched.size() == 1) {
+			int w = find(matched.iterator().next());
+			return Arrays.copyOfRange(rows, offsets[w], offsets[w + 1]);
+		}
+		int[] result = new int[estimate(matched)];
+		int count = 0;
+		for (String word : matched) {
+			int w = find(word);
+			System.arraycopy(rows, offsets[w], result, count, offsets[w + 1] - offsets[w]);
+			count += offsets[w + 1] - offsets[w];
+		}
+		Arrays.sort(result);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || result[distinct - 1] != result[i]) {
+				result[distinct++] = result[i];
+			}
+		}
+		return Arrays.copyOf(result, distinct);
+	}
+
+	/**
+	 * Checks whether a name has one of the given words
+	 * @param name, the name
+	 * @param matched, folded words
+	 * @return true if a word of the name is one of them, false otherwise
+	 */
+	public static boolean matches(String name, Set<String> matched) {
+		for (String word : words(name)) {
+			if (matched.contains(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes the Levenshtein distance between two words
+	 * @param a, the first word
+	 * @param b, the second word
+	 * @return the smallest number of characters inserted, deleted or replaced to change a into b
+	 */
+	public static int distance(String a, String b) {
+		return distance(a, b, new int[a.length() + 1], new int[a.length() + 1]);
+	}
+
+	/**
+	 * Computes the Levenshtein distance with two rows of the dynamic programming table that have room for a
+	 */
+	private static int distance(String a, String b, int[] previous, int[] current) {
+		for (int i = 0; i <= a.length(); i++) {
+			previous[i] = i;
+		}
+		for (int j = 1; j <= b.length(); j++) {
+			current[0] = j;
+			char c = b.charAt(j - 1);
+			for (int i = 1; i <= a.length(); i++) {
+				int cost = (a.charAt(i - 1) == c) ? 0 : 1;
+				current[i] = Math.min(Math.min(current[i - 1], previous[i]) + 1, previous[i - 1] + cost);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[a.length()];
+	}
+
+	/**
+	 * Finds the number of a word of this index
+	 * @return the number of the word
+	 */
+	private int find(String word) {
+		return ids.get(word);
+	}
+
+	/**
+	 * Builds the BK-tree, adding the words in order under word 0
+	 */
+	private void buildTree() {
+		firstChild = new int[words.length];
+		nextSibling = new int[words.length];
+		distances = new int[words.length];
+		Arrays.fill(firstChild, -1);
+		Arrays.fill(nextSibling, -1);
+		int longest = 0;
+		for (String word : words) {
+			longest = Math.max(longest, word.length());
+		}
+		int[] previous = new int[longest + 1];
+		int[] current = new int[longest + 1];
+		for (int w = 1; w < words.length; w++) {
+			int node = 0;
+			while (true) {
+				int d = distance(words[w], words[node], previous, current);
+				int child = firstChild[node];
+				while (child >= 0 && distances[child] != d) {
+					child = nextSibling[child];
+				}
+				if (child < 0) {
+					distances[w] = d;
+					nextSibling[w] = firstChild[node];
+					firstChild[node] = w;
+					break;
+				}
+				node = child;
+			}
+		}
+	}
+}
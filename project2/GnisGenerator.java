@@ -0,0 +1,295 @@
+package project2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The GnisGenerator class writes synthetic pipe-delimited files in the GNIS format, so the load and query paths can be
+ * measured on any number of rows without the national file. The same seed always gives the same file.
+ *
+ * The values are drawn to look like the real data: classes and states are weighted roughly by their share of the
+ * national file, every state has its own counties and its own area of latitudes and longitudes, and a name is a
+ * proper word followed or preceded by a word that fits the class (Creek for a stream, Mount or Hill for a summit).
+ * The proper words follow a Zipf distribution over a vocabulary of common words and made up words,
+ * so a few names repeat very often and most are rare. About one row in ten has no elevation.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class GnisGenerator {
+
+	//largest number of rows a file can have
+	public static final int MAX_ROWS = 5000000;
+
+	private static final String HEADER = "FEATURE_ID|FEATURE_NAME|FEATURE_CLASS|STATE_ALPHA|STATE_NUMERIC|COUNTY_NAME|"
+			+ "COUNTY_NUMERIC|PRIMARY_LAT_DMS|PRIM_LONG_DMS|PRIM_LAT_DEC|PRIM_LONG_DEC|SOURCE_LAT_DMS|SOURCE_LONG_DMS|"
+			+ "SOURCE_LAT_DEC|SOURCE_LONG_DEC|ELEV_IN_M|ELEV_IN_FT|MAP_NAME|DATE_CREATED|DATE_EDITED";
+
+	//classes, their weight and the words their names are made of; a word ending with a space comes first
+	private static final String[] CLASSES = {"Stream", "Populated Place", "Building", "Church", "School", "Locale",
+			"Cemetery", "Summit", "Valley", "Lake", "Reservoir", "Park", "Dam", "Spring", "Bridge", "Cape", "Island"};
+	private static final int[] CLASS_WEIGHTS = {200, 110, 90, 80, 80, 70, 60, 50, 40, 30, 30, 30, 25, 20, 15, 5, 5};
+	private static final String[][] CLASS_WORDS = {{"Creek", "Branch", "Run", "River", "Brook"}, {"", "City", "Heights"},
+			{"Hall", "Center", "Building"}, {"Church", "Baptist Church", "Methodist Church"},
+			{"School", "Elementary School", "High School"}, {"", "Crossroads", "Landing"}, {"Cemetery"},
+			{"Mount ", "Hill", "Mountain", "Peak"}, {"Valley", "Hollow", "Canyon"}, {"Lake ", "Lake", "Pond"},
+			{"Reservoir"}, {"Park", "Recreation Area"}, {"Dam"}, {"Spring", "Springs"}, {"Bridge"}, {"Point", "Cape "},
+			{"Island"}};
+
+	//states with their weight, a center latitude and longitude and the number of their counties
+	private static final String[] STATES = {"TX", "CA", "PA", "NY", "KY", "TN", "NC", "VA", "GA", "MO", "OH", "IL",
+			"WV", "AL", "MI", "OR", "WA", "CO", "FL", "IN", "WI", "MN", "OK", "AR", "MS", "LA", "AZ", "NM", "MT", "ID",
+			"KS", "IA", "SC", "NE", "UT", "WY", "ME", "NV", "AK", "SD", "ND", "NJ", "MA", "MD", "VT", "NH", "CT", "HI",
+			"RI", "DE"};
+	private static final int[] STATE_WEIGHTS = {110, 100, 75, 60, 50, 50, 50, 50, 45, 45, 45, 40, 40, 40, 40, 40, 40,
+			40, 35, 35, 35, 35, 35, 30, 30, 30, 30, 30, 30, 28, 25, 25, 25, 20, 20, 20, 20, 18, 18, 15, 15, 15, 15, 15,
+			10, 10, 8, 8, 4, 3};
+	private static final double[][] STATE_CENTERS = {{31.0, -99.0}, {37.0, -120.0}, {41.0, -77.5}, {43.0, -75.5},
+			{37.5, -85.0}, {35.8, -86.3}, {35.5, -79.5}, {37.5, -78.8}, {32.7, -83.4}, {38.4, -92.5}, {40.3, -82.8},
+			{40.0, -89.2}, {38.6, -80.6}, {32.8, -86.8}, {44.3, -85.4}, {44.0, -120.5}, {47.4, -120.5}, {39.0, -105.5},
+			{28.6, -82.4}, {39.9, -86.3}, {44.6, -89.9}, {46.3, -94.3}, {35.6, -97.5}, {34.9, -92.4}, {32.7, -89.7},
+			{31.1, -92.0}, {34.3, -111.7}, {34.4, -106.1}, {47.0, -109.6}, {44.4, -114.6}, {38.5, -98.4}, {42.1, -93.5},
+			{33.9, -80.9}, {41.5, -99.8}, {39.3, -111.7}, {43.0, -107.5}, {45.4, -69.2}, {39.3, -116.6}, {63.6, -152.5},
+			{44.4, -100.2}, {47.5, -100.5}, {40.2, -74.7}, {42.3, -71.8}, {39.0, -76.8}, {44.1, -72.7}, {43.7, -71.6},
+			{41.6, -72.7}, {20.3, -156.4}, {41.7, -71.5}, {39.0, -75.5}};
+	private static final int[] STATE_COUNTIES = {254, 58, 67, 62, 120, 95, 100, 95, 159, 115, 88, 102, 55, 67, 83,
+			36, 39, 64, 67, 92, 72, 87, 77, 75, 82, 64, 15, 33, 56, 44, 105, 99, 46, 93, 29, 23, 16, 17, 30, 66, 53,
+			21, 14, 24, 14, 10, 8, 5, 5, 3};
+
+	//common words of proper names and of county names, made up words follow them in the vocabulary
+	private static final String[] COMMON = {"Oak", "Pine", "Cedar", "Walnut", "Maple", "Spring", "Mill", "Bear", "Rock",
+			"Big", "Little", "Long", "Black", "White", "Red", "Green", "Mud", "Sand", "Dry", "Salt", "Clear", "Deer",
+			"Beaver", "Turkey", "Eagle", "Fox", "Wolf", "Elk", "Buffalo", "Indian", "Union", "Liberty", "Mount Pleasant",
+			"New Hope", "Pleasant", "Fairview", "Centerville", "Riverside", "Grace", "Bethel", "Zion", "Shiloh", "Saint John",
+			"Saint Mary", "Washington", "Lincoln", "Jefferson", "Franklin", "Jackson", "Madison", "Monroe", "Clay",
+			"Marion", "Wayne", "Warren", "Greene", "Grant", "Johnson", "Smith", "Brown", "Miller", "Davis", "Wilson",
+			"Taylor", "Anderson", "Thomas", "Moore", "Martin", "Thompson", "Allen", "Walker", "Young", "King", "Wright",
+			"Hill", "Scott", "Adams", "Baker", "Nelson", "Carter", "Mitchell", "Roberts", "Turner", "Phillips", "Campbell",
+			"Parker", "Evans", "Edwards", "Collins", "Stewart", "Morris", "Murphy", "Cook", "Rogers", "Morgan", "Cooper"};
+	private static final String[] SYLLABLES = {"ba", "ker", "ton", "ville", "lan", "mor", "ash", "wood", "bur", "ling",
+			"ham", "ford", "dale", "wick", "ston", "ley", "brook", "field", "mont", "ridge", "ca", "do", "ra", "si", "te",
+			"na", "lo", "qui", "wa", "che", "ko", "pa", "ma", "sha", "yo", "tu", "ne", "hi", "go", "ze"};
+
+	//number of proper words the names are drawn from and the exponent of their Zipf distribution
+	private static final int VOCABULARY = 40000;
+	private static final double ZIPF = 1.05;
+
+	private Random random;
+	private String[] vocabulary;
+	private double[] cumulative;
+	private String[][] counties;
+	private int[] classTotals;
+	private int[] stateTotals;
+
+	/**
+	 * Constructs a GnisGenerator
+	 * @param seed, the seed of the random values, the same seed gives the same rows
+	 */
+	public GnisGenerator(long seed) {
+		random = new Random(seed);
+
+		//the common words come first, so they are the most frequent, then two and three syllable words
+		vocabulary = new String[VOCABULARY];
+		System.arraycopy(COMMON, 0, vocabulary, 0, COMMON.length);
+		Random words = new Random(seed ^ 0x5DEECE66DL);
+		for (int i = COMMON.length; i < VOCABULARY; i++) {
+			StringBuilder word = new StringBuilder();
+			int syllables = 2 + words.nextInt(2);
+			for (int s = 0; s < syllables; s++) {
+				word.append(SYLLABLES[words.nextInt(SYLLABLES.length)]);
+			}
+			word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+			vocabulary[i] = word.toString();
+		}
+		cumulative = new double[VOCABULARY];
+		double sum = 0;
+		for (int i = 0; i < VOCABULARY; i++) {
+			sum += 1 / Math.pow(i + 1, ZIPF);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < VOCABULARY; i++) {
+			cumulative[i] /= sum;
+		}
+
+		//every state names its counties after common words, with a number once they run out
+		counties = new String[STATES.length][];
+		for (int s = 0; s < STATES.length; s++) {
+			counties[s] = new String[STATE_COUNTIES[s]];
+			for (int c = 0; c < counties[s].length; c++) {
+				String word = COMMON[(s * 7 + c) % COMMON.length];
+				counties[s][c] = (c < COMMON.length) ? word : word + " " + (c / COMMON.length + 1);
+			}
+		}
+		classTotals = totals(CLASS_WEIGHTS);
+		stateTotals = totals(STATE_WEIGHTS);
+	}
+
+	/**
+	 * Writes the header line and the given number of rows to a file
+	 * @param file, the file to write, replaced if it exists
+	 * @param rows, the number of rows
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if rows is negative or more than MAX_ROWS
+	 */
+	public void write(File file, int rows) throws IOException, IllegalArgumentException {
+		if (rows < 0 || rows > MAX_ROWS) {
+			throw new IllegalArgumentException("Row Count Input is Illegal");
+		}
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			write(out, rows);
+		}
+	}
+
+	/**
+	 * Writes the header line and the given number of rows
+	 * @param out, where the rows are written
+	 * @param rows, the number of rows
+	 * @throws IOException if writing fails
+	 */
+	public void write(Writer out, int rows) throws IOException {
+		StringBuilder line = new StringBuilder(256);
+		out.write(HEADER);
+		out.write('\n');
+		for (int id = 1; id <= rows; id++) {
+			int featureClass = pick(classTotals);
+			int state = pick(stateTotals);
+			int county = random.nextInt(counties[state].length);
+			double lat = Math.max(-90, Math.min(90, STATE_CENTERS[state][0] + random.nextGaussian() * 1.5));
+			double lon = Math.max(-180, Math.min(180, STATE_CENTERS[state][1] + random.nextGaussian() * 2.0));
+
+			//summits are higher than the rest, which is mostly near the level of its state
+			int feet = (int) Math.abs(random.nextGaussian() * 900 + (featureClass == 7 ? 3500 : 800));
+			String elevation = (random.nextInt(10) == 0) ? "" : Integer.toString(feet);
+			String meters = elevation.isEmpty() ? "" : Integer.toString((int) Math.round(feet * 0.3048));
+
+			line.setLength(0);
+			line.append(id).append('|').append(name(featureClass)).append('|').append(CLASSES[featureClass]).append('|')
+				.append(STATES[state]).append('|');
+			digits(line, state + 1, 2).append('|').append(counties[state][county]).append('|');
+			digits(line, 2 * county + 1, 3).append("|||");
+			degrees(line, lat).append('|');
+			degrees(line, lon).append("|||||").append(meters).append('|').append(elevation).append('|')
+				.append(counties[state][county]).append("|01/01/2000|\n");
+			out.append(line);
+		}
+	}
+
+	/**
+	 * Writes a synthetic GNIS file
+	 * @param args, the number of rows and the file name, optionally followed by the seed
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("The program expects the number of rows and a file name as arguments.\n");
+			System.exit(1);
+		}
+		try {
+			int rows = Integer.parseInt(args[0]);
+			long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+			new GnisGenerator(seed).write(new File(args[1]), rows);
+		}
+		catch (NumberFormatException e) {
+			System.err.println("The number of rows and the seed have to be integers.\n");
+			System.exit(1);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println("The number of rows has to be from 0 to " + MAX_ROWS + ".\n");
+			System.exit(1);
+		}
+		catch (IOException e) {
+			System.err.println("The file " + args[1] + " cannot be written.\n");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Appends a non-negative number padded with zeros to the given number of digits
+	 * @return the line
+	 */
+	private static StringBuilder digits(StringBuilder line, int value, int width) {
+		String text = Integer.toString(value);
+		for (int i = text.length(); i < width; i++) {
+			line.append('0');
+		}
+		return line.append(text);
+	}
+
+	/**
+	 * Appends degrees with 7 digits after the decimal point, the way the GNIS file writes them
+	 * @return the line
+	 */
+	private static StringBuilder degrees(StringBuilder line, double value) {
+		long fixed = Math.round(Math.abs(value) * 1e7);
+		if (value < 0 && fixed != 0) {
+			line.append('-');
+		}
+		line.append(fixed / 10000000).append('.');
+		return digits(line, (int) (fixed % 10000000), 7);
+	}
+
+	/**
+	 * Makes a name that fits the class: a proper word and a class word, sometimes with a second proper word
+	 */
+	private String name(int featureClass) {
+		String[] words = CLASS_WORDS[featureClass];
+		String word = words[random.nextInt(words.length)];
+		String proper = vocabulary[zipf()];
+		if (random.nextInt(8) == 0) {
+			proper = proper + " " + vocabulary[zipf()];
+		}
+		if (word.isEmpty()) {
+			return proper;
+		}
+		return word.endsWith(" ") ? word + proper : proper + " " + word;
+	}
+
+	/**
+	 * Draws a position in the vocabulary from the Zipf distribution
+	 */
+	private int zipf() {
+		double u = random.nextDouble();
+		int lo = 0;
+		int hi = VOCABULARY - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cumulative[mid] < u) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Draws an index with a probability proportional to its weight, given the running totals of the weights
+	 */
+	private int pick(int[] totals) {
+		int r = random.nextInt(totals[totals.length - 1]);
+		int i = 0;
+		while (totals[i] <= r) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the running totals of weights
+	 */
+	private static int[] totals(int[] weights) {
+		int[] totals = new int[weights.length];
+		int sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			totals[i] = sum;
+		}
+		return totals;
+	}
+}
@@ -0,0 +1,83 @@
+package project2;
+
+/**
+ * The IntSort class sorts arrays of ints (usually row numbers) with a comparator,
+ * without boxing them into Integer objects first.
+ * The sort is a stable merge sort, so rows that compare equal keep their order.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class IntSort {
+
+	//ranges up to this length are sorted by insertion
+	private static final int INSERTION_LIMIT = 16;
+
+	/**
+	 * Compares two ints for order.
+	 */
+	public interface Comparator {
+		/**
+		 * @return a negative integer, zero, or a positive integer if a is less than, equal to, or greater than b
+		 */
+		int compare(int a, int b);
+	}
+
+	/**
+	 * Sorts a[from..to) by the given comparator
+	 * @param a, the array to sort
+	 * @param from, first position to sort (inclusive)
+	 * @param to, last position to sort (exclusive)
+	 * @param c, the comparator that defines the order
+	 */
+	public static void sort(int[] a, int from, int to, Comparator c) {
+		if (to - from < 2) {
+			return;
+		}
+		int[] buffer = new int[to - from];
+		mergeSort(a, from, to, c, buffer);
+	}
+
+	/**
+	 * Recursive merge sort of a[from..to), buffer has room for the whole range
+	 */
+	private static void mergeSort(int[] a, int from, int to, Comparator c, int[] buffer) {
+
+		if (to - from <= INSERTION_LIMIT) {
+			for (int i = from + 1; i < to; i++) {
+				int value = a[i];
+				int j = i - 1;
+				while (j >= from && c.compare(a[j], value) > 0) {
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = value;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(a, from, mid, c, buffer);
+		mergeSort(a, mid, to, c, buffer);
+
+		//the halves are already in order
+		if (c.compare(a[mid - 1], a[mid]) <= 0) {
+			return;
+		}
+
+		int length = mid - from;
+		System.arraycopy(a, from, buffer, 0, length);
+		int i = 0;
+		int j = mid;
+		int k = from;
+		while (i < length && j < to) {
+			if (c.compare(a[j], buffer[i]) < 0) {
+				a[k++] = a[j++];
+			}
+			else {
+				a[k++] = buffer[i++];
+			}
+		}
+		System.arraycopy(buffer, i, a, k, length - i);
+	}
+}
@@ -11,6 +11,10 @@ public class Location implements Comparable<Location>{
 	private String state;
 	private String county;
 	
+	//sort keys of the state and county, so most comparisons do not fold the Strings
+	private long stateKey;
+	private long countyKey;
+	
 	private double latitude =0;
 	private double longitude= 0; 
 	private int elevation=0;
@@ -34,6 +38,8 @@ public class Location implements Comparable<Location>{
 	
 		this.state = state;
 		this.county = county;
+		stateKey = sortKey(state);
+		countyKey = sortKey(county);
 	}
 	
 	/**
@@ -122,27 +128,32 @@ public class Location implements Comparable<Location>{
 	@Override
 	public int compareTo(Location o) {
 		
-		if (!this.state.equalsIgnoreCase(o.getState())) {
-			return this.state.compareToIgnoreCase(o.getState());
-		}
-		
-		if (!this.county.equalsIgnoreCase(o.getCounty())) {
-			return this.county.compareToIgnoreCase(o.getCounty());
+		int c = compareIgnoreCase(state, stateKey, o.state, o.stateKey);
+		if (c != 0) {
+			return c;
 		}
 		
-		if (!(this.latitude == o.getLatitude())) {
-			return Double.compare(this.latitude, o.getLatitude());
+		c = compareIgnoreCase(county, countyKey, o.county, o.countyKey);
+		if (c != 0) {
+			return c;
 		}
 		
-		if (!(this.longitude == o.getLongitude())) {
-			return Double.compare(this.longitude, o.getLongitude());
+		return compare(latitude, longitude, elevation, o.getLatitude(), o.getLongitude(), o.getElevation());
+	}
+	
+	/**
+	 * Compares two coordinates like compareTo: 0.0 equals -0.0, and once a latitude (or a longitude) is NaN
+	 * on both sides the rest is not compared, so such coordinates are equal
+	 * @return a negative integer, zero, or a positive integer if the first coordinates are less than, equal to, or greater than the second
+	 */
+	static int compare(double latitude, double longitude, int elevation, double latitude2, double longitude2, int elevation2) {
+		if (!(latitude == latitude2)) {
+			return Double.compare(latitude, latitude2);
 		}
-		
-		if (!(this.elevation == o.getElevation())) {
-			return Integer.compare(this.elevation, o.getElevation());
+		if (!(longitude == longitude2)) {
+			return Double.compare(longitude, longitude2);
 		}
-		
-		return 0;
+		return Integer.compare(elevation, elevation2);
 	}
 	
 	/**
@@ -171,20 +182,11 @@ public class Location implements Comparable<Location>{
 			return false;
 		}
 		
-		//creates temporary integer values for latitude and longitude
-		int lat1, long1;
-		int lat2, long2;
-		
-		//truncates the values for longitude and latitude 6 places after the decimal point
-		lat1 = ((int) (latitude*1000000))/1000000;
-		long1 = ((int) (longitude*1000000))/1000000;
-		lat2 = ((int) (l.getLatitude()*1000000))/1000000;
-		long2 = ((int) (l.getLongitude()*10000000))/1000000;
-		
-		if(!(lat1 == lat2)) {
+		//compares longitude and latitude truncated 6 places after the decimal point
+		if(!(truncate(latitude) == truncate(l.getLatitude()))) {
 			return false;
 		}
-		if (!(long1 == long2)) {
+		if (!(truncate(longitude) == truncate(l.getLongitude()))) {
 			return false;
 		}
 		if(!(elevation == l.getElevation())) {
@@ -195,6 +197,118 @@ public class Location implements Comparable<Location>{
 	
 	}
 	
+	/**
+	 * Returns a hash code consistent with equals: Locations that are equal have the same hash code
+	 * @return the hash of the case folded state and county, the truncated latitude and longitude and the elevation
+	 */
+	@Override
+	public int hashCode() {
+		return hash(hashIgnoreCase(state), hashIgnoreCase(county), latitude, longitude, elevation);
+	}
+	
+	/**
+	 * Combines the values of a location into its hash code, so that a location stored in columns
+	 * can be hashed without creating a Location object
+	 * @param stateHash, hashIgnoreCase of the state
+	 * @param countyHash, hashIgnoreCase of the county
+	 * @param latitude, the latitude
+	 * @param longitude, the longitude
+	 * @param elevation, the elevation
+	 * @return the hash code a Location with these values has
+	 */
+	static int hash(int stateHash, int countyHash, double latitude, double longitude, int elevation) {
+		int hash = 31 * stateHash + countyHash;
+		hash = 31 * hash + Long.hashCode(truncate(latitude));
+		hash = 31 * hash + Long.hashCode(truncate(longitude));
+		return 31 * hash + elevation;
+	}
+	
+	/**
+	 * Hashes a String ignoring case: Strings that are equal by equalsIgnoreCase have the same hash
+	 * @param value, a non-null String
+	 * @return the hash of the case folded code points
+	 */
+	static int hashIgnoreCase(String value) {
+		int hash = 0;
+		for (int i = 0; i < value.length(); ) {
+			int c = value.codePointAt(i);
+			//equalsIgnoreCase compares upper case and then lower case, so both are applied
+			hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(c));
+			i += Character.charCount(c);
+		}
+		return hash;
+	}
+	
+	/**
+	 * Packs the beginning of a String into a sort key: comparing the keys of two Strings as unsigned longs gives
+	 * the order of compareToIgnoreCase on the Strings, unless the keys are equal. The first 7 bytes hold the first
+	 * 7 chars case folded the way compareToIgnoreCase folds them, shifted up by one so that 0 marks the end of the String,
+	 * and 0xff for a char that folds above 0xfd (which ends the key, since its order depends on more than one byte).
+	 * The last byte is 0 when the key holds the whole String, so equal keys then mean equal Strings ignoring case.
+	 * @param value, a non-null String
+	 * @return the sort key
+	 */
+	static long sortKey(String value) {
+		long key = 0;
+		int length = Math.min(value.length(), 7);
+		for (int i = 0; i < length; i++) {
+			int folded = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+			if (folded > 0xfd) {
+				return key | 0xffL << (56 - 8 * i) | 1;
+			}
+			key |= (long) (folded + 1) << (56 - 8 * i);
+		}
+		return (value.length() > 7) ? key | 1 : key;
+	}
+	
+	/**
+	 * Compares two Strings ignoring case like compareToIgnoreCase, using their sort keys first
+	 * @param a, the first String
+	 * @param aKey, sortKey of a
+	 * @param b, the second String
+	 * @param bKey, sortKey of b
+	 * @return a negative integer, zero, or a positive integer as compareToIgnoreCase returns on a and b
+	 */
+	static int compareIgnoreCase(String a, long aKey, String b, long bKey) {
+		if (aKey != bKey) {
+			return Long.compareUnsigned(aKey, bKey);
+		}
+		//only a key that holds the whole String decides that the Strings are equal
+		if ((aKey & 0xff) == 0) {
+			return 0;
+		}
+		//a key ending with a char it cannot hold leaves the comparison to compareToIgnoreCase
+		int last = (int) (aKey >>> 8) & 0xff;
+		if (last == 0 || last == 0xff) {
+			return a.compareToIgnoreCase(b);
+		}
+		//otherwise the first 7 chars are equal ignoring case, and the rest is compared the same way
+		int length = Math.min(a.length(), b.length());
+		for (int i = 7; i < length; i++) {
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+			if (x != y) {
+				if (Character.isSurrogate(x) || Character.isSurrogate(y)) {
+					return a.compareToIgnoreCase(b);
+				}
+				int c = Character.toLowerCase(Character.toUpperCase(x)) - Character.toLowerCase(Character.toUpperCase(y));
+				if (c != 0) {
+					return c;
+				}
+			}
+		}
+		return a.length() - b.length();
+	}
+	
+	/**
+	 * Truncates a latitude or longitude 6 places after the decimal point
+	 * @param degrees, the latitude or longitude
+	 * @return the truncated value in millionths of a degree
+	 */
+	static long truncate(double degrees) {
+		return (long) (degrees * 1000000);
+	}
+	
 	/**
 	 * Returns the state, county, latitude, longitude and elevation in a readable fashion
 	 * county, state
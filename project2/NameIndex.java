@@ -0,0 +1,328 @@
+package project2;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The NameIndex class is a case-folded trigram inverted index over feature names.
+ * Every name is converted to lower case and each run of three consecutive characters (a trigram)
+ * is mapped to the sorted list of rows whose name contains it.
+ * A keyword with at least three characters can only be contained in a name that has all of
+ * the keyword's trigrams, so intersecting their posting lists gives a small set of candidate rows
+ * which are then checked with the regular contains test.
+ *
+ * The posting lists are kept in one flat array: the postings of trigram grams[i] are stored in
+ * rows[offsets[i]] up to (not including) rows[offsets[i+1]].
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class NameIndex {
+
+	//shortest keyword the index can narrow down
+	public static final int GRAM_LENGTH = 3;
+
+	private long[] grams;
+	private int[] offsets;
+	private int[] rows;
+
+	/**
+	 * Constructs a NameIndex from already built arrays
+	 * @param grams, sorted distinct trigram keys
+	 * @param offsets, start of the posting list of each trigram, with one extra entry marking the end
+	 * @param rows, posting lists of all trigrams stored one after another
+	 */
+	public NameIndex(long[] grams, int[] offsets, int[] rows) {
+		this.grams = grams;
+		this.offsets = offsets;
+		this.rows = rows;
+	}
+
+	/**
+	 * Builds the index over the names of the given features; the row of a feature is its position in the list.
+	 * @param features, list of features to index
+	 * @return the index over the feature names
+	 */
+	public static NameIndex of(List<Feature> features) {
+		String[] names = new String[features.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = features.get(i).getFeatureName();
+		}
+		return of(names);
+	}
+
+	/**
+	 * Builds the index over the given names; the row of a name is its position in the array.
+	 * Null names are skipped.
+	 * @param names, array of names to index
+	 * @return the index over the names
+	 */
+	public static NameIndex of(String[] names) {
+
+		GramTable table = new GramTable();
+		int[] counts = new int[64];
+		int[] lastRow = new int[64];
+
+		//first pass assigns an id to every distinct trigram and counts the rows that contain it
+		for (int row = 0; row < names.length; row++) {
+			if (names[row] == null) {
+				continue;
+			}
+			String name = names[row].toLowerCase();
+			for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+				int id = table.idOf(gram(name, i), true);
+				if (id == counts.length) {
+					counts = Arrays.copyOf(counts, id * 2);
+					lastRow = Arrays.copyOf(lastRow, id * 2);
+				}
+				//a trigram repeated in the same name is only counted once
+				if (counts[id] == 0 || lastRow[id] != row) {
+					counts[id]++;
+					lastRow[id] = row;
+				}
+			}
+		}
+
+		//orders the trigrams so that they can be found with a binary search
+		int distinct = table.size();
+		long[] sortedGrams = Arrays.copyOf(table.keys(), distinct);
+		Arrays.sort(sortedGrams);
+		int[] start = new int[distinct];
+		int[] offsets = new int[distinct + 1];
+		for (int i = 0; i < distinct; i++) {
+			int id = table.idOf(sortedGrams[i], false);
+			start[id] = offsets[i];
+			offsets[i + 1] = offsets[i] + counts[id];
+		}
+
+		//second pass fills in the posting lists, rows are visited in increasing order so every list is sorted
+		int[] postings = new int[offsets[distinct]];
+		Arrays.fill(lastRow, 0, distinct, -1);
+		for (int row = 0; row < names.length; row++) {
+			if (names[row] == null) {
+				continue;
+			}
+			String name = names[row].toLowerCase();
+			for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+				int id = table.idOf(gram(name, i), false);
+				if (lastRow[id] != row) {
+					postings[start[id]++] = row;
+					lastRow[id] = row;
+				}
+			}
+		}
+
+		return new NameIndex(sortedGrams, offsets, postings);
+	}
+
+	/**
+	 * Finds the rows whose name may contain the given keyword.
+	 * Every row whose lower case name contains the lower case keyword is among the candidates,
+	 * but the candidates still have to be checked.
+	 * @param keyword; the keyword to search for
+	 * @return sorted array of candidate rows, or null if the keyword is too short to be looked up
+	 * and every row is a candidate
+	 */
+	public int[] candidates(String keyword) {
+
+		String key = keyword.toLowerCase();
+		if (key.length() < GRAM_LENGTH) {
+			return null;
+		}
+
+		int count = key.length() - GRAM_LENGTH + 1;
+		int[] found = new int[count];
+		for (int i = 0; i < count; i++) {
+			int pos = Arrays.binarySearch(grams, gram(key, i));
+			if (pos < 0) {
+				return new int[0];
+			}
+			found[i] = pos;
+		}
+
+		//starts from the shortest posting list so that intermediate results stay small
+		int shortest = 0;
+		for (int i = 1; i < count; i++) {
+			if (postingSize(found[i]) < postingSize(found[shortest])) {
+				shortest = i;
+			}
+		}
+		int[] result = Arrays.copyOfRange(rows, offsets[found[shortest]], offsets[found[shortest] + 1]);
+		int size = result.length;
+		for (int i = 0; i < count && size > 0; i++) {
+			if (i != shortest && found[i] != found[shortest]) {
+				size = retain(result, size, found[i]);
+			}
+		}
+
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Estimates the number of candidates of a keyword without finding them.
+	 * The candidates are in every posting list of the keyword's trigrams, so the shortest list is an upper bound.
+	 * @param keyword; the keyword to search for
+	 * @return the length of the shortest posting list of the keyword, or -1 if the keyword is too short
+	 * to be looked up and every row is a candidate
+	 */
+	public int estimate(String keyword) {
+
+		String key = keyword.toLowerCase();
+		if (key.length() < GRAM_LENGTH) {
+			return -1;
+		}
+
+		int estimate = rows.length;
+		for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+			int pos = Arrays.binarySearch(grams, gram(key, i));
+			if (pos < 0) {
+				return 0;
+			}
+			estimate = Math.min(estimate, postingSize(pos));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns the number of distinct trigrams in this index
+	 * @return the number of distinct trigrams
+	 */
+	public int gramCount() {
+		return grams.length;
+	}
+
+	/**
+	 * Returns the sorted trigram keys of this index
+	 * @return the sorted trigram keys
+	 */
+	public long[] getGrams() {
+		return grams;
+	}
+
+	/**
+	 * Returns the start of each posting list
+	 * @return the posting list offsets
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * Returns the posting lists of all trigrams, stored one after another
+	 * @return the posting lists
+	 */
+	public int[] getRows() {
+		return rows;
+	}
+
+	/**
+	 * Packs the three characters starting at position i into a single key
+	 * @param s, the string
+	 * @param i, the position of the first character
+	 * @return the trigram key
+	 */
+	static long gram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+	}
+
+	/**
+	 * Returns the length of the posting list of the trigram at position pos
+	 */
+	private int postingSize(int pos) {
+		return offsets[pos + 1] - offsets[pos];
+	}
+
+	/**
+	 * Keeps only the rows of result[0..size) that are also in the posting list of the trigram at position pos.
+	 * Binary searches the posting list from the last match, which is fast when result is much shorter than the list.
+	 * @return the number of rows kept
+	 */
+	private int retain(int[] result, int size, int pos) {
+		int low = offsets[pos];
+		int high = offsets[pos + 1];
+		int kept = 0;
+		for (int i = 0; i < size && low < high; i++) {
+			int found = Arrays.binarySearch(rows, low, high, result[i]);
+			if (found >= 0) {
+				result[kept++] = result[i];
+				low = found + 1;
+			}
+			else {
+				low = -found - 1;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Open addressing hash table that assigns consecutive ids to trigram keys while the index is built.
+	 */
+	private static class GramTable {
+
+		private long[] slots = new long[1 << 12];
+		private int[] ids = new int[1 << 12];
+		private long[] keys = new long[64];
+		private int size = 0;
+
+		/**
+		 * Returns the id of the key, adding it to the table first if add is true
+		 * @return the id of the key, or -1 if it is not in the table and add is false
+		 */
+		int idOf(long key, boolean add) {
+			int mask = slots.length - 1;
+			int i = hash(key) & mask;
+			//keys are stored plus one so that an empty slot is 0
+			while (slots[i] != 0) {
+				if (slots[i] == key + 1) {
+					return ids[i];
+				}
+				i = (i + 1) & mask;
+			}
+			if (!add) {
+				return -1;
+			}
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			keys[size] = key;
+			slots[i] = key + 1;
+			ids[i] = size;
+			size++;
+			if (size * 2 > slots.length) {
+				grow();
+			}
+			return size - 1;
+		}
+
+		int size() {
+			return size;
+		}
+
+		long[] keys() {
+			return keys;
+		}
+
+		private void grow() {
+			long[] oldSlots = slots;
+			int[] oldIds = ids;
+			slots = new long[oldSlots.length * 2];
+			ids = new int[oldIds.length * 2];
+			int mask = slots.length - 1;
+			for (int j = 0; j < oldSlots.length; j++) {
+				if (oldSlots[j] != 0) {
+					int i = hash(oldSlots[j] - 1) & mask;
+					while (slots[i] != 0) {
+						i = (i + 1) & mask;
+					}
+					slots[i] = oldSlots[j];
+					ids[i] = oldIds[j];
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
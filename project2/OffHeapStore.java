@@ -0,0 +1,496 @@
+package project2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * The OffHeapStore class keeps the rows of a very large gazetteer outside of the Java heap, so the garbage collector
+ * has almost nothing to trace no matter how many features are loaded. Every row is one fixed-width record of
+ * RECORD bytes holding the latitude, longitude, elevation and the state, county and class dictionary ordinals,
+ * and the names are kept as one block of UTF-8 bytes with the offset of every name. Only the three dictionaries
+ * are on the heap. A String is decoded from the block only when the name of a row is read.
+ *
+ * The records and the names are either copied into direct buffers, see of, or mapped straight from a
+ * snapshot file, see FeatureSnapshot.map, which writes its rows in the same layout. Either way the memory is
+ * released when the store is no longer used.
+ *
+ * The rows are in natural ordering of Feature elements like the rows of the FeatureStore they come from.
+ * The store has no indexes, so a query is one pass over the records, checking the restrictions as ordinals
+ * and elevations read from the record of each row; the names are only decoded for name and fuzzy searches.
+ *
+ * Record layout (little endian): latitude and longitude as doubles at 0 and 8, elevation at 16,
+ * then the state, county and class ordinals at 20, 24 and 28.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class OffHeapStore implements FeatureTable {
+
+	//bytes of one record and the offset of every field in it
+	static final int RECORD = 32;
+	static final int LATITUDE = 0;
+	static final int LONGITUDE = 8;
+	static final int ELEVATION = 16;
+	static final int STATE = 20;
+	static final int COUNTY = 24;
+	static final int CLASS = 28;
+
+	private int size;
+	private ByteBuffer records;
+	private IntBuffer offsets;
+	private ByteBuffer names;
+
+	private Dictionary states;
+	private Dictionary counties;
+	private Dictionary classes;
+
+	/**
+	 * Constructs an OffHeapStore over buffers that are already filled, the buffers must not be changed afterwards
+	 * @param size, the number of rows
+	 * @param records, size records in natural ordering of Feature elements
+	 * @param offsets, size + 1 offsets into the names, the name of row r is names[offsets[r]..offsets[r + 1])
+	 * @param names, the UTF-8 bytes of the names
+	 * @param states, the dictionary of the state ordinals
+	 * @param counties, the dictionary of the county ordinals
+	 * @param classes, the dictionary of the class ordinals
+	 * @throws IllegalArgumentException if an argument is null or a buffer is too small for size rows
+	 */
+	OffHeapStore(int size, ByteBuffer records, ByteBuffer offsets, ByteBuffer names,
+			Dictionary states, Dictionary counties, Dictionary classes) throws IllegalArgumentException {
+		if (records == null || offsets == null || names == null || states == null || counties == null || classes == null) {
+			throw new IllegalArgumentException("Null Argument Error in OffHeapStore");
+		}
+		if (size < 0 || records.capacity() < (long) size * RECORD || offsets.capacity() < 4L * (size + 1)) {
+			throw new IllegalArgumentException("Buffers Too Small for OffHeapStore");
+		}
+		this.size = size;
+		this.records = records.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.offsets = offsets.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		this.names = names.duplicate();
+		if (names.capacity() < this.offsets.get(size)) {
+			throw new IllegalArgumentException("Buffers Too Small for OffHeapStore");
+		}
+		this.states = states;
+		this.counties = counties;
+		this.classes = classes;
+	}
+
+	/**
+	 * Copies the rows of a store into direct buffers
+	 * @param store, the store
+	 * @return the off-heap copy of the store, with the same rows in the same order
+	 * @throws IllegalArgumentException if the store is null or too large for a buffer
+	 */
+	public static OffHeapStore of(FeatureStore store) throws IllegalArgumentException {
+
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in OffHeapStore");
+		}
+		int size = store.size();
+		if (size > Integer.MAX_VALUE / RECORD) {
+			throw new IllegalArgumentException("Too Many Features for OffHeapStore");
+		}
+
+		ByteBuffer records = ByteBuffer.allocateDirect(size * RECORD).order(ByteOrder.LITTLE_ENDIAN);
+		putRecords(records, store, 0, size);
+
+		//the names are encoded twice, to size the block before filling it
+		ByteBuffer offsets = ByteBuffer.allocateDirect(4 * (size + 1)).order(ByteOrder.LITTLE_ENDIAN);
+		long length = 0;
+		offsets.putInt(0);
+		for (int row = 0; row < size; row++) {
+			length += store.getName(row).getBytes(StandardCharsets.UTF_8).length;
+			if (length > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Names Too Long for OffHeapStore");
+			}
+			offsets.putInt((int) length);
+		}
+		ByteBuffer names = ByteBuffer.allocateDirect((int) length);
+		for (int row = 0; row < size; row++) {
+			names.put(store.getName(row).getBytes(StandardCharsets.UTF_8));
+		}
+
+		return new OffHeapStore(size, records.clear(), offsets.clear(), names.clear(), store.getIndex().getStates().getDictionary(),
+				store.getCounties().getDictionary(), store.getIndex().getClasses().getDictionary());
+	}
+
+	/**
+	 * Writes the records of rows from..to of a store at the position of a buffer, which has to have room for them
+	 * @param buffer, a little endian buffer
+	 * @param store, the store
+	 * @param from, the first row (inclusive)
+	 * @param to, the last row (exclusive)
+	 */
+	static void putRecords(ByteBuffer buffer, FeatureStore store, int from, int to) {
+		DictionaryColumn stateColumn = store.getIndex().getStates();
+		DictionaryColumn countyColumn = store.getCounties();
+		DictionaryColumn classColumn = store.getIndex().getClasses();
+		for (int row = from; row < to; row++) {
+			buffer.putDouble(store.getLatitude(row)).putDouble(store.getLongitude(row)).putInt(store.getElevation(row))
+				.putInt(stateColumn.ordinal(row)).putInt(countyColumn.ordinal(row)).putInt(classColumn.ordinal(row));
+		}
+	}
+
+	/**
+	 * Returns the number of features in this store
+	 * @return the number of rows
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Decodes the name of the feature in the given row
+	 * @param row, the row
+	 * @return the feature name
+	 */
+	@Override
+	public String getName(int row) {
+		int start = offsets.get(row);
+		byte[] bytes = new byte[offsets.get(row + 1) - start];
+		names.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the class of the feature in the given row
+	 * @param row, the row
+	 * @return the feature class
+	 */
+	@Override
+	public String getFeatureClass(int row) {
+		return classes.get(ordinal(row, CLASS));
+	}
+
+	/**
+	 * Returns the state of the feature in the given row
+	 * @param row, the row
+	 * @return the state
+	 */
+	@Override
+	public String getState(int row) {
+		return states.get(ordinal(row, STATE));
+	}
+
+	/**
+	 * Returns the county of the feature in the given row
+	 * @param row, the row
+	 * @return the county
+	 */
+	@Override
+	public String getCounty(int row) {
+		return counties.get(ordinal(row, COUNTY));
+	}
+
+	/**
+	 * Returns the latitude of the feature in the given row
+	 * @param row, the row
+	 * @return the latitude
+	 */
+	@Override
+	public double getLatitude(int row) {
+		return records.getDouble(row * RECORD + LATITUDE);
+	}
+
+	/**
+	 * Returns the longitude of the feature in the given row
+	 * @param row, the row
+	 * @return the longitude
+	 */
+	@Override
+	public double getLongitude(int row) {
+		return records.getDouble(row * RECORD + LONGITUDE);
+	}
+
+	/**
+	 * Returns the elevation of the feature in the given row
+	 * @param row, the row
+	 * @return the elevation
+	 */
+	@Override
+	public int getElevation(int row) {
+		return records.getInt(row * RECORD + ELEVATION);
+	}
+
+	/**
+	 * Returns a dictionary ordinal of the given row
+	 * @param row, the row
+	 * @param field, STATE, COUNTY or CLASS
+	 * @return the ordinal
+	 */
+	int ordinal(int row, int field) {
+		return records.getInt(row * RECORD + field);
+	}
+
+	/**
+	 * Returns the dictionary of the state ordinals
+	 * @return the state dictionary
+	 */
+	public Dictionary getStates() {
+		return states;
+	}
+
+	/**
+	 * Returns the dictionary of the county ordinals
+	 * @return the county dictionary
+	 */
+	public Dictionary getCounties() {
+		return counties;
+	}
+
+	/**
+	 * Returns the dictionary of the class ordinals
+	 * @return the class dictionary
+	 */
+	public Dictionary getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Creates a Feature object holding the data of the given row
+	 * @param row, the row
+	 * @return a new Feature with its Location
+	 */
+	@Override
+	public Feature getFeature(int row) {
+		Location loc = new Location(getState(row), getCounty(row));
+		loc.setLatitude(getLatitude(row));
+		loc.setLongitude(getLongitude(row));
+		loc.setElevation(getElevation(row));
+		return new Feature(getName(row), getFeatureClass(row), loc);
+	}
+
+	/**
+	 * Creates the features of the given rows, in the order of the rows
+	 * @param rows, rows in rows[0..count)
+	 * @param count, the number of rows
+	 * @param sorted, true if the rows are in natural ordering of their features
+	 * @return the FeatureList of the features in the rows, or null if count is 0
+	 */
+	@Override
+	public FeatureList getFeatures(int[] rows, int count, boolean sorted) {
+		if (count == 0) {
+			return null;
+		}
+		FeatureList list = new FeatureList();
+		list.ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			list.add(getFeature(rows[i]));
+		}
+		//there are no indexes to share, the list only remembers whether it is sorted
+		list.attachIndex(null, null, sorted);
+		return list;
+	}
+
+	/**
+	 * Searches the store for features whose name contains the given keyword, ignoring case.
+	 * @param keyword; the name of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByName(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		String key = keyword.toLowerCase();
+		int[] rows = IntStream.range(0, size).filter(row -> getName(row).toLowerCase().contains(key)).toArray();
+		QueryPlan.sortTies(rows, rows.length, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, rows.length, true);
+	}
+
+	/**
+	 * Searches the store for features whose class contains the given keyword, ignoring case.
+	 * @param keyword; the class of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByClass(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		boolean[] match = classes.matchContaining(keyword);
+		int[] rows = IntStream.range(0, size).filter(row -> match[ordinal(row, CLASS)]).toArray();
+		QueryPlan.sortTies(rows, rows.length, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, rows.length, true);
+	}
+
+	/**
+	 * Searches the store for features in the given state, ignoring case.
+	 * @param keyword; the state of the feature for which to search
+	 * @return the sorted FeatureList containing all of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if keyword parameter is invalid.
+	 */
+	public FeatureList getByState(String keyword) throws IllegalArgumentException {
+
+		if (keyword == null || keyword.equals("")) {
+			throw new IllegalArgumentException("Keyword Input is Illegal");
+		}
+
+		boolean[] match = states.matchIgnoreCase(keyword);
+		int[] rows = IntStream.range(0, size).filter(row -> match[ordinal(row, STATE)]).toArray();
+		QueryPlan.sortTies(rows, rows.length, this, (a, b) -> Integer.compare(b, a));
+		return getFeatures(rows, rows.length, true);
+	}
+
+	/**
+	 * Runs a query in a single pass over the records.
+	 * @param query; the parsed query
+	 * @return the sorted FeatureList (closest first for a nearest search) of the matching features, or null if there are none
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	public FeatureList search(Query query) throws IllegalArgumentException {
+		int[] rows = rowStream(query).toArray();
+		return getFeatures(rows, rows.length, !query.isClosestFirst());
+	}
+
+	/**
+	 * Runs a query lazily in a single pass over the records, stopping as soon as the page of the query is complete
+	 * (a nearest search reads every record, keeping the closest rows in a bounded heap)
+	 * @param query; the parsed query
+	 * @return the stream of the matching rows in natural ordering of their features (closest first for a nearest search),
+	 * after the offset and up to the limit of the query
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	@Override
+	public IntStream rowStream(Query query) throws IllegalArgumentException {
+
+		if (query == null) {
+			throw new IllegalArgumentException("Null Argument Error in OffHeapStore");
+		}
+
+		IntPredicate restrictions = restrictions(query);
+		String search = query.getSearch();
+		int offset = query.getOffset();
+		int page = (int) Math.min((long) offset + query.getLimit(), Integer.MAX_VALUE);
+		double lat = query.getLatitude();
+		double lon = query.getLongitude();
+
+		if (search.equals("nearest")) {
+			SpatialIndex.Closest closest = new SpatialIndex.Closest(Math.min(Math.min(query.getCount(), page), size));
+			for (int row = 0; row < size; row++) {
+				if (restrictions.test(row)) {
+					closest.offer(row, SpatialIndex.distance(lat, lon, getLatitude(row), getLongitude(row)));
+				}
+			}
+			return Arrays.stream(closest.rows()).skip(offset);
+		}
+
+		IntPredicate match;
+		if (search.equals("name")) {
+			String key = query.getKeyword().toLowerCase();
+			match = row -> getName(row).toLowerCase().contains(key);
+		}
+		else if (search.equals("fuzzy")) {
+			//the same words come back in many names, so every word is measured once per query
+			String key = PrefixIndex.fold(query.getKeyword());
+			int maxEdits = query.getMaxEdits();
+			HashMap<String, Boolean> close = new HashMap<String, Boolean>();
+			match = row -> {
+				for (String word : FuzzyIndex.words(getName(row))) {
+					if (close.computeIfAbsent(word, w -> FuzzyIndex.distance(key, w) <= maxEdits)) {
+						return true;
+					}
+				}
+				return false;
+			};
+		}
+		else if (search.equals("near")) {
+			double radiusKm = query.getRadiusKm();
+			match = row -> SpatialIndex.distance(lat, lon, getLatitude(row), getLongitude(row)) <= radiusKm;
+		}
+		else if (search.equals("bbox")) {
+			double minLat = Math.min(lat, query.getLatitude2());
+			double maxLat = Math.max(lat, query.getLatitude2());
+			double minLon = Math.min(lon, query.getLongitude2());
+			double maxLon = Math.max(lon, query.getLongitude2());
+			match = row -> getLatitude(row) >= minLat && getLatitude(row) <= maxLat
+					&& getLongitude(row) >= minLon && getLongitude(row) <= maxLon;
+		}
+		else {
+			//elev is checked with the restrictions
+			match = row -> true;
+		}
+		IntStream found = IntStream.range(0, size).filter(row -> restrictions.test(row) && match.test(row));
+		return QueryPlan.sortTies(found, this, query::compareTies).skip(offset).limit(query.getLimit());
+	}
+
+	/**
+	 * Completes the beginning of a feature name in one pass over the names
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @param count, the largest number of completions returned
+	 * @return the distinct names (ignoring case) that start with the prefix, the ones used by the most features first
+	 * and names used by as many features in alphabetical order, each written like its first feature in natural ordering
+	 * @throws IllegalArgumentException if prefix is null or empty or count is not positive.
+	 */
+	@Override
+	public List<PrefixIndex.Completion> complete(String prefix, int count) throws IllegalArgumentException {
+
+		if (prefix == null || prefix.equals("") || count <= 0) {
+			throw new IllegalArgumentException("Prefix Input is Illegal");
+		}
+
+		//the number of features and the first row of every folded name
+		String key = PrefixIndex.fold(prefix);
+		HashMap<String, int[]> found = new HashMap<String, int[]>();
+		for (int row = 0; row < size; row++) {
+			String folded = PrefixIndex.fold(getName(row));
+			if (folded.startsWith(key)) {
+				int first = row;
+				found.computeIfAbsent(folded, k -> new int[] {0, first})[0]++;
+			}
+		}
+
+		ArrayList<Map.Entry<String, int[]>> entries = new ArrayList<Map.Entry<String, int[]>>(found.entrySet());
+		entries.sort((a, b) -> (a.getValue()[0] != b.getValue()[0]) ? Integer.compare(b.getValue()[0], a.getValue()[0])
+				: a.getKey().compareTo(b.getKey()));
+		ArrayList<PrefixIndex.Completion> completions = new ArrayList<PrefixIndex.Completion>();
+		for (int i = 0; i < Math.min(count, entries.size()); i++) {
+			int[] entry = entries.get(i).getValue();
+			completions.add(new PrefixIndex.Completion(getName(entry[1]), entry[0]));
+		}
+		return completions;
+	}
+
+	/**
+	 * Summarizes the features of every group of an aggregation, in parallel over the records
+	 * @param aggregation, the parsed aggregation
+	 * @return the groups with at least one feature, ordered by their values
+	 * @throws IllegalArgumentException if aggregation is null.
+	 */
+	@Override
+	public List<Aggregation.Group> aggregate(Aggregation aggregation) throws IllegalArgumentException {
+		if (aggregation == null) {
+			throw new IllegalArgumentException("Null Argument Error in OffHeapStore");
+		}
+		return Aggregation.combine(aggregation.run(this));
+	}
+
+	/**
+	 * Builds the check of the class, state and elevation restrictions of a query
+	 * @return the predicate accepting the rows that pass the restrictions
+	 */
+	private IntPredicate restrictions(Query query) {
+		boolean[] classMatch = (query.getFeatureClass() == null) ? null : classes.matchContaining(query.getFeatureClass());
+		boolean[] stateMatch = (query.getState() == null) ? null : states.matchIgnoreCase(query.getState());
+		boolean elevation = query.isElevationRestricted();
+		int min = query.getMinElevation();
+		int max = query.getMaxElevation();
+		return row -> (classMatch == null || classMatch[ordinal(row, CLASS)])
+				&& (stateMatch == null || stateMatch[ordinal(row, STATE)])
+				&& (!elevation || (getElevation(row) >= min && getElevation(row) <= max));
+	}
+}
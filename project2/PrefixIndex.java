@@ -0,0 +1,491 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+/**
+ * The PrefixIndex class completes the beginning of a feature name: it finds the distinct names that start with
+ * a prefix, ignoring case, and lists the ones used by the most features first.
+ *
+ * The distinct case folded names (keys) are kept sorted and front coded: in every block of 16 keys the first one
+ * is stored whole and each of the others as the length it shares with the key before it followed by the rest
+ * of its characters. The keys starting with a prefix are one range of the sorted keys, found with a binary search
+ * over the first keys of the blocks. A segment tree over the number of features of every key gives the key with
+ * the most features in any range, so the top N completions cost N lookups in the tree whatever the size of the range.
+ *
+ * Names are folded one code point at a time to lower case after upper case, the way compareToIgnoreCase compares them,
+ * so the rows of a FeatureStore are already in the order of their keys and the rows of a key follow each other.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class PrefixIndex {
+
+	//keys per block, only the first key of a block is stored whole
+	private static final int BLOCK = 16;
+
+	//front coded keys and the position of the first key of every block in it
+	private char[] data;
+	private int[] blocks;
+	private int size;
+
+	//number of rows of every key and where its rows start in order
+	private int[] counts;
+	private int[] starts;
+
+	//rows sorted by key, null when the indexed rows were already in that order
+	private int[] order;
+
+	//segment tree: node i holds the key with the most rows under it, leaves start at leaves
+	private int[] tree;
+	private int leaves;
+
+	/**
+	 * Constructs a PrefixIndex, use of to build one
+	 */
+	private PrefixIndex() {
+	}
+
+	/**
+	 * Builds the index over the given names
+	 * @param names, the name of every row, in any order
+	 * @return the index
+	 */
+	public static PrefixIndex of(String[] names) {
+
+		String[] keys = new String[names.length];
+		boolean sorted = true;
+		for (int row = 0; row < names.length; row++) {
+			keys[row] = fold(names[row]);
+			if (row > 0 && keys[row - 1].compareTo(keys[row]) > 0) {
+				sorted = false;
+			}
+		}
+
+		PrefixIndex index = new PrefixIndex();
+		int[] order = null;
+		if (!sorted) {
+			order = new int[names.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			IntSort.sort(order, 0, order.length, (a, b) -> keys[a].compareTo(keys[b]));
+			index.order = order;
+		}
+
+		//every run of equal keys becomes one entry
+		ArrayList<String> distinct = new ArrayList<String>();
+		int[] counts = new int[Math.max(1, names.length)];
+		int[] starts = new int[Math.max(1, names.length)];
+		for (int i = 0; i < names.length; i++) {
+			String key = keys[(order == null) ? i : order[i]];
+			if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(key)) {
+				starts[distinct.size()] = i;
+				distinct.add(key);
+			}
+			counts[distinct.size() - 1]++;
+		}
+		index.size = distinct.size();
+		index.counts = Arrays.copyOf(counts, index.size);
+		index.starts = Arrays.copyOf(starts, index.size);
+		index.encode(distinct);
+		index.buildTree();
+		return index;
+	}
+
+	/**
+	 * Folds a name the way compareToIgnoreCase compares it
+	 * @param name, the name
+	 * @return the name with every code point changed to lower case after upper case
+	 */
+	public static String fold(String name) {
+		StringBuilder key = null;
+		for (int i = 0; i < name.length(); ) {
+			int c = name.codePointAt(i);
+			int folded = Character.toLowerCase(Character.toUpperCase(c));
+			if (folded != c && key == null) {
+				key = new StringBuilder(name.length()).append(name, 0, i);
+			}
+			if (key != null) {
+				key.appendCodePoint(folded);
+			}
+			i += Character.charCount(c);
+		}
+		return (key == null) ? name : key.toString();
+	}
+
+	/**
+	 * Returns the number of distinct keys
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the key of an entry
+	 * @param entry, the position of the key in sorted order
+	 * @return the case folded name
+	 */
+	public String getKey(int entry) {
+		StringBuilder key = new StringBuilder();
+		int block = entry / BLOCK;
+		int position = blocks[block];
+		for (int i = block * BLOCK; i <= entry; i++) {
+			position = next(position, key);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the number of rows of an entry
+	 * @param entry, the position of the key in sorted order
+	 * @return the number of rows whose name has the key
+	 */
+	public int getCount(int entry) {
+		return counts[entry];
+	}
+
+	/**
+	 * Returns a row of an entry
+	 * @param entry, the position of the key in sorted order
+	 * @param i, which of the rows of the key, from 0 to getCount(entry) - 1
+	 * @return the row, the rows of a key are increasing
+	 */
+	public int getRow(int entry, int i) {
+		return (order == null) ? starts[entry] + i : order[starts[entry] + i];
+	}
+
+	/**
+	 * Checks whether the rows of every key follow each other, so the rows of an entry are
+	 * getRow(entry, 0) to getRow(entry, 0) + getCount(entry) - 1
+	 * @return true if the indexed rows were in the order of their keys, false otherwise
+	 */
+	public boolean isContiguous() {
+		return order == null;
+	}
+
+	/**
+	 * Finds the entry of a key
+	 * @param key, a case folded name
+	 * @return the entry, or -1 if no name has the key
+	 */
+	public int find(String key) {
+		int entry = bound(key, false);
+		return (entry < size && getKey(entry).equals(key)) ? entry : -1;
+	}
+
+	/**
+	 * Lists the entries of the keys that start with a prefix, the ones with the most rows first
+	 * and the ones with the same number of rows in key order
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @return the entries, computed as they are consumed
+	 */
+	public PrimitiveIterator.OfInt top(String prefix) {
+		String key = fold(prefix);
+		return new Top(bound(key, false), bound(key, true));
+	}
+
+	/**
+	 * Finds the keys that start with a prefix and have the most rows
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @param count, the largest number of entries returned
+	 * @return the entries, the ones with the most rows first
+	 */
+	public int[] complete(String prefix, int count) {
+		PrimitiveIterator.OfInt top = top(prefix);
+		int[] entries = new int[Math.min(count, size)];
+		int found = 0;
+		while (found < entries.length && top.hasNext()) {
+			entries[found++] = top.nextInt();
+		}
+		return Arrays.copyOf(entries, found);
+	}
+
+	/**
+	 * Finds the first entry whose key is not less than the given key, or with after set,
+	 * the first entry after all keys that start with the given key
+	 * @return the entry, size if there is none
+	 */
+	private int bound(String key, boolean after) {
+
+		//last block whose first key comes before the bound
+		int lo = 0;
+		int hi = blocks.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareFirst(mid, key, after) < 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		if (lo == 0) {
+			return 0;
+		}
+
+		//the bound is in that block or is the first key of the next one
+		int block = lo - 1;
+		StringBuilder current = new StringBuilder();
+		int position = blocks[block];
+		int end = Math.min(size, (block + 1) * BLOCK);
+		for (int entry = block * BLOCK; entry < end; entry++) {
+			position = next(position, current);
+			if (compare(current, key, after) >= 0) {
+				return entry;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Compares the first key of a block, which is stored whole, with a key
+	 * @return a negative number, zero or a positive number as the first key comes before, at or after the key
+	 */
+	private int compareFirst(int block, String key, boolean after) {
+		//the first key shares nothing, so its shared length is one char
+		int position = blocks[block] + 1;
+		int length = data[position++];
+		if (length >= 0x8000) {
+			length = ((length & 0x7fff) << 16) | data[position++];
+		}
+		return compare(data, position, length, key, after);
+	}
+
+	/**
+	 * Compares a decoded key with a key
+	 */
+	private static int compare(CharSequence current, String key, boolean after) {
+		int length = Math.min(current.length(), key.length());
+		for (int i = 0; i < length; i++) {
+			if (current.charAt(i) != key.charAt(i)) {
+				return current.charAt(i) - key.charAt(i);
+			}
+		}
+		return compareLength(current.length(), key.length(), after);
+	}
+
+	/**
+	 * Compares a key stored in data[position..position + length) with a key
+	 */
+	private static int compare(char[] data, int position, int length, String key, boolean after) {
+		int common = Math.min(length, key.length());
+		for (int i = 0; i < common; i++) {
+			if (data[position + i] != key.charAt(i)) {
+				return data[position + i] - key.charAt(i);
+			}
+		}
+		return compareLength(length, key.length(), after);
+	}
+
+	/**
+	 * Compares two keys that are equal up to the shorter one; with after set a key that starts with the other
+	 * comes before the bound
+	 */
+	private static int compareLength(int length, int keyLength, boolean after) {
+		if (length < keyLength) {
+			return -1;
+		}
+		if (after) {
+			return -1;
+		}
+		return (length == keyLength) ? 0 : 1;
+	}
+
+	/**
+	 * Front codes the sorted keys into data
+	 */
+	private void encode(List<String> keys) {
+		StringBuilder out = new StringBuilder();
+		blocks = new int[(size + BLOCK - 1) / BLOCK];
+		String previous = "";
+		for (int i = 0; i < size; i++) {
+			String key = keys.get(i);
+			int shared = 0;
+			if (i % BLOCK == 0) {
+				blocks[i / BLOCK] = out.length();
+			}
+			else {
+				int limit = Math.min(previous.length(), key.length());
+				while (shared < limit && previous.charAt(shared) == key.charAt(shared)) {
+					shared++;
+				}
+			}
+			length(out, shared);
+			length(out, key.length() - shared);
+			out.append(key, shared, key.length());
+			previous = key;
+		}
+		data = new char[out.length()];
+		out.getChars(0, data.length, data, 0);
+	}
+
+	/**
+	 * Writes a length as one char, or as two chars with the highest bit of the first one set when it does not fit
+	 */
+	private static void length(StringBuilder out, int length) {
+		if (length < 0x8000) {
+			out.append((char) length);
+		}
+		else {
+			out.append((char) (0x8000 | (length >>> 16))).append((char) (length & 0xffff));
+		}
+	}
+
+	/**
+	 * Decodes the key stored at position, which continues the key in current
+	 * @return the position of the next key
+	 */
+	private int next(int position, StringBuilder current) {
+		int shared = data[position++];
+		if (shared >= 0x8000) {
+			shared = ((shared & 0x7fff) << 16) | data[position++];
+		}
+		int length = data[position++];
+		if (length >= 0x8000) {
+			length = ((length & 0x7fff) << 16) | data[position++];
+		}
+		current.setLength(shared);
+		current.append(data, position, length);
+		return position + length;
+	}
+
+	/**
+	 * Builds the segment tree over the counts
+	 */
+	private void buildTree() {
+		leaves = 1;
+		while (leaves < size) {
+			leaves *= 2;
+		}
+		tree = new int[2 * leaves];
+		Arrays.fill(tree, -1);
+		for (int i = 0; i < size; i++) {
+			tree[leaves + i] = i;
+		}
+		for (int node = leaves - 1; node > 0; node--) {
+			tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Returns the entry with more rows, the first one when they have as many
+	 */
+	private int better(int a, int b) {
+		if (a < 0) {
+			return b;
+		}
+		if (b < 0) {
+			return a;
+		}
+		if (counts[a] != counts[b]) {
+			return (counts[a] > counts[b]) ? a : b;
+		}
+		return Math.min(a, b);
+	}
+
+	/**
+	 * Finds the entry with the most rows in entries[from..to)
+	 * @return the entry, or -1 if the range is empty
+	 */
+	private int best(int from, int to) {
+		int best = -1;
+		for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>>= 1, hi >>>= 1) {
+			if ((lo & 1) == 1) {
+				best = better(best, tree[lo++]);
+			}
+			if ((hi & 1) == 1) {
+				best = better(best, tree[--hi]);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Lists the entries of a range by decreasing count: the best entry of a range is taken and the two ranges
+	 * around it are queued with their own best entries
+	 */
+	private class Top implements PrimitiveIterator.OfInt {
+
+		//ranges as {best, from, to}
+		private PriorityQueue<int[]> ranges = new PriorityQueue<int[]>((a, b) -> {
+			int c = Integer.compare(counts[b[0]], counts[a[0]]);
+			return (c != 0) ? c : Integer.compare(a[0], b[0]);
+		});
+
+		Top(int from, int to) {
+			add(from, to);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !ranges.isEmpty();
+		}
+
+		@Override
+		public int nextInt() {
+			int[] range = ranges.poll();
+			if (range == null) {
+				throw new NoSuchElementException();
+			}
+			add(range[1], range[0]);
+			add(range[0] + 1, range[2]);
+			return range[0];
+		}
+
+		private void add(int from, int to) {
+			if (from < to) {
+				ranges.add(new int[] {best(from, to), from, to});
+			}
+		}
+	}
+
+	/**
+	 * The Completion class is one completion of a prefix: a name and the number of features that have it
+	 */
+	public static class Completion {
+
+		private String name;
+		private int count;
+
+		/**
+		 * Constructs a Completion
+		 * @param name, the name as it is written in one of its features
+		 * @param count, the number of features with the name, ignoring case
+		 */
+		public Completion(String name, int count) {
+			this.name = name;
+			this.count = count;
+		}
+
+		/**
+		 * Returns the completed name
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of features with the name, ignoring case
+		 * @return the number of features
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the name followed by the number of features in parentheses
+		 * @return the completion in the format name (count)
+		 */
+		@Override
+		public String toString() {
+			return name + " (" + count + ")";
+		}
+	}
+}
@@ -0,0 +1,418 @@
+package project2;
+
+/**
+ * The Query class holds one parsed query: a search (by name, misspelled name, distance, box, closest features or elevation)
+ * optionally followed by a class, a state and an elevation restriction, in any order, and by limit N and offset M
+ * to return only N of the matching features after skipping the first M.
+ * Parsing checks the whole query at once, so a Query that exists is always valid and can be
+ * compiled into a QueryPlan against a FeatureStore.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class Query {
+
+	private String search;
+	private String keyword;
+	private double latitude;
+	private double longitude;
+	private double latitude2;
+	private double longitude2;
+	private double radiusKm;
+	private int count;
+	private int maxEdits;
+	private String featureClass;
+	private String state;
+	private boolean elevationRestricted;
+	private int minElevation = Integer.MIN_VALUE;
+	private int maxElevation = Integer.MAX_VALUE;
+	private int limit = Integer.MAX_VALUE;
+	private int offset = 0;
+
+	/**
+	 * Constructs an empty Query, the values are set by parse
+	 */
+	private Query() {
+	}
+
+	/**
+	 * Parses the words of a query of the form SEARCH [class CLASS] [state STATE] [elev MIN MAX] [limit N] [offset M]
+	 * where SEARCH is one of name KEYWORD, fuzzy KEYWORD [MAX_EDITS], near LAT LON RADIUS_KM, bbox LAT1 LON1 LAT2 LON2,
+	 * nearest K LAT LON or elev MIN MAX, and the words after the search may come in any order
+	 * @param words, array of the query words split by spaces and trimmed
+	 * @return the query
+	 * @throws IllegalArgumentException if the words are not a valid query
+	 */
+	public static Query parse(String[] words) throws IllegalArgumentException {
+
+		if (words == null || words.length == 0) {
+			throw new IllegalArgumentException("Empty Query");
+		}
+
+		Query query = new Query();
+		query.search = words[0];
+		int base = searchLength(words[0]);
+		if (base < 0) {
+			throw new IllegalArgumentException("Unknown Search " + words[0]);
+		}
+		if (words.length < base) {
+			throw new IllegalArgumentException("Wrong Number of Words in Query");
+		}
+
+		//latitudes come before longitudes, the distance of a near search is last
+		if (query.search.equals("name")) {
+			query.keyword = words[1];
+		}
+		else if (query.search.equals("fuzzy")) {
+			//the number of edits is optional, no word after the search is a number
+			query.keyword = words[1];
+			query.maxEdits = FuzzyIndex.defaultEdits(words[1]);
+			if (words.length > 2 && words[2].matches("[0-9]{1,9}")) {
+				query.maxEdits = Integer.parseInt(words[2]);
+				if (query.maxEdits > FuzzyIndex.MAX_EDITS) {
+					throw new IllegalArgumentException("Edit Distance Input is Illegal");
+				}
+				base++;
+			}
+		}
+		else if (query.search.equals("near")) {
+			query.latitude = number(words[1], -90, 90);
+			query.longitude = number(words[2], -180, 180);
+			query.radiusKm = number(words[3], 0, Double.MAX_VALUE);
+		}
+		else if (query.search.equals("bbox")) {
+			query.latitude = number(words[1], -90, 90);
+			query.longitude = number(words[2], -180, 180);
+			query.latitude2 = number(words[3], -90, 90);
+			query.longitude2 = number(words[4], -180, 180);
+		}
+		else if (query.search.equals("elev")) {
+			query.elevation(words[1], words[2]);
+		}
+		else {
+			if (!words[1].matches("[0-9]{1,9}") || Integer.parseInt(words[1]) == 0) {
+				throw new IllegalArgumentException("Count Input is Illegal");
+			}
+			query.count = Integer.parseInt(words[1]);
+			query.latitude = number(words[2], -90, 90);
+			query.longitude = number(words[3], -180, 180);
+		}
+
+		//each restriction and the paging can be given once, elev takes two numbers and the others one word
+		boolean limited = false;
+		boolean skipped = false;
+		for (int i = base; i < words.length; i += 2) {
+			if (i + 1 >= words.length) {
+				throw new IllegalArgumentException("Wrong Number of Words in Query");
+			}
+			if (words[i].equals("elev") && !query.elevationRestricted) {
+				if (i + 2 >= words.length) {
+					throw new IllegalArgumentException("Wrong Number of Words in Query");
+				}
+				query.elevation(words[i + 1], words[i + 2]);
+				i++;
+			}
+			else if (words[i].equals("class") && query.featureClass == null) {
+				query.featureClass = words[i + 1];
+			}
+			else if (words[i].equals("state") && query.state == null) {
+				query.state = words[i + 1];
+			}
+			else if (words[i].equals("limit") && !limited && words[i + 1].matches("[0-9]{1,9}")
+					&& Integer.parseInt(words[i + 1]) > 0) {
+				query.limit = Integer.parseInt(words[i + 1]);
+				limited = true;
+			}
+			else if (words[i].equals("offset") && !skipped && words[i + 1].matches("[0-9]{1,9}")) {
+				query.offset = Integer.parseInt(words[i + 1]);
+				skipped = true;
+			}
+			else {
+				throw new IllegalArgumentException("Restriction Input is Illegal");
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Copies this query with another page
+	 * @param offset, the number of matching features skipped
+	 * @param limit, the largest number of features returned
+	 * @return the copy
+	 */
+	Query page(int offset, int limit) {
+		Query copy = new Query();
+		copy.search = search;
+		copy.keyword = keyword;
+		copy.latitude = latitude;
+		copy.longitude = longitude;
+		copy.latitude2 = latitude2;
+		copy.longitude2 = longitude2;
+		copy.radiusKm = radiusKm;
+		copy.count = count;
+		copy.maxEdits = maxEdits;
+		copy.featureClass = featureClass;
+		copy.state = state;
+		copy.elevationRestricted = elevationRestricted;
+		copy.minElevation = minElevation;
+		copy.maxElevation = maxElevation;
+		copy.offset = offset;
+		copy.limit = limit;
+		return copy;
+	}
+
+	/**
+	 * Returns the number of words taken by the search that starts a query
+	 * @param search, the first word of the query
+	 * @return 2 for name KEYWORD and fuzzy KEYWORD (3 with MAX_EDITS), 3 for elev MIN MAX,
+	 * 4 for near LAT LON RADIUS_KM and nearest K LAT LON, 5 for bbox LAT1 LON1 LAT2 LON2,
+	 * or -1 if the word does not start a search
+	 */
+	public static int searchLength(String search) {
+		if (search.equals("name") || search.equals("fuzzy")) {
+			return 2;
+		}
+		if (search.equals("elev")) {
+			return 3;
+		}
+		if (search.equals("near") || search.equals("nearest")) {
+			return 4;
+		}
+		if (search.equals("bbox")) {
+			return 5;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the search of this query
+	 * @return "name", "fuzzy", "near", "bbox", "nearest" or "elev"
+	 */
+	public String getSearch() {
+		return search;
+	}
+
+	/**
+	 * Returns the keyword of a name or fuzzy search
+	 * @return the keyword, or null for other searches
+	 */
+	public String getKeyword() {
+		return keyword;
+	}
+
+	/**
+	 * Returns the latitude of the point of a near or nearest search, or of the first corner of a box
+	 * @return the latitude
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * Returns the longitude of the point of a near or nearest search, or of the first corner of a box
+	 * @return the longitude
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * Returns the latitude of the second corner of a box
+	 * @return the latitude
+	 */
+	public double getLatitude2() {
+		return latitude2;
+	}
+
+	/**
+	 * Returns the longitude of the second corner of a box
+	 * @return the longitude
+	 */
+	public double getLongitude2() {
+		return longitude2;
+	}
+
+	/**
+	 * Returns the distance of a near search
+	 * @return the distance in kilometers
+	 */
+	public double getRadiusKm() {
+		return radiusKm;
+	}
+
+	/**
+	 * Returns the number of features a nearest search finds
+	 * @return the number of features
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the largest number of edits between the keyword of a fuzzy search and a word of a name
+	 * @return the number of edits
+	 */
+	public int getMaxEdits() {
+		return maxEdits;
+	}
+
+	/**
+	 * Returns the class restriction
+	 * @return the keyword the class has to contain, or null if the query is not restricted by class
+	 */
+	public String getFeatureClass() {
+		return featureClass;
+	}
+
+	/**
+	 * Returns the state restriction
+	 * @return the state, or null if the query is not restricted by state
+	 */
+	public String getState() {
+		return state;
+	}
+
+	/**
+	 * Checks whether the query is restricted to an elevation range, by an elev search or restriction
+	 * @return true if the features have to be in the range of getMinElevation and getMaxElevation, false otherwise
+	 */
+	public boolean isElevationRestricted() {
+		return elevationRestricted;
+	}
+
+	/**
+	 * Returns the lowest elevation of the elevation range
+	 * @return the lowest elevation (inclusive), Integer.MIN_VALUE if the query has no range
+	 */
+	public int getMinElevation() {
+		return minElevation;
+	}
+
+	/**
+	 * Returns the highest elevation of the elevation range
+	 * @return the highest elevation (inclusive), Integer.MAX_VALUE if the query has no range
+	 */
+	public int getMaxElevation() {
+		return maxElevation;
+	}
+
+	/**
+	 * Returns the largest number of features the query returns
+	 * @return the limit, Integer.MAX_VALUE if the query has none
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns the number of matching features skipped before the returned ones
+	 * @return the offset, 0 if the query has none
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Checks whether the features found by this query are ordered by distance instead of in natural ordering
+	 * @return true for a nearest search, false otherwise
+	 */
+	public boolean isClosestFirst() {
+		return search.equals("nearest");
+	}
+
+	/**
+	 * Compares two rows holding features that compare equal, in the order this query returns them.
+	 * Equal features are kept in rows in the order they were read, so like the chained getByName, getByClass and getByState
+	 * calls it replaces, where every step puts each match in front of the matches equal to it, a name, fuzzy or elev
+	 * search with an odd number of name, class and state steps returns the last row first.
+	 * Distance and box searches and the other searches return the first row first.
+	 * @param a, the first row
+	 * @param b, the second row
+	 * @return a negative number, zero or a positive number if row a comes before, with or after row b
+	 */
+	public int compareTies(int a, int b) {
+		int steps = (search.equals("name") ? 1 : 0) + (featureClass != null ? 1 : 0) + (state != null ? 1 : 0);
+		if (steps % 2 == 1 && !search.equals("near") && !search.equals("bbox") && !search.equals("nearest")) {
+			return Integer.compare(b, a);
+		}
+		return Integer.compare(a, b);
+	}
+
+	/**
+	 * Writes this query in a normal form: lower case, numbers as parsed and the words after the search
+	 * in the order class, state, elev, limit, offset.
+	 * Queries with the same normal form find the same features, since all keywords are matched ignoring case.
+	 * @return the normalized query
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(search);
+		if (search.equals("name")) {
+			text.append(' ').append(keyword.toLowerCase());
+		}
+		else if (search.equals("fuzzy")) {
+			text.append(' ').append(keyword.toLowerCase()).append(' ').append(maxEdits);
+		}
+		else if (search.equals("near")) {
+			text.append(' ').append(latitude).append(' ').append(longitude).append(' ').append(radiusKm);
+		}
+		else if (search.equals("bbox")) {
+			text.append(' ').append(latitude).append(' ').append(longitude)
+				.append(' ').append(latitude2).append(' ').append(longitude2);
+		}
+		else if (search.equals("elev")) {
+			text.append(' ').append(minElevation).append(' ').append(maxElevation);
+		}
+		else {
+			text.append(' ').append(count).append(' ').append(latitude).append(' ').append(longitude);
+		}
+		if (featureClass != null) {
+			text.append(" class ").append(featureClass.toLowerCase());
+		}
+		if (state != null) {
+			text.append(" state ").append(state.toLowerCase());
+		}
+		if (elevationRestricted && !search.equals("elev")) {
+			text.append(" elev ").append(minElevation).append(' ').append(maxElevation);
+		}
+		if (limit != Integer.MAX_VALUE) {
+			text.append(" limit ").append(limit);
+		}
+		if (offset != 0) {
+			text.append(" offset ").append(offset);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Parses the lowest and highest elevation of an elevation range, whole numbers that may be negative
+	 * @throws IllegalArgumentException if they are not whole numbers or min is greater than max
+	 */
+	private void elevation(String min, String max) throws IllegalArgumentException {
+		if (!min.matches("-?[0-9]{1,9}") || !max.matches("-?[0-9]{1,9}")
+				|| Integer.parseInt(min) > Integer.parseInt(max)) {
+			throw new IllegalArgumentException("Elevation Input is Illegal");
+		}
+		elevationRestricted = true;
+		minElevation = Integer.parseInt(min);
+		maxElevation = Integer.parseInt(max);
+	}
+
+	/**
+	 * Parses a number and checks that it is in the given range (inclusive)
+	 * @throws IllegalArgumentException if the text is not a number in the range
+	 */
+	private static double number(String text, double min, double max) throws IllegalArgumentException {
+		double value;
+		try {
+			value = Double.parseDouble(text);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Number Input is Illegal");
+		}
+		if (!(value >= min && value <= max)) {
+			throw new IllegalArgumentException("Number Input is Out of Range");
+		}
+		return value;
+	}
+}
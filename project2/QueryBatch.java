@@ -0,0 +1,191 @@
+package project2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * The QueryBatch class answers a list of queries without user interaction.
+ * The queries are read one per line and run concurrently on a ForkJoinPool against the store,
+ * which is never changed while searching. The answers are written in the order of the queries.
+ * As text, each answer starts with a line holding the query and is formatted like the interactive mode prints it.
+ * As tsv or json lines, every feature is written with its query, and queries that are invalid are reported on
+ * the error stream instead of the output.
+ *
+ * A line prefix TEXT [limit N] is answered with the completions of the name, and a count or stats aggregation with its
+ * groups, like the interactive mode prints them.
+ *
+ * Only a window of queries is in flight at a time, so the input can be much larger than memory.
+ * A line delta FILE applies a delta file; the queries before it see the features without the delta
+ * and the queries after it see them with the delta, even though they run concurrently.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class QueryBatch {
+
+	//queries started ahead of the first unanswered one, per thread
+	private static final int WINDOW_PER_THREAD = 64;
+
+	private static final String LINE = System.lineSeparator();
+
+	private DeltaStore store;
+	private QueryCache cache;
+	private String format;
+
+	/**
+	 * Constructs a QueryBatch that searches a store
+	 * @param store, the store to search and apply deltas to
+	 * @param cache, the cache of query results to use, or null to always search the store
+	 * @param format, the format of the answers, one of ResultWriter.TEXT, TSV or JSON
+	 * @throws IllegalArgumentException if the store is null or the format is unknown
+	 */
+	public QueryBatch(DeltaStore store, QueryCache cache, String format) throws IllegalArgumentException {
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in QueryBatch");
+		}
+		if (!ResultWriter.isFormat(format)) {
+			throw new IllegalArgumentException("Unknown Output Format " + format);
+		}
+		this.store = store;
+		this.cache = cache;
+		this.format = format;
+	}
+
+	/**
+	 * Answers every query read from the input, until its end or a line holding quit
+	 * @param in, the queries, one per line; empty lines are skipped
+	 * @param out, where the answers are written in the order of the queries
+	 * @param threads, the number of threads that run queries, from 1 to FeatureLoader.MAX_THREADS
+	 * @return the number of queries answered
+	 * @throws IOException if reading the queries or writing the answers fails
+	 */
+	public int run(BufferedReader in, Writer out, int threads) throws IOException {
+
+		threads = Math.max(1, Math.min(threads, FeatureLoader.MAX_THREADS));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ArrayDeque<ForkJoinTask<String>> pending = new ArrayDeque<ForkJoinTask<String>>();
+		int window = threads * WINDOW_PER_THREAD;
+		int count = 0;
+		try {
+			String line;
+			while ((line = in.readLine()) != null && !line.trim().equalsIgnoreCase("quit")) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				String[] words = EveryPlaceHasAName.splitLine(line);
+				if (words.length == 2 && words[0].equals("delta")) {
+					String message = applyDelta(words[1]);
+					pending.add(pool.submit(() -> message));
+				}
+				else {
+					//the snapshot is taken in input order, before the query runs
+					String query = line;
+					FeatureTable table = store.snapshot();
+					pending.add(pool.submit(() -> answer(query, table)));
+					count++;
+				}
+				//writes the oldest answer once the window is full, so the answers stay in order
+				if (pending.size() >= window) {
+					out.write(pending.poll().join());
+				}
+			}
+			while (!pending.isEmpty()) {
+				out.write(pending.poll().join());
+			}
+			out.flush();
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return count;
+	}
+
+	/**
+	 * Answers one query
+	 * @param line, the query as it was typed
+	 * @param table, the features to search
+	 * @return the answer: as text, the query line followed by the matching features, completions or groups, or by the message
+	 * the interactive mode prints when the query is invalid or nothing matches; as tsv or json, a line per matching feature,
+	 * completion or group
+	 */
+	public String answer(String line, FeatureTable table) {
+
+		StringWriter text = new StringWriter();
+		ResultWriter results = new ResultWriter(text, format);
+		boolean plain = results.getFormat() == ResultWriter.TEXT;
+		String query = line.trim();
+		try {
+			if (plain) {
+				results.print("Query: " + query + LINE);
+			}
+
+			String[] words = EveryPlaceHasAName.splitLine(line);
+			int completions = EveryPlaceHasAName.checkPrefix(words);
+			if (completions > 0) {
+				if (results.writeCompletions(table.complete(EveryPlaceHasAName.prefixText(words), completions), plain ? null : query) == 0 && plain) {
+					results.print("No Matches Found. Try Again. " + LINE + LINE);
+				}
+				return text.toString();
+			}
+			boolean aggregation = Aggregation.isAggregation(words);
+			if (aggregation ? !EveryPlaceHasAName.checkAggregation(words) : !EveryPlaceHasAName.checkInput(words)) {
+				if (plain) {
+					results.print("Invalid query, please try again. " + LINE + LINE);
+				}
+				else {
+					System.err.println("Invalid query: " + query);
+				}
+				return text.toString();
+			}
+
+			if (aggregation) {
+				Aggregation parsed = Aggregation.parse(words);
+				if (results.writeGroups(parsed, table.aggregate(parsed), plain ? null : query) == 0 && plain) {
+					results.print("No Matches Found. Try Again. " + LINE + LINE);
+				}
+				return text.toString();
+			}
+
+			Query parsed = Query.parse(words);
+			IntStream rows = (cache == null) ? table.rowStream(parsed) : cache.rowStream(table, parsed);
+			if (results.write(table, rows.iterator(), plain ? null : query) == 0 && plain) {
+				results.print("No Matches Found. Try Again. " + LINE + LINE);
+			}
+		}
+		catch (IOException e) {
+			//a StringWriter does not throw
+			throw new UncheckedIOException(e);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Applies a delta file
+	 * @param file, the name of the delta file
+	 * @return the message written to the output in the text format, or an empty String in the other formats
+	 * which report failures on the error stream
+	 */
+	private String applyDelta(String file) {
+		String message;
+		try {
+			message = "Delta " + file + " applied, " + store.apply(new File(file)).size() + " features.";
+		}
+		catch (IOException | IllegalArgumentException e) {
+			message = "The delta " + file + " cannot be applied: " + e.getMessage();
+			if (format.equals(ResultWriter.TEXT)) {
+				return message + LINE + LINE;
+			}
+			System.err.println(message);
+			return "";
+		}
+		return format.equals(ResultWriter.TEXT) ? message + LINE + LINE : "";
+	}
+}
@@ -0,0 +1,278 @@
+package project2;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The QueryCache class keeps the results of recent queries so that repeated queries are answered
+ * without searching the table again. Results are kept as arrays of rows and are turned into new
+ * Feature objects on every hit, so a caller changing a returned list does not change the cache.
+ *
+ * Queries are looked up by their normal form (see Query.toString), so the same query typed with a
+ * different case or with the restrictions in the other order is a hit. When the cache is full, by number of
+ * entries or by the estimated bytes of the results, the least recently used entries are dropped first.
+ * All cached results belong to one table; searching a different table, such as a new snapshot after a delta
+ * was applied, clears the cache.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class QueryCache {
+
+	//estimated bytes of an entry besides its rows and its key
+	private static final int ENTRY_BYTES = 96;
+
+	private int maxEntries;
+	private long maxBytes;
+	private long bytes = 0;
+	private FeatureTable table = null;
+	private LinkedHashMap<String, int[]> entries = new LinkedHashMap<String, int[]>(16, 0.75f, true);
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Constructs an empty QueryCache
+	 * @param maxEntries, the largest number of results kept
+	 * @param maxBytes, the largest estimated number of bytes used by the kept results
+	 * @throws IllegalArgumentException if a limit is negative
+	 */
+	public QueryCache(int maxEntries, long maxBytes) throws IllegalArgumentException {
+		if (maxEntries < 0 || maxBytes < 0) {
+			throw new IllegalArgumentException("Negative Cache Limit");
+		}
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Runs a query against a table, using the cached result if the same query was run against the table before
+	 * @param table, the table to search
+	 * @param query, the query
+	 * @return the FeatureList of the matching features as the table returns them, or null if there are none
+	 * @throws IllegalArgumentException if the table or the query is null
+	 */
+	public FeatureList search(FeatureTable table, Query query) throws IllegalArgumentException {
+
+		if (table == null || query == null) {
+			throw new IllegalArgumentException("Null Argument Error in QueryCache");
+		}
+
+		int[] rows = rows(table, query);
+		return table.getFeatures(rows, rows.length, !query.isClosestFirst());
+	}
+
+	/**
+	 * Runs a query against a table like search, creating the features one at a time as the stream is consumed.
+	 * When the cache cannot hold any result, the query itself runs lazily.
+	 * @param table, the table to search
+	 * @param query, the query
+	 * @return the stream of the matching features, in the order search returns them
+	 * @throws IllegalArgumentException if the table or the query is null
+	 */
+	public Stream<Feature> stream(FeatureTable table, Query query) throws IllegalArgumentException {
+		return rowStream(table, query).mapToObj(table::getFeature);
+	}
+
+	/**
+	 * Runs a query against a table like search, without creating the features.
+	 * A cached result is streamed from the cache. Otherwise the query itself runs lazily, so the rows are written
+	 * while they are found, and they are copied aside only while they still fit in the cache: a result that is
+	 * read to its end and fits is cached, a larger one is never held in memory as a whole.
+	 * @param table, the table to search
+	 * @param query, the query
+	 * @return the stream of the matching rows, in the order search returns their features
+	 * @throws IllegalArgumentException if the table or the query is null
+	 */
+	public IntStream rowStream(FeatureTable table, Query query) throws IllegalArgumentException {
+
+		if (table == null || query == null) {
+			throw new IllegalArgumentException("Null Argument Error in QueryCache");
+		}
+
+		if (maxEntries == 0 || maxBytes == 0) {
+			return table.rowStream(query);
+		}
+		String key = query.toString();
+		int[] rows = get(table, key);
+		if (rows != null) {
+			return Arrays.stream(rows);
+		}
+
+		//the most rows a result of this key can have and still be cached
+		long room = (maxBytes - cost(key, new int[0])) / 4;
+		if (room < 0) {
+			return table.rowStream(query);
+		}
+		PrimitiveIterator.OfInt found = table.rowStream(query).iterator();
+		PrimitiveIterator.OfInt recorded = new PrimitiveIterator.OfInt() {
+
+			//the rows found so far, null once there are too many to cache
+			private int[] kept = new int[16];
+			private int size = 0;
+
+			@Override
+			public boolean hasNext() {
+				if (found.hasNext()) {
+					return true;
+				}
+				if (kept != null) {
+					put(table, key, Arrays.copyOf(kept, size));
+					kept = null;
+				}
+				return false;
+			}
+
+			@Override
+			public int nextInt() {
+				int row = found.nextInt();
+				if (kept != null) {
+					if (size == room) {
+						kept = null;
+					}
+					else {
+						if (size == kept.length) {
+							kept = Arrays.copyOf(kept, (int) Math.min(2L * size, Math.min(room, Integer.MAX_VALUE - 8)));
+						}
+						kept[size++] = row;
+					}
+				}
+				return row;
+			}
+		};
+		return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(recorded, Spliterator.ORDERED), false);
+	}
+
+	/**
+	 * Drops all cached results
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+		table = null;
+	}
+
+	/**
+	 * Returns the number of cached results
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated number of bytes used by the cached results
+	 * @return the estimated bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of queries answered from the cache
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of queries that had to search the table
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results dropped to stay within the limits
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Describes the use of the cache
+	 * @return the hit, miss and eviction counts and the size of the cache
+	 */
+	@Override
+	public synchronized String toString() {
+		return "QueryCache: " + hits + " hits, " + misses + " misses, " + evictions + " evictions, "
+				+ entries.size() + " entries, " + bytes + " bytes";
+	}
+
+	/**
+	 * Finds the rows of a query in the cache, or runs the query and caches its rows
+	 * @return the matching rows
+	 */
+	private int[] rows(FeatureTable table, Query query) {
+		String key = query.toString();
+		int[] rows = get(table, key);
+		if (rows == null) {
+			//the search runs outside of the lock, so other threads can use the cache meanwhile
+			rows = table.rowStream(query).toArray();
+			put(table, key, rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Looks up the rows of a query and counts the hit or miss
+	 * @return the cached rows, or null if the query is not cached for this table
+	 */
+	private synchronized int[] get(FeatureTable table, String key) {
+		if (this.table != table) {
+			clear();
+			this.table = table;
+		}
+		int[] rows = entries.get(key);
+		if (rows == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		return rows;
+	}
+
+	/**
+	 * Adds the rows of a query, then drops the least recently used results until the cache is within its limits.
+	 * A result larger than the whole cache is not kept, so it does not drop every other result.
+	 */
+	private synchronized void put(FeatureTable table, String key, int[] rows) {
+		//the table was replaced while the query ran, so the rows are stale
+		if (this.table != table || cost(key, rows) > maxBytes) {
+			return;
+		}
+		int[] old = entries.put(key, rows);
+		if (old != null) {
+			bytes -= cost(key, old);
+		}
+		bytes += cost(key, rows);
+
+		Iterator<Map.Entry<String, int[]>> eldest = entries.entrySet().iterator();
+		while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+			Map.Entry<String, int[]> entry = eldest.next();
+			bytes -= cost(entry.getKey(), entry.getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Estimates the bytes used by an entry
+	 */
+	private static long cost(String key, int[] rows) {
+		return ENTRY_BYTES + 2L * key.length() + 4L * rows.length;
+	}
+}
@@ -0,0 +1,369 @@
+package project2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The QueryPlan class compiles a Query against a FeatureStore into a single pass over one source of rows.
+ * The plan picks the smallest source it can find: the name candidates from the trigram index, the posting
+ * lists of the words close to the keyword of a fuzzy search, of the selected classes or of the selected states,
+ * the slice of the elevation index in the elevation range, or the k-d tree for distance and box searches.
+ * Every other part of the query is then checked on each row of that source in the same pass,
+ * so no intermediate lists are built.
+ *
+ * The restrictions are checked as dictionary ordinals and primitive elevations, so they cost an array lookup per row.
+ * Rows removed by a delta are skipped the same way, with a lookup in a bit set.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class QueryPlan {
+
+	private FeatureStore store;
+	private Query query;
+
+	//rows removed from the store by deltas, null when there are none
+	private BitSet deleted;
+
+	//selected class and state ordinals, null when the query is not restricted by them
+	private boolean[] classMatch;
+	private boolean[] stateMatch;
+
+	//folded words close to the keyword of a fuzzy search, null for other searches
+	private Set<String> fuzzyMatch;
+
+	//the source of the rows and the largest number of rows it gives
+	private String source;
+	private int estimate;
+
+	/**
+	 * Constructs a plan, use of to choose the source of the rows
+	 */
+	private QueryPlan(FeatureStore store, Query query) {
+		this.store = store;
+		this.query = query;
+	}
+
+	/**
+	 * Compiles a query against a store
+	 * @param store, the store to search
+	 * @param query, the query
+	 * @return the plan of the query
+	 * @throws IllegalArgumentException if the store or the query is null
+	 */
+	public static QueryPlan of(FeatureStore store, Query query) throws IllegalArgumentException {
+		return of(store, query, null);
+	}
+
+	/**
+	 * Compiles a query against a store, skipping the deleted rows
+	 * @param store, the store to search
+	 * @param query, the query
+	 * @param deleted, the rows of the store that were removed, or null if there are none
+	 * @return the plan of the query
+	 * @throws IllegalArgumentException if the store or the query is null
+	 */
+	public static QueryPlan of(FeatureStore store, Query query, BitSet deleted) throws IllegalArgumentException {
+
+		if (store == null || query == null) {
+			throw new IllegalArgumentException("Null Argument Error in QueryPlan");
+		}
+
+		QueryPlan plan = new QueryPlan(store, query);
+		plan.deleted = (deleted == null || deleted.isEmpty()) ? null : deleted;
+		DictionaryColumn classes = store.getIndex().getClasses();
+		DictionaryColumn states = store.getIndex().getStates();
+		int classCount = store.size();
+		int stateCount = store.size();
+		int elevationCount = store.size();
+		if (query.getFeatureClass() != null) {
+			plan.classMatch = classes.getDictionary().matchContaining(query.getFeatureClass());
+			classCount = classes.count(plan.classMatch);
+		}
+		if (query.getState() != null) {
+			plan.stateMatch = states.getDictionary().matchIgnoreCase(query.getState());
+			stateCount = states.count(plan.stateMatch);
+		}
+		if (query.isElevationRestricted()) {
+			elevationCount = store.getElevationIndex().count(query.getMinElevation(), query.getMaxElevation());
+		}
+
+		//distance and box searches always walk the tree, which only visits the part of the data near the query
+		if (query.getSearch().equals("near") || query.getSearch().equals("bbox") || query.getSearch().equals("nearest")) {
+			plan.choose("tree", Math.min(Math.min(classCount, stateCount), elevationCount));
+			return plan;
+		}
+
+		plan.choose("scan", store.size());
+		if (query.getSearch().equals("name")) {
+			int nameCount = store.getIndex().getNames().estimate(query.getKeyword());
+			if (nameCount >= 0) {
+				plan.choose("names", nameCount);
+			}
+		}
+		else if (query.getSearch().equals("fuzzy")) {
+			FuzzyIndex fuzzy = store.getFuzzyIndex();
+			plan.fuzzyMatch = fuzzy.match(query.getKeyword(), query.getMaxEdits());
+			plan.choose("fuzzy", fuzzy.estimate(plan.fuzzyMatch));
+		}
+		plan.choose("classes", classCount);
+		plan.choose("states", stateCount);
+		plan.choose("elevations", elevationCount);
+		return plan;
+	}
+
+	/**
+	 * Returns the source of the rows this plan checks
+	 * @return "names" for the trigram candidates, "fuzzy", "classes" or "states" for posting lists,
+	 * "elevations" for the elevation index, "tree" for the k-d tree or "scan" for every row
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the largest number of rows the plan can find
+	 * @return the estimated number of rows
+	 */
+	public int getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * Runs the query
+	 * @return the FeatureList of the matching features, sorted in natural ordering of Feature elements
+	 * (closest first for a nearest search), or null if there are none
+	 */
+	public FeatureList run() {
+		int[] rows = rows();
+		return store.getFeatures(rows, rows.length, isSorted());
+	}
+
+	/**
+	 * Checks whether the rows found by this plan are in natural ordering, which is the case for all but nearest searches
+	 * @return true if the rows are in natural ordering of Feature elements, false if they are closest first
+	 */
+	public boolean isSorted() {
+		return !query.isClosestFirst();
+	}
+
+	/**
+	 * Runs the query without creating the features
+	 * @return array of the matching rows, in natural ordering of their features or closest first for a nearest search
+	 */
+	public int[] rows() {
+		return rowStream().toArray();
+	}
+
+	/**
+	 * Runs the query lazily: the features are created one at a time as the stream is consumed,
+	 * and the search stops as soon as the page given by the limit and offset of the query is complete.
+	 * @return the stream of the matching features, in natural ordering of Feature elements
+	 * (closest first for a nearest search)
+	 */
+	public Stream<Feature> stream() {
+		return rowStream().mapToObj(store::getFeature);
+	}
+
+	/**
+	 * Runs the query lazily without creating the features
+	 * @return the stream of the matching rows, in natural ordering of their features or closest first for a nearest search,
+	 * after the offset and up to the limit of the query; equal features are ordered by Query.compareTies
+	 */
+	public IntStream rowStream() {
+
+		if (estimate == 0) {
+			return IntStream.empty();
+		}
+		IntPredicate restrictions = restrictions();
+		SpatialIndex spatial = store.getSpatialIndex();
+		int offset = query.getOffset();
+		int limit = query.getLimit();
+		//the rows the search has to find to fill the page
+		int page = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+		//the tree visits rows in no useful order, so the page is kept in a bounded heap while searching
+		int[] rows = null;
+		if (query.getSearch().equals("nearest")) {
+			rows = spatial.nearest(query.getLatitude(), query.getLongitude(), Math.min(query.getCount(), page), restrictions);
+		}
+		else if (query.getSearch().equals("near")) {
+			rows = spatial.near(query.getLatitude(), query.getLongitude(), query.getRadiusKm(), restrictions, page);
+		}
+		else if (query.getSearch().equals("bbox")) {
+			rows = spatial.inBox(Math.min(query.getLatitude(), query.getLatitude2()),
+					Math.min(query.getLongitude(), query.getLongitude2()),
+					Math.max(query.getLatitude(), query.getLatitude2()),
+					Math.max(query.getLongitude(), query.getLongitude2()), restrictions, page);
+		}
+		if (rows != null) {
+			return Arrays.stream(rows).skip(offset);
+		}
+
+		//the source rows are increasing, so the rows that pass are in the order of the results (up to the order of
+		//equal features) and the search can stop at the end of the page
+		IntStream candidates;
+		if (source.equals("names")) {
+			candidates = Arrays.stream(store.getIndex().getNames().candidates(query.getKeyword()));
+		}
+		else if (source.equals("classes")) {
+			candidates = store.getIndex().getClasses().stream(classMatch);
+		}
+		else if (source.equals("states")) {
+			candidates = store.getIndex().getStates().stream(stateMatch);
+		}
+		else if (source.equals("fuzzy")) {
+			candidates = Arrays.stream(store.getFuzzyIndex().rows(fuzzyMatch));
+		}
+		else if (source.equals("elevations")) {
+			candidates = Arrays.stream(store.getElevationIndex().rows(query.getMinElevation(), query.getMaxElevation()));
+		}
+		else {
+			candidates = IntStream.range(0, store.size());
+		}
+		String key = query.getSearch().equals("name") ? query.getKeyword().toLowerCase() : null;
+		Set<String> words = source.equals("fuzzy") ? null : fuzzyMatch;
+		IntStream found = candidates.filter(row -> (restrictions == null || restrictions.test(row))
+				&& (key == null || store.getName(row).toLowerCase().contains(key))
+				&& (words == null || FuzzyIndex.matches(store.getName(row), words)));
+		return sortTies(found, store, query::compareTies).skip(offset).limit(limit);
+	}
+
+	/**
+	 * Sorts every run of neighbouring rows that hold equal features by the given order of their rows
+	 * @param rows, rows of the table in natural ordering of their features in rows[0..count)
+	 * @param count, the number of rows
+	 * @param table, the table holding the rows
+	 * @param ties, the order of rows holding equal features
+	 */
+	static void sortTies(int[] rows, int count, FeatureTable table, IntSort.Comparator ties) {
+		int start = 0;
+		for (int i = 1; i <= count; i++) {
+			if (i == count || !isSameFeature(table, rows[start], rows[i])) {
+				IntSort.sort(rows, start, i, ties);
+				start = i;
+			}
+		}
+	}
+
+	/**
+	 * Sorts every run of neighbouring rows that hold equal features by the given order of their rows while the rows
+	 * are consumed, reading only one row past the current run
+	 * @param rows, the stream of rows of the table in natural ordering of their features
+	 * @param table, the table holding the rows
+	 * @param ties, the order of rows holding equal features
+	 * @return the stream of the same rows with the runs of equal features sorted
+	 */
+	static IntStream sortTies(IntStream rows, FeatureTable table, IntSort.Comparator ties) {
+		PrimitiveIterator.OfInt in = rows.iterator();
+		PrimitiveIterator.OfInt sorted = new PrimitiveIterator.OfInt() {
+
+			//the current run and the first row of the next run if it was read
+			private int[] run = new int[8];
+			private int length = 0;
+			private int given = 0;
+			private int next = -1;
+
+			@Override
+			public boolean hasNext() {
+				if (given < length) {
+					return true;
+				}
+				if (next < 0 && !in.hasNext()) {
+					return false;
+				}
+				length = 0;
+				given = 0;
+				run[length++] = (next < 0) ? in.nextInt() : next;
+				next = -1;
+				while (in.hasNext()) {
+					int row = in.nextInt();
+					if (!isSameFeature(table, run[0], row)) {
+						next = row;
+						break;
+					}
+					if (length == run.length) {
+						run = Arrays.copyOf(run, length * 2);
+					}
+					run[length++] = row;
+				}
+				IntSort.sort(run, 0, length, ties);
+				return true;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return run[given++];
+			}
+		};
+		return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(sorted, Spliterator.ORDERED), false);
+	}
+
+	/**
+	 * Checks if two rows hold features that compare equal
+	 */
+	private static boolean isSameFeature(FeatureTable table, int a, int b) {
+		//the numbers are compared first, they differ the most often
+		if (Location.compare(table.getLatitude(a), table.getLongitude(a), table.getElevation(a),
+				table.getLatitude(b), table.getLongitude(b), table.getElevation(b)) != 0) {
+			return false;
+		}
+		return table.getName(a).compareToIgnoreCase(table.getName(b)) == 0
+				&& table.getState(a).compareToIgnoreCase(table.getState(b)) == 0
+				&& table.getCounty(a).compareToIgnoreCase(table.getCounty(b)) == 0
+				&& table.getFeatureClass(a).compareToIgnoreCase(table.getFeatureClass(b)) == 0;
+	}
+
+	/**
+	 * Describes the plan
+	 * @return the search followed by the source of the rows and its estimated size
+	 */
+	@Override
+	public String toString() {
+		return query.getSearch() + " from " + source + " (at most " + estimate + " rows)";
+	}
+
+	/**
+	 * Uses the given source if it gives fewer rows than the current one
+	 */
+	private void choose(String source, int estimate) {
+		if (this.source == null || estimate < this.estimate) {
+			this.source = source;
+			this.estimate = estimate;
+		}
+	}
+
+	/**
+	 * Builds the check of the class, state and elevation restrictions and of the deleted rows
+	 * @return the predicate accepting the rows that pass the restrictions and are not deleted, or null if every row does
+	 */
+	private IntPredicate restrictions() {
+		DictionaryColumn classes = store.getIndex().getClasses();
+		DictionaryColumn states = store.getIndex().getStates();
+		boolean[] classMatch = this.classMatch;
+		boolean[] stateMatch = this.stateMatch;
+		BitSet deleted = this.deleted;
+		boolean elevation = query.isElevationRestricted();
+		int min = query.getMinElevation();
+		int max = query.getMaxElevation();
+		if (classMatch == null && stateMatch == null && deleted == null && !elevation) {
+			return null;
+		}
+		return row -> (classMatch == null || classMatch[classes.ordinal(row)])
+				&& (stateMatch == null || stateMatch[states.ordinal(row)])
+				&& (!elevation || (store.getElevation(row) >= min && store.getElevation(row) <= max))
+				&& (deleted == null || !deleted.get(row));
+	}
+}
@@ -0,0 +1,320 @@
+package project2;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The QueryServer class answers queries over HTTP, so the features are loaded once and searched by every request
+ * instead of once per run of the program. It only listens on the loopback address.
+ *
+ * Every request runs on its own thread: a virtual thread when the JDK has them, otherwise a thread of a cached pool.
+ * A request takes the current snapshot of the DeltaStore once and answers from it, so a reload or a delta published
+ * in the meantime never changes an answer half way, and requests never wait for one.
+ *
+ * GET /query?q=QUERY answers any line the batch mode accepts (a query, prefix TEXT [limit N] or an aggregation)
+ * with one JSON object per line, as ResultWriter writes them in the json format, or with 400 and an error object when
+ * the query is invalid. POST /reload loads the GNIS file again and POST /delta applies the delta sent as the body
+ * of the request, both answered with a message object holding the number of features afterwards.
+ *
+ * Binding to the loopback address does not stop a web page from sending requests to it, so every request whose
+ * Host is not a loopback name, or which comes with an Origin that is not one, is answered with 403. Responses never
+ * hold file names or the messages of exceptions, those are only printed on the error stream.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class QueryServer {
+
+	//largest delta accepted in the body of a request
+	private static final int MAX_DELTA_BYTES = 64 << 20;
+
+	//host names that reach the loopback address
+	private static final String[] LOCAL_HOSTS = {"localhost", "127.0.0.1", "[::1]"};
+
+	private DeltaStore store;
+	private QueryCache cache;
+	private Callable<FeatureStore> loader;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	//set while the GNIS file is loaded again, so only one reload runs at a time
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+
+	/**
+	 * Constructs a QueryServer, use start to accept requests
+	 * @param store, the features to search, reload and apply deltas to
+	 * @param cache, the cache of query results to use, or null to always search the store
+	 * @param loader, loads the GNIS file again for /reload, or null to answer /reload with 404
+	 * @throws IllegalArgumentException if the store is null
+	 */
+	public QueryServer(DeltaStore store, QueryCache cache, Callable<FeatureStore> loader) throws IllegalArgumentException {
+		if (store == null) {
+			throw new IllegalArgumentException("Null Argument Error in QueryServer");
+		}
+		this.store = store;
+		this.cache = cache;
+		this.loader = loader;
+	}
+
+	/**
+	 * Starts accepting requests on the loopback address
+	 * @param port, the port, or 0 for any free port
+	 * @return the port the server listens on
+	 * @throws IOException if the port cannot be opened
+	 * @throws IllegalStateException if the server was started before
+	 */
+	public synchronized int start(int port) throws IOException, IllegalStateException {
+		if (server != null) {
+			throw new IllegalStateException("QueryServer Already Started");
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = executor();
+		server.setExecutor(executor);
+		server.createContext("/query", this::query);
+		server.createContext("/delta", this::delta);
+		if (loader != null) {
+			server.createContext("/reload", this::reload);
+		}
+		server.start();
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops accepting requests and stops the threads of the server
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Answers GET /query?q=QUERY, writing the results while they are found
+	 */
+	private void query(HttpExchange exchange) throws IOException {
+		try {
+			if (!isLocal(exchange)) {
+				respond(exchange, 403, "error", "Forbidden");
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("GET")) {
+				respond(exchange, 405, "error", "Method Not Allowed");
+				return;
+			}
+			String line = parameter(exchange, "q");
+			if (line == null || line.trim().isEmpty()) {
+				respond(exchange, 400, "error", "Missing Query");
+				return;
+			}
+
+			//the query is checked before the answer starts, so an invalid one gets its own status
+			String[] words = EveryPlaceHasAName.splitLine(line);
+			int completions = EveryPlaceHasAName.checkPrefix(words);
+			boolean aggregation = Aggregation.isAggregation(words);
+			if (completions < 0 && (aggregation ? !EveryPlaceHasAName.checkAggregation(words) : !EveryPlaceHasAName.checkInput(words))) {
+				respond(exchange, 400, "error", "Invalid Query");
+				return;
+			}
+
+			//one snapshot answers the whole request
+			FeatureTable table = store.snapshot();
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16);
+			ResultWriter results = new ResultWriter(out, ResultWriter.JSON);
+			if (completions > 0) {
+				results.writeCompletions(table.complete(EveryPlaceHasAName.prefixText(words), completions), null);
+			}
+			else if (aggregation) {
+				Aggregation parsed = Aggregation.parse(words);
+				results.writeGroups(parsed, table.aggregate(parsed), null);
+			}
+			else {
+				Query parsed = Query.parse(words);
+				IntStream rows = (cache == null) ? table.rowStream(parsed) : cache.rowStream(table, parsed);
+				results.write(table, rows.iterator(), null);
+			}
+			out.close();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers POST /delta by applying the delta sent as the body of the request
+	 */
+	private void delta(HttpExchange exchange) throws IOException {
+		try {
+			if (!isLocal(exchange)) {
+				respond(exchange, 403, "error", "Forbidden");
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("POST")) {
+				respond(exchange, 405, "error", "Method Not Allowed");
+				return;
+			}
+			byte[] body = exchange.getRequestBody().readNBytes(MAX_DELTA_BYTES + 1);
+			if (body.length > MAX_DELTA_BYTES) {
+				respond(exchange, 413, "error", "Delta Too Large");
+				return;
+			}
+			if (body.length == 0) {
+				respond(exchange, 400, "error", "Missing Delta");
+				return;
+			}
+			FeatureTable table;
+			try {
+				table = store.apply(new ByteArrayInputStream(body));
+			}
+			catch (IOException | IllegalArgumentException e) {
+				System.err.println("The delta cannot be applied: " + e.getMessage());
+				respond(exchange, 400, "error", "Invalid Delta");
+				return;
+			}
+			respond(exchange, 200, "message", "Delta applied, " + table.size() + " features.");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers POST /reload by loading the GNIS file again and publishing it, a reload asked for while one runs is
+	 * answered with 409 instead of waiting to load the file once more
+	 */
+	private void reload(HttpExchange exchange) throws IOException {
+		try {
+			if (!isLocal(exchange)) {
+				respond(exchange, 403, "error", "Forbidden");
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("POST")) {
+				respond(exchange, 405, "error", "Method Not Allowed");
+				return;
+			}
+			if (!reloading.compareAndSet(false, true)) {
+				respond(exchange, 409, "error", "Reload Already Running");
+				return;
+			}
+			FeatureTable table;
+			try {
+				table = store.replace(loader.call());
+			}
+			catch (Exception e) {
+				System.err.println("The features cannot be reloaded: " + e.getMessage());
+				respond(exchange, 500, "error", "Reload Failed");
+				return;
+			}
+			finally {
+				reloading.set(false);
+			}
+			respond(exchange, 200, "message", "Reloaded, " + table.size() + " features.");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Checks that a request was sent to a loopback name, and from a loopback page if it comes from a browser
+	 * @return true if the Host header is a loopback name and the Origin header is missing or a loopback origin
+	 */
+	private static boolean isLocal(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null || !isLocalHost(host.replaceFirst(":[0-9]*$", ""))) {
+			return false;
+		}
+		String origin = exchange.getRequestHeaders().getFirst("Origin");
+		if (origin == null) {
+			return true;
+		}
+		try {
+			URI uri = new URI(origin);
+			return ("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) && uri.getHost() != null
+					&& isLocalHost(uri.getHost());
+		}
+		catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if a host name is one of the loopback names, ignoring case
+	 */
+	private static boolean isLocalHost(String host) {
+		for (String local : LOCAL_HOSTS) {
+			if (local.equalsIgnoreCase(host)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends a response holding a single JSON object with one field
+	 */
+	private static void respond(HttpExchange exchange, int status, String field, String text) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, 0);
+		Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+		new ResultWriter(out, ResultWriter.JSON).writeMessage(field, text);
+		out.close();
+	}
+
+	/**
+	 * Returns the decoded value of a parameter of the request URI
+	 * @return the value of the first parameter with the given name, or null if there is none or it is not encoded correctly
+	 */
+	private static String parameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			String key = (equals < 0) ? pair : pair.substring(0, equals);
+			try {
+				if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name)) {
+					return (equals < 0) ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+				}
+			}
+			catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the executor that runs the requests: one new virtual thread per request when the JDK has
+	 * virtual threads, found by reflection so the program still runs on older JDKs, otherwise a cached thread pool
+	 */
+	private static ExecutorService executor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
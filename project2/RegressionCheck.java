@@ -0,0 +1,769 @@
+package project2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The RegressionCheck class runs differential checks of the optimized paths against simple reference
+ * implementations of the original behavior, on random features with many names, states, counties and classes
+ * that only differ in case, and with coordinates of 0.0, -0.0 and NaN.
+ * Every check prints one line; the program exits with 1 if any check fails, so it can gate a build.
+ *
+ * Run it with java project2.RegressionCheck [SEED] [FEATURES], the defaults are 1 and 3000.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class RegressionCheck {
+
+	private static final String[] NAMES = {"Spring Creek", "spring creek", "SPRING CREEK", "Bear Rock", "bear rock",
+			"Caf\u00e9 Rock", "CAF\u00c9 ROCK", "Oak", "oak", "Oakland", "Big Oak Spring",
+			"Stra\u00dfe", "STRASSE", "\u00c6r\u00f8 Hill", "\u0130zmir Lake",
+			"Mount Saint Helens Creek", "mount saint helens creek", "A", "a b", "Zion"};
+	private static final String[] CLASSES = {"Stream", "stream", "Summit", "SUMMIT", "Lake", "Populated Place"};
+	private static final String[] STATES = {"CO", "co", "NY", "TX", "tx"};
+	private static final String[] COUNTIES = {"Boulder", "boulder", "Adams", "Kings"};
+	private static final double[] LATITUDES = {0.0, -0.0, Double.NaN, 38.5, 38.5000001, -90, 90, 12.25};
+	private static final double[] LONGITUDES = {0.0, -0.0, Double.NaN, -77.25, -77, 180, -180};
+	private static final int[] ELEVATIONS = {0, -5, 12, 1000, Integer.MIN_VALUE};
+	//pieces of Strings whose case folding is unusual; the first LOW_PIECES fold to one byte, the others beyond it,
+	//to several chars or are surrogates
+	private static final String[] PIECES = {"a", "A", "z", "Z", "0", " ", "-", "\u00e9", "\u00c9", "\u00df", "i", "I",
+			"s", "S", "k", "K", "\u00fd", "\u00ff", "\u0178", "\u00fe", "\u00de", "\u0130", "\u0131", "\u017f", "\u212a",
+			"\u0100", "\u0101", "\u03a3", "\u03c3", "\u03c2", "\ud801\udc00", "\ud801\udc28", "\ud800", "\udc00", "\uffff",
+			"\u0000"};
+	private static final int LOW_PIECES = 17;
+	private static final String[] NUMBER_TEXTS = {"0", "-0", "-0.0", "+0.0", "38.5", "38.50000000000000001", "0.1",
+			"-77.25", "90", "90.0000000000000001", "-180", "180.00000000000001", "1e1", "1E-2", "12.", ".5", "-.5",
+			"+.5", ".", "-", "+", "", " ", " 38.5 ", "\t-12.25", "NaN", "-NaN", "Infinity", "abc", "38,5", "1.2.3",
+			"0x1p3", "38.5d", "38.5f", "00000000000000000012.5", "0.000000000000000000000001", "123456789012345.6",
+			"1234567890123456.7", "12345678901234567", "2147483647", "2147483648", "-2147483648", "-2147483649",
+			"\u0667", "1\u0660", " 7", "7 "};
+
+	private Random random;
+	private int count;
+	private int failures = 0;
+
+	/**
+	 * Constructs a RegressionCheck
+	 * @param seed, the seed of the random features
+	 * @param count, the number of random features of every check
+	 * @throws IllegalArgumentException if count is not positive
+	 */
+	public RegressionCheck(long seed, int count) throws IllegalArgumentException {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Feature Count Input is Illegal");
+		}
+		this.random = new Random(seed);
+		this.count = count;
+	}
+
+	/**
+	 * Runs every check
+	 * @param args, the seed of the random features and their number, both optional
+	 */
+	public static void main(String[] args) {
+		long seed = 1;
+		int count = 3000;
+		try {
+			if (args.length > 0) {
+				seed = Long.parseLong(args[0]);
+			}
+			if (args.length > 1) {
+				count = Integer.parseInt(args[1]);
+			}
+		}
+		catch (NumberFormatException e) {
+			System.err.println("The seed and the number of features have to be integers.\n");
+			System.exit(1);
+		}
+
+		RegressionCheck check = new RegressionCheck(seed, count);
+		int failures = check.run();
+		System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed.");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Runs every check, printing a line for each
+	 * @return the number of failed checks
+	 */
+	public int run() {
+		run("nearest", this::checkNearest);
+		run("cache limits", this::checkCacheLimits);
+		run("cache streaming", this::checkCacheStreaming);
+		run("snapshot permissions", this::checkSnapshotPermissions);
+		run("sortAdd", this::checkSortAdd);
+		run("segment ties", this::checkSegmentTies);
+		run("delta removal", this::checkDeltaRemoval);
+		run("loader numbers", this::checkLoaderNumbers);
+		run("sort keys", this::checkSortKeys);
+		run("snapshot round trip", this::checkSnapshotRoundTrip);
+		run("delta merge", this::checkDeltaMerge);
+		return failures;
+	}
+
+	/**
+	 * A Check is one differential check, it throws an exception or returns a description of the first difference
+	 */
+	private interface Check {
+		String run() throws Exception;
+	}
+
+	/**
+	 * Runs a check and prints whether it passed
+	 */
+	private void run(String name, Check check) {
+		String difference;
+		try {
+			difference = check.run();
+		}
+		catch (Exception | Error e) {
+			difference = e.toString();
+		}
+		if (difference == null) {
+			System.out.println(name + ": ok");
+		}
+		else {
+			failures++;
+			System.out.println(name + ": FAILED, " + difference);
+		}
+	}
+
+	/**
+	 * Nearest searches return the same rows as sorting every row by its distance, also when k is far larger than
+	 * the table, which must not allocate for k rows
+	 */
+	private String checkNearest() {
+		FeatureStore store = FeatureStore.of(features(count));
+		OffHeapStore offHeap = OffHeapStore.of(store);
+		for (int k : new int[] {1, 7, store.size(), 999999999}) {
+			double lat = LATITUDES[random.nextInt(LATITUDES.length)];
+			double lon = LONGITUDES[random.nextInt(LONGITUDES.length)];
+			if (lat != lat || lon != lon) {
+				lat = 10;
+				lon = 20;
+			}
+
+			//every row with a distance, closest first and then by row
+			double[] distances = new double[store.size()];
+			ArrayList<Integer> expected = new ArrayList<Integer>();
+			for (int row = 0; row < store.size(); row++) {
+				distances[row] = SpatialIndex.distance(lat, lon, store.getLatitude(row), store.getLongitude(row));
+				if (distances[row] == distances[row]) {
+					expected.add(row);
+				}
+			}
+			expected.sort((a, b) -> (distances[a] != distances[b]) ? Double.compare(distances[a], distances[b]) : Integer.compare(a, b));
+			int[] wanted = expected.stream().mapToInt(Integer::intValue).limit(k).toArray();
+
+			Query query = Query.parse(new String[] {"nearest", String.valueOf(k), String.valueOf(lat), String.valueOf(lon)});
+			int[] rows = store.rowStream(query).toArray();
+			if (!Arrays.equals(distancesOf(distances, rows), distancesOf(distances, wanted))) {
+				return "store, k " + k + ": " + rows.length + " rows instead of " + wanted.length;
+			}
+			rows = offHeap.rowStream(query).toArray();
+			if (!Arrays.equals(distancesOf(distances, rows), distancesOf(distances, wanted))) {
+				return "off heap store, k " + k + ": " + rows.length + " rows instead of " + wanted.length;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A result larger than the whole cache is answered but not kept, and does not drop the results already kept
+	 */
+	private String checkCacheLimits() {
+		//the large result has to be larger than the cache
+		FeatureStore store = FeatureStore.of(features(Math.max(count, 1000)));
+		Query small = Query.parse(new String[] {"name", "zion", "class", "lake", "state", "ny"});
+		Query large = Query.parse(new String[] {"name", "a"});
+		int[] largeRows = store.rowStream(large).toArray();
+		QueryCache cache = new QueryCache(16, 1024 + 4L * store.rowStream(small).count());
+
+		cache.search(store, small);
+		FeatureList found = cache.search(store, large);
+		if (found == null || found.size() != largeRows.length) {
+			return "the large result has " + ((found == null) ? 0 : found.size()) + " features instead of " + largeRows.length;
+		}
+		if (!Arrays.equals(cache.rowStream(store, large).toArray(), largeRows)) {
+			return "the streamed large result differs from the table";
+		}
+		if (cache.size() != 1 || cache.getEvictions() != 0) {
+			return cache.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * A streamed result is cached only when it was read to its end and fits, and is the same as the table's either way
+	 */
+	private String checkCacheStreaming() {
+		//the small result needs more than one row and the large one has to be larger than the cache
+		FeatureStore store = FeatureStore.of(features(Math.max(count, 1000)));
+		Query small = Query.parse(new String[] {"name", "zion", "state", "co"});
+		Query large = Query.parse(new String[] {"name", "a"});
+		int[] smallRows = store.rowStream(small).toArray();
+		int[] largeRows = store.rowStream(large).toArray();
+		QueryCache cache = new QueryCache(16, 1024 + 4L * smallRows.length);
+
+		//a result that is not read to its end is not cached
+		cache.rowStream(store, small).limit(1).toArray();
+		if (cache.size() != 0) {
+			return "a partly read result was cached";
+		}
+		for (int i = 0; i < 2; i++) {
+			if (!Arrays.equals(cache.rowStream(store, small).toArray(), smallRows)) {
+				return "the small result differs from the table";
+			}
+			if (!Arrays.equals(cache.rowStream(store, large).toArray(), largeRows)) {
+				return "the large result differs from the table";
+			}
+		}
+		if (cache.size() != 1 || cache.getHits() != 1 || cache.getEvictions() != 0) {
+			return cache.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * A snapshot can be read by everyone who can read its source file, and no temporary file is left behind
+	 */
+	private String checkSnapshotPermissions() throws IOException {
+		Path directory = Files.createTempDirectory("check");
+		try {
+			Path source = directory.resolve("source.txt");
+			Files.write(source, new byte[0]);
+			Path snapshot = directory.resolve("source.snapshot");
+			try {
+				Files.setPosixFilePermissions(source, PosixFilePermissions.fromString("rw-r--r--"));
+			}
+			catch (UnsupportedOperationException e) {
+				//without POSIX permissions there is nothing to check
+				return null;
+			}
+			FeatureSnapshot.write(FeatureStore.of(features(10)), source.toFile(), snapshot.toFile());
+			String permissions = PosixFilePermissions.toString(Files.getPosixFilePermissions(snapshot));
+			if (!permissions.equals("rw-r--r--")) {
+				return "the snapshot has the permissions " + permissions;
+			}
+			try (Stream<Path> files = Files.list(directory)) {
+				long count = files.count();
+				if (count != 2) {
+					return count + " files instead of the source and the snapshot";
+				}
+			}
+			return null;
+		}
+		finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(directory);
+		}
+	}
+
+	/**
+	 * sortAdd puts every feature where the original linear scan did, in front of the first feature not less than it,
+	 * also after add and set have left the list unsorted
+	 */
+	private String checkSortAdd() {
+		List<Feature> features = features(count);
+		FeatureList list = new FeatureList();
+		ArrayList<Feature> expected = new ArrayList<Feature>();
+		for (int i = 0; i < features.size(); i++) {
+			Feature feature = features.get(i);
+			int operation = random.nextInt(20);
+			if (operation == 0) {
+				list.add(feature);
+				expected.add(feature);
+			}
+			else if (operation == 1 && !expected.isEmpty()) {
+				int index = random.nextInt(expected.size());
+				list.set(index, feature);
+				expected.set(index, feature);
+			}
+			else if (operation == 2) {
+				list.sortAll();
+				expected.sort(null);
+			}
+			else {
+				list.sortAdd(feature);
+				int j = 0;
+				while (j < expected.size() && feature.compareTo(expected.get(j)) > 0) {
+					j++;
+				}
+				expected.add(j, feature);
+			}
+			if (list.size() != expected.size() || (!list.isEmpty() && list.get(list.size() - 1) != expected.get(expected.size() - 1))) {
+				return "the lists differ after " + (i + 1) + " features";
+			}
+		}
+		for (int i = 0; i < expected.size(); i++) {
+			if (list.get(i) != expected.get(i)) {
+				return "the lists differ at " + i + " of " + expected.size();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A table of several segments returns equal features in the same order as a single store of the same features,
+	 * for an even and an odd number of name, class and state steps and with paging
+	 */
+	private String checkSegmentTies() {
+		List<Feature> features = features(count);
+		int loaded = count / 2;
+		DeltaStore delta = new DeltaStore(FeatureStore.of(features.subList(0, loaded)));
+		FeatureStore empty = FeatureStore.of(new ArrayList<Feature>());
+		for (int start = loaded; start < count; start += Math.max(1, count / 8)) {
+			delta.apply(empty, FeatureStore.of(features.subList(start, Math.min(count, start + Math.max(1, count / 8)))));
+		}
+		FeatureTable segmented = delta.snapshot();
+		FeatureStore expected = FeatureStore.of(features);
+
+		String[] queries = {"name oak", "name oak class stream", "name oak class stream state co", "name a state tx",
+				"name a limit 10 offset 7", "elev 0 12", "elev 0 12 class summit", "fuzzy oak 1 state co",
+				"near 38.5 -77.25 50", "bbox -90 -180 90 180 class lake", "nearest 40 12.25 0.0"};
+		for (String text : queries) {
+			Query query = Query.parse(text.split(" "));
+			List<String> wanted = describe(expected, expected.rowStream(query).toArray());
+			List<String> found = describe(segmented, segmented.rowStream(query).toArray());
+			if (!found.equals(wanted)) {
+				return text + ": " + found.size() + " features differ from the " + wanted.size() + " of a single store";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A delta removes exactly the rows with the values of a removed feature: NaN coordinates match NaN,
+	 * -0.0 does not match 0.0
+	 */
+	private String checkDeltaRemoval() {
+		List<Feature> features = features(count);
+		//the first feature is removed, its twin at -0.0 is not
+		for (double latitude : new double[] {-0.0, 0.0}) {
+			Location location = new Location("CO", "Adams");
+			location.setLatitude(latitude);
+			location.setLongitude(5);
+			location.setElevation(7);
+			features.add(0, new Feature("Zion", "Lake", location));
+		}
+		DeltaStore delta = new DeltaStore(FeatureStore.of(features.subList(0, count / 2)));
+		delta.apply(FeatureStore.of(new ArrayList<Feature>()), FeatureStore.of(features.subList(count / 2, features.size())));
+
+		//every tenth feature is removed, and every other feature with exactly its values
+		ArrayList<Feature> removed = new ArrayList<Feature>();
+		for (int i = 0; i < features.size(); i += 10) {
+			removed.add(features.get(i));
+		}
+		FeatureStore removedStore = FeatureStore.of(removed);
+		List<String> gone = contents(removedStore);
+		ArrayList<Feature> kept = new ArrayList<Feature>();
+		for (Feature feature : features) {
+			if (!gone.contains(contents(FeatureStore.of(Arrays.asList(feature))).get(0))) {
+				kept.add(feature);
+			}
+		}
+
+		FeatureTable table = delta.apply(removedStore, FeatureStore.of(new ArrayList<Feature>()));
+		FeatureStore expected = FeatureStore.of(kept);
+		if (!contents(table).equals(contents(expected))) {
+			return table.size() + " features are left instead of " + expected.size();
+		}
+		return null;
+	}
+
+	/**
+	 * The loader parses coordinates and elevations to exactly the values the original line by line reader got
+	 * from Double.parseDouble and Integer.parseInt, including rows it drops, on one thread and on several
+	 */
+	private String checkLoaderNumbers() throws IOException {
+		StringBuilder text = new StringBuilder("FEATURE_ID|FEATURE_NAME|FEATURE_CLASS|STATE_ALPHA|STATE_NUMERIC|"
+				+ "COUNTY_NAME|COUNTY_NUMERIC|PRIMARY_LAT_DMS|PRIM_LONG_DMS|PRIM_LAT_DEC|PRIM_LONG_DEC|"
+				+ "SOURCE_LAT_DMS|SOURCE_LONG_DMS|SOURCE_LAT_DEC|SOURCE_LONG_DEC|ELEV_IN_M|ELEV_IN_FT|MAP_NAME|"
+				+ "DATE_CREATED|DATE_EDITED\n");
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String[] columns = new String[20];
+			Arrays.fill(columns, "");
+			columns[0] = String.valueOf(i + 1);
+			columns[1] = NAMES[random.nextInt(NAMES.length)];
+			columns[2] = CLASSES[random.nextInt(CLASSES.length)];
+			columns[3] = STATES[random.nextInt(STATES.length)];
+			columns[5] = COUNTIES[random.nextInt(COUNTIES.length)];
+			columns[9] = number();
+			columns[10] = number();
+			columns[16] = NUMBER_TEXTS[random.nextInt(NUMBER_TEXTS.length)];
+			columns[19] = "01/01/2000";
+			lines.add(String.join("|", columns));
+			text.append(lines.get(i)).append('\n');
+		}
+
+		//the features as the original reader made them
+		ArrayList<Feature> features = new ArrayList<Feature>();
+		for (String line : lines) {
+			String[] f = line.split("\\|");
+			double lat;
+			double lon;
+			int elev;
+			try {
+				lat = Double.parseDouble(f[9]);
+			}
+			catch (NumberFormatException e) {
+				lat = 0;
+			}
+			try {
+				lon = Double.parseDouble(f[10]);
+			}
+			catch (NumberFormatException e) {
+				lon = 0;
+			}
+			try {
+				elev = Integer.parseInt(f[16]);
+			}
+			catch (NumberFormatException e) {
+				elev = 0;
+			}
+			try {
+				Location location = new Location(f[3].trim(), f[5].trim());
+				location.setLatitude(lat);
+				location.setLongitude(lon);
+				location.setElevation(elev);
+				features.add(new Feature(f[1].trim(), f[2].trim(), location));
+			}
+			catch (IllegalArgumentException e) {
+				//the original reader dropped the row
+			}
+		}
+		FeatureStore expected = FeatureStore.of(features);
+		List<String> wanted = describe(expected, IntStream.range(0, expected.size()).toArray());
+
+		Path file = Files.createTempFile("check", ".txt");
+		try {
+			Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+			for (int threads : new int[] {1, 3}) {
+				FeatureStore store = FeatureLoader.load(file.toFile(), threads);
+				List<String> found = describe(store, IntStream.range(0, store.size()).toArray());
+				for (int i = 0; i < Math.min(found.size(), wanted.size()); i++) {
+					if (!found.get(i).equals(wanted.get(i))) {
+						return threads + " threads: " + found.get(i) + " instead of " + wanted.get(i);
+					}
+				}
+				if (found.size() != wanted.size()) {
+					return threads + " threads: " + found.size() + " features instead of " + wanted.size();
+				}
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+		return null;
+	}
+
+	/**
+	 * The packed sort keys order Strings like compareToIgnoreCase, and Feature.compareTo orders features like the
+	 * original compareTo methods did with equalsIgnoreCase and compareToIgnoreCase
+	 */
+	private String checkSortKeys() {
+		String[] strings = new String[1000];
+		for (int i = 0; i < strings.length; i++) {
+			//half of the Strings change an earlier one after the 7 chars its key holds: a char is replaced, the rest is
+			//cut off or its case is changed, so the comparison has to go on past the keys
+			if (i > 0 && random.nextBoolean()) {
+				String earlier = strings[random.nextInt(i)];
+				int at = Math.min(earlier.length() - 1, 7 + random.nextInt(4));
+				int change = random.nextInt(4);
+				String rest = (change == 0) ? PIECES[random.nextInt(PIECES.length)] + earlier.substring(at + 1)
+						: (change == 1) ? "" : (change == 2) ? earlier.substring(at).toUpperCase() : earlier.substring(at).toLowerCase();
+				strings[i] = (at + rest.length() > 0) ? earlier.substring(0, at) + rest : earlier;
+			}
+			else {
+				strings[i] = text(1 + random.nextInt(16), random.nextInt(12));
+			}
+		}
+		for (String a : strings) {
+			for (String b : strings) {
+				int c = Location.compareIgnoreCase(a, Location.sortKey(a), b, Location.sortKey(b));
+				if (Integer.signum(c) != Integer.signum(a.compareToIgnoreCase(b))) {
+					return "\"" + a + "\" and \"" + b + "\" compare to " + c;
+				}
+			}
+		}
+
+		Feature[] features = new Feature[300];
+		for (int i = 0; i < features.length; i++) {
+			//few different values, so many features only differ in their last fields
+			Location location = new Location(strings[random.nextInt(4)], strings[random.nextInt(4)]);
+			location.setLatitude(LATITUDES[random.nextInt(LATITUDES.length)]);
+			location.setLongitude(LONGITUDES[random.nextInt(LONGITUDES.length)]);
+			location.setElevation(ELEVATIONS[random.nextInt(ELEVATIONS.length)]);
+			features[i] = new Feature(strings[random.nextInt(8)], strings[random.nextInt(8)], location);
+		}
+		for (Feature a : features) {
+			for (Feature b : features) {
+				if (Integer.signum(a.compareTo(b)) != Integer.signum(originalCompare(a, b))) {
+					return a + " and " + b + " compare to " + a.compareTo(b);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compares two features the way the original Feature.compareTo and Location.compareTo did
+	 */
+	private static int originalCompare(Feature a, Feature b) {
+		if (!a.getFeatureName().equalsIgnoreCase(b.getFeatureName())) {
+			return a.getFeatureName().compareToIgnoreCase(b.getFeatureName());
+		}
+		int c = originalCompare(a.getFeatureLocation(), b.getFeatureLocation());
+		if (c != 0) {
+			return c;
+		}
+		if (!a.getFeatureClass().equalsIgnoreCase(b.getFeatureClass())) {
+			return a.getFeatureClass().compareToIgnoreCase(b.getFeatureClass());
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares two locations the way the original Location.compareTo did
+	 */
+	private static int originalCompare(Location a, Location b) {
+		if (!a.getState().equalsIgnoreCase(b.getState())) {
+			return a.getState().compareToIgnoreCase(b.getState());
+		}
+		if (!a.getCounty().equalsIgnoreCase(b.getCounty())) {
+			return a.getCounty().compareToIgnoreCase(b.getCounty());
+		}
+		if (!(a.getLatitude() == b.getLatitude())) {
+			return Double.compare(a.getLatitude(), b.getLatitude());
+		}
+		if (!(a.getLongitude() == b.getLongitude())) {
+			return Double.compare(a.getLongitude(), b.getLongitude());
+		}
+		if (!(a.getElevation() == b.getElevation())) {
+			return Integer.compare(a.getElevation(), b.getElevation());
+		}
+		return 0;
+	}
+
+	/**
+	 * Makes a String of random pieces
+	 * @param pieces, the number of pieces
+	 * @param low, the number of pieces at the start that fold to one byte
+	 */
+	private String text(int pieces, int low) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < pieces; i++) {
+			text.append(PIECES[random.nextInt((i < low) ? LOW_PIECES : PIECES.length)]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Makes the text of a number, one of the unusual ones or a random decimal with up to 18 fraction digits
+	 */
+	private String number() {
+		if (random.nextInt(3) == 0) {
+			return NUMBER_TEXTS[random.nextInt(NUMBER_TEXTS.length)];
+		}
+		StringBuilder number = new StringBuilder(random.nextBoolean() ? "" : "-");
+		number.append(random.nextInt(181));
+		int digits = random.nextInt(19);
+		if (digits > 0) {
+			number.append('.');
+			for (int i = 0; i < digits; i++) {
+				number.append((char) ('0' + random.nextInt(10)));
+			}
+		}
+		return number.toString();
+	}
+
+	/**
+	 * A store read back from its snapshot, with the indexes saved in it, and the records mapped into an off heap
+	 * store hold the same features as the store that was written and answer every query and completion the same way
+	 */
+	private String checkSnapshotRoundTrip() throws IOException {
+		FeatureStore store = FeatureStore.of(features(count));
+		Path directory = Files.createTempDirectory("check");
+		Path source = directory.resolve("source.txt");
+		Path snapshot = directory.resolve("source.snapshot");
+		try {
+			Files.write(source, new byte[0]);
+			FeatureSnapshot.write(store, source.toFile(), snapshot.toFile());
+			FeatureTable[] tables = {FeatureSnapshot.read(snapshot.toFile()), FeatureSnapshot.map(snapshot.toFile())};
+			String[] names = {"read store", "off heap store"};
+
+			List<String> wanted = describe(store, IntStream.range(0, store.size()).toArray());
+			String[] queries = {"name oak", "name a class stream state co", "name STRA", "fuzzy spring 1", "elev -5 12",
+					"elev 0 1000 state ny limit 5 offset 2", "near 38.5 -77.25 100", "near 0 0 1 class lake",
+					"bbox -90 -180 90 180", "bbox 12 -78 39 -77 state tx", "nearest 25 38.5 -77", "nearest 5 0 0 class summit"};
+			String[] prefixes = {"a", "Sp", "caf", "\u00e6", "mount saint", "z"};
+			for (int t = 0; t < tables.length; t++) {
+				FeatureTable table = tables[t];
+				if (table.size() != store.size() || !describe(table, IntStream.range(0, table.size()).toArray()).equals(wanted)) {
+					return names[t] + ": the rows differ";
+				}
+				for (String text : queries) {
+					Query query = Query.parse(text.split(" "));
+					if (!describe(table, table.rowStream(query).toArray()).equals(describe(store, store.rowStream(query).toArray()))) {
+						return names[t] + ": " + text + " finds other features";
+					}
+				}
+				for (String prefix : prefixes) {
+					if (!completions(table, prefix).equals(completions(store, prefix))) {
+						return names[t] + ": the completions of " + prefix + " differ";
+					}
+				}
+			}
+			return null;
+		}
+		finally {
+			Files.deleteIfExists(snapshot);
+			Files.deleteIfExists(source);
+			Files.delete(directory);
+		}
+	}
+
+	/**
+	 * After enough deltas that the added segments are merged, and after compact, the table answers queries and
+	 * completions like a store built from the features that are left, in the order they were added
+	 */
+	private String checkDeltaMerge() {
+		List<Feature> features = features(2 * count);
+		ArrayList<Feature> expected = new ArrayList<Feature>(features.subList(0, count));
+		DeltaStore delta = new DeltaStore(FeatureStore.of(expected));
+		int deltas = 12;
+		int added = count;
+		for (int d = 0; d < deltas; d++) {
+			//removes a few features that are there and one that is not, then adds a part of the rest
+			ArrayList<Feature> removed = new ArrayList<Feature>();
+			for (int i = 0; i < 3 && !expected.isEmpty(); i++) {
+				removed.add(expected.get(random.nextInt(expected.size())));
+			}
+			removed.add(features.get(2 * count - 1 - d));
+			List<String> gone = contents(FeatureStore.of(removed));
+			expected.removeIf(feature -> gone.contains(contents(FeatureStore.of(Arrays.asList(feature))).get(0)));
+			int end = (d == deltas - 1) ? 2 * count - deltas : Math.min(2 * count - deltas, added + count / deltas);
+			List<Feature> adding = features.subList(added, Math.max(added, end));
+			expected.addAll(adding);
+			added = Math.max(added, end);
+			delta.apply(FeatureStore.of(removed), FeatureStore.of(adding));
+		}
+
+		FeatureStore wanted = FeatureStore.of(expected);
+		String[] queries = {"name oak", "name oak class stream", "name a class stream state co", "elev 0 12",
+				"fuzzy oak 1", "near 38.5 -77.25 50", "bbox -90 -180 90 180 state tx", "nearest 30 38.5 -77",
+				"name e limit 10 offset 5"};
+		for (FeatureTable table : new FeatureTable[] {delta.snapshot(), delta.compact()}) {
+			String name = (table instanceof SegmentedTable) ? ((SegmentedTable) table).getSegmentCount() + " segments" : "compacted";
+			if (table.size() != wanted.size() || !contents(table).equals(contents(wanted))) {
+				return name + ": " + table.size() + " features instead of " + wanted.size();
+			}
+			for (String text : queries) {
+				Query query = Query.parse(text.split(" "));
+				if (!describe(table, table.rowStream(query).toArray()).equals(describe(wanted, wanted.rowStream(query).toArray()))) {
+					return name + ": " + text + " finds other features";
+				}
+			}
+			for (String prefix : new String[] {"a", "oak", "sp", "\u00c6R"}) {
+				if (!completions(table, prefix).equals(completions(wanted, prefix))) {
+					return name + ": the completions of " + prefix + " are " + completions(table, prefix) + " instead of " + completions(wanted, prefix);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the completions of a prefix
+	 */
+	private static List<String> completions(FeatureTable table, String prefix) {
+		ArrayList<String> completions = new ArrayList<String>();
+		for (PrefixIndex.Completion completion : table.complete(prefix, 10)) {
+			completions.add(completion.getName() + " " + completion.getCount());
+		}
+		return completions;
+	}
+
+	/**
+	 * Writes the exact values of every feature of a table that is not removed, sorted as Strings
+	 */
+	private static List<String> contents(FeatureTable table) {
+		ArrayList<Integer> rows = new ArrayList<Integer>();
+		if (table instanceof SegmentedTable) {
+			SegmentedTable segmented = (SegmentedTable) table;
+			int start = 0;
+			for (int i = 0; i < segmented.getSegmentCount(); i++) {
+				for (int row = 0; row < segmented.getSegment(i).size(); row++) {
+					if (segmented.getDeleted(i) == null || !segmented.getDeleted(i).get(row)) {
+						rows.add(start + row);
+					}
+				}
+				start += segmented.getSegment(i).size();
+			}
+		}
+		else {
+			for (int row = 0; row < table.size(); row++) {
+				rows.add(row);
+			}
+		}
+		List<String> features = describe(table, rows.stream().mapToInt(Integer::intValue).toArray());
+		features.sort(null);
+		return features;
+	}
+
+	/**
+	 * Writes the exact values of the features in the given rows
+	 */
+	private static List<String> describe(FeatureTable table, int[] rows) {
+		ArrayList<String> features = new ArrayList<String>();
+		for (int row : rows) {
+			features.add(table.getName(row) + "|" + table.getFeatureClass(row) + "|" + table.getState(row) + "|"
+					+ table.getCounty(row) + "|" + table.getLatitude(row) + "|" + table.getLongitude(row) + "|" + table.getElevation(row));
+		}
+		return features;
+	}
+
+	/**
+	 * Returns the distances of the given rows, rows at the same distance may come in either order
+	 */
+	private static double[] distancesOf(double[] distances, int[] rows) {
+		double[] result = new double[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			result[i] = distances[rows[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Creates random features, in the order they would be read from a file
+	 * @param n, the number of features
+	 * @return the features
+	 */
+	private List<Feature> features(int n) {
+		ArrayList<Feature> features = new ArrayList<Feature>();
+		for (int i = 0; i < n; i++) {
+			Location location = new Location(STATES[random.nextInt(STATES.length)], COUNTIES[random.nextInt(COUNTIES.length)]);
+			location.setLatitude(LATITUDES[random.nextInt(LATITUDES.length)]);
+			location.setLongitude(LONGITUDES[random.nextInt(LONGITUDES.length)]);
+			location.setElevation(ELEVATIONS[random.nextInt(ELEVATIONS.length)]);
+			features.add(new Feature(NAMES[random.nextInt(NAMES.length)], CLASSES[random.nextInt(CLASSES.length)], location));
+		}
+		return features;
+	}
+}
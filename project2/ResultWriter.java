@@ -0,0 +1,324 @@
+package project2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * The ResultWriter class writes the features found by a query straight from the columns of a FeatureTable,
+ * without creating Feature objects or a String per feature. Each feature is rendered into one reusable
+ * buffer that is copied to the output, and the output is flushed once per query.
+ *
+ * Three formats are supported:
+ * text, the way Feature.toString prints a feature, followed by an empty line and a line of dashes;
+ * tsv, one line per feature with the tab separated columns name, class, county, state, latitude, longitude, elevation;
+ * json, one JSON object per line with the fields name, class, county, state, latitude, longitude and elevation.
+ * In the tsv and json formats the query can be written as an extra first column or field,
+ * so that the results of many queries can be told apart. Tabs and line breaks in tsv values are written as spaces.
+ * Name completions are written as name (count) lines followed by an empty line, or with the columns or fields name and count.
+ * The groups of an aggregation are written the same way, with the grouped values separated by commas instead of the name
+ * (or one column or field per grouped column) and, for stats elev, the lowest, highest and average elevation.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class ResultWriter {
+
+	public static final String TEXT = "text";
+	public static final String TSV = "tsv";
+	public static final String JSON = "json";
+
+	private static final String LINE = System.lineSeparator();
+
+	private Writer out;
+	private String format;
+
+	//the feature being rendered, reused for every feature
+	private StringBuilder buffer = new StringBuilder(256);
+	private char[] chars = new char[256];
+
+	/**
+	 * Constructs a ResultWriter
+	 * @param out, where the features are written, should be buffered
+	 * @param format, one of TEXT, TSV or JSON
+	 * @throws IllegalArgumentException if an argument is null or the format is unknown
+	 */
+	public ResultWriter(Writer out, String format) throws IllegalArgumentException {
+		if (out == null) {
+			throw new IllegalArgumentException("Null Argument Error in ResultWriter");
+		}
+		if (!isFormat(format)) {
+			throw new IllegalArgumentException("Unknown Output Format " + format);
+		}
+		this.out = out;
+		//keeps the constant, so the format can be compared by reference for every row
+		this.format = TEXT.equals(format) ? TEXT : TSV.equals(format) ? TSV : JSON;
+	}
+
+	/**
+	 * Checks whether a format is supported
+	 * @param format, the format name
+	 * @return true for "text", "tsv" and "json", false otherwise
+	 */
+	public static boolean isFormat(String format) {
+		return TEXT.equals(format) || TSV.equals(format) || JSON.equals(format);
+	}
+
+	/**
+	 * Returns the format of this writer
+	 * @return one of TEXT, TSV or JSON
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Writes the features in the given rows, then flushes the output
+	 * @param store, the table the rows belong to
+	 * @param rows, the rows to write, in the order they are written
+	 * @param query, the query written with every feature in the tsv and json formats, or null to leave it out
+	 * @return the number of features written
+	 * @throws IOException if writing fails
+	 */
+	public int write(FeatureTable store, PrimitiveIterator.OfInt rows, String query) throws IOException {
+		int count = 0;
+		while (rows.hasNext()) {
+			write(store, rows.nextInt(), query);
+			count++;
+		}
+		out.flush();
+		return count;
+	}
+
+	/**
+	 * Writes the feature in one row, without flushing the output
+	 * @param store, the table the row belongs to
+	 * @param row, the row of the feature
+	 * @param query, the query written with the feature in the tsv and json formats, or null to leave it out
+	 * @throws IOException if writing fails
+	 */
+	public void write(FeatureTable store, int row, String query) throws IOException {
+		buffer.setLength(0);
+		if (format == TEXT) {
+			buffer.append(store.getName(row)).append(", ").append(store.getFeatureClass(row)).append('\n')
+				.append(store.getCounty(row)).append(", ").append(store.getState(row)).append('\n')
+				.append(store.getLatitude(row)).append(", ").append(store.getLongitude(row)).append(", ")
+				.append(store.getElevation(row)).append(LINE).append(LINE).append("-----------").append(LINE);
+		}
+		else if (format == TSV) {
+			if (query != null) {
+				tsv(query).append('\t');
+			}
+			tsv(store.getName(row)).append('\t');
+			tsv(store.getFeatureClass(row)).append('\t');
+			tsv(store.getCounty(row)).append('\t');
+			tsv(store.getState(row)).append('\t');
+			buffer.append(store.getLatitude(row)).append('\t').append(store.getLongitude(row)).append('\t')
+				.append(store.getElevation(row)).append(LINE);
+		}
+		else {
+			buffer.append('{');
+			if (query != null) {
+				buffer.append("\"query\":");
+				json(query).append(',');
+			}
+			buffer.append("\"name\":");
+			json(store.getName(row)).append(",\"class\":");
+			json(store.getFeatureClass(row)).append(",\"county\":");
+			json(store.getCounty(row)).append(",\"state\":");
+			json(store.getState(row)).append(",\"latitude\":").append(store.getLatitude(row))
+				.append(",\"longitude\":").append(store.getLongitude(row))
+				.append(",\"elevation\":").append(store.getElevation(row)).append('}').append(LINE);
+		}
+
+		//copies the buffer without creating a String
+		int length = buffer.length();
+		if (length > chars.length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		buffer.getChars(0, length, chars, 0);
+		out.write(chars, 0, length);
+	}
+
+	/**
+	 * Writes the completions of a name, then flushes the output
+	 * @param completions, the completions in the order they are written
+	 * @param query, the query written with every completion in the tsv and json formats, or null to leave it out
+	 * @return the number of completions written
+	 * @throws IOException if writing fails
+	 */
+	public int writeCompletions(List<PrefixIndex.Completion> completions, String query) throws IOException {
+		buffer.setLength(0);
+		for (PrefixIndex.Completion completion : completions) {
+			if (format == TEXT) {
+				buffer.append(completion.getName()).append(" (").append(completion.getCount()).append(')').append(LINE);
+			}
+			else if (format == TSV) {
+				if (query != null) {
+					tsv(query).append('\t');
+				}
+				tsv(completion.getName()).append('\t').append(completion.getCount()).append(LINE);
+			}
+			else {
+				buffer.append('{');
+				if (query != null) {
+					buffer.append("\"query\":");
+					json(query).append(',');
+				}
+				buffer.append("\"name\":");
+				json(completion.getName()).append(",\"count\":").append(completion.getCount()).append('}').append(LINE);
+			}
+		}
+		if (format == TEXT && !completions.isEmpty()) {
+			buffer.append(LINE);
+		}
+		out.append(buffer);
+		out.flush();
+		return completions.size();
+	}
+
+	/**
+	 * Writes the groups of an aggregation, then flushes the output
+	 * @param aggregation, the aggregation the groups were found by
+	 * @param groups, the groups in the order they are written
+	 * @param query, the query written with every group in the tsv and json formats, or null to leave it out
+	 * @return the number of groups written
+	 * @throws IOException if writing fails
+	 */
+	public int writeGroups(Aggregation aggregation, List<Aggregation.Group> groups, String query) throws IOException {
+		String[] columns = aggregation.getGroups();
+		buffer.setLength(0);
+		for (Aggregation.Group group : groups) {
+			String[] values = group.getValues();
+			//the average is rounded to one decimal place
+			double average = Math.round(group.getAverageElevation() * 10) / 10.0;
+			if (format == TEXT) {
+				buffer.append(String.join(", ", values)).append(" (").append(group.getCount()).append(')');
+				if (aggregation.isStats()) {
+					buffer.append(", elevation ").append(group.getMinElevation()).append(" to ").append(group.getMaxElevation())
+						.append(", average ").append(average);
+				}
+				buffer.append(LINE);
+			}
+			else if (format == TSV) {
+				if (query != null) {
+					tsv(query).append('\t');
+				}
+				for (String value : values) {
+					tsv(value).append('\t');
+				}
+				buffer.append(group.getCount());
+				if (aggregation.isStats()) {
+					buffer.append('\t').append(group.getMinElevation()).append('\t').append(group.getMaxElevation())
+						.append('\t').append(average);
+				}
+				buffer.append(LINE);
+			}
+			else {
+				buffer.append('{');
+				if (query != null) {
+					buffer.append("\"query\":");
+					json(query).append(',');
+				}
+				for (int k = 0; k < columns.length; k++) {
+					buffer.append('"').append(columns[k]).append("\":");
+					json(values[k]).append(',');
+				}
+				buffer.append("\"count\":").append(group.getCount());
+				if (aggregation.isStats()) {
+					buffer.append(",\"minElevation\":").append(group.getMinElevation())
+						.append(",\"maxElevation\":").append(group.getMaxElevation())
+						.append(",\"averageElevation\":").append(average);
+				}
+				buffer.append('}').append(LINE);
+			}
+		}
+		if (format == TEXT && !groups.isEmpty()) {
+			buffer.append(LINE);
+		}
+		out.append(buffer);
+		out.flush();
+		return groups.size();
+	}
+
+	/**
+	 * Writes a message that is not a result, such as an error, then flushes the output:
+	 * in the json format as an object with one field, otherwise as a line of text
+	 * @param field, the name of the field in the json format
+	 * @param text, the message
+	 * @throws IOException if writing fails
+	 */
+	public void writeMessage(String field, String text) throws IOException {
+		buffer.setLength(0);
+		if (format == JSON) {
+			buffer.append('{');
+			json(field).append(':');
+			json(text).append('}').append(LINE);
+		}
+		else {
+			buffer.append(text).append(LINE);
+		}
+		out.append(buffer);
+		out.flush();
+	}
+
+	/**
+	 * Writes text as it is, used for messages between the results
+	 * @param text, the text to write
+	 * @throws IOException if writing fails
+	 */
+	public void print(String text) throws IOException {
+		out.write(text);
+	}
+
+	/**
+	 * Flushes the output
+	 * @throws IOException if writing fails
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Appends a tsv value, with tabs and line breaks replaced by spaces
+	 * @return the buffer
+	 */
+	private StringBuilder tsv(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			buffer.append((c == '\t' || c == '\n' || c == '\r') ? ' ' : c);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Appends a quoted and escaped JSON string
+	 * @return the buffer
+	 */
+	private StringBuilder json(String value) {
+		buffer.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				buffer.append('\\').append(c);
+			}
+			else if (c == '\n') {
+				buffer.append("\\n");
+			}
+			else if (c == '\r') {
+				buffer.append("\\r");
+			}
+			else if (c == '\t') {
+				buffer.append("\\t");
+			}
+			else if (c < 0x20) {
+				buffer.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+			}
+			else {
+				buffer.append(c);
+			}
+		}
+		return buffer.append('"');
+	}
+}
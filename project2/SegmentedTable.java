@@ -0,0 +1,439 @@
+package project2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The SegmentedTable class is an immutable snapshot of a set of features kept in several segments:
+ * the store loaded from the GNIS file followed by the stores built from the rows added by deltas.
+ * Each segment has a bit set of its rows that were removed by later deltas.
+ * The rows of the table are numbered segment after segment, so row start[i] + r is row r of segment i.
+ *
+ * A query runs on every segment with its own indexes, skipping the removed rows, and the sorted
+ * results of the segments are merged in natural ordering of Feature elements (by distance for nearest searches).
+ * Name completions are merged from the completions of the segments, which come most used first,
+ * and the merge stops as soon as no name that was not seen yet can be used more than the ones found.
+ * Aggregations summarize every segment on its own and merge the groups with the same values.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class SegmentedTable implements FeatureTable {
+
+	private FeatureStore[] segments;
+	private BitSet[] deleted;
+	private int[] starts;
+	private int size;
+
+	/**
+	 * Constructs a SegmentedTable, the bit sets must not be changed afterwards
+	 * @param segments, the stores of the segments, the first one is the loaded store
+	 * @param deleted, the removed rows of each segment, or null for a segment without removed rows
+	 * @throws IllegalArgumentException if the arrays are null, empty or of different length
+	 */
+	public SegmentedTable(FeatureStore[] segments, BitSet[] deleted) throws IllegalArgumentException {
+		if (segments == null || deleted == null || segments.length == 0 || segments.length != deleted.length) {
+			throw new IllegalArgumentException("Invalid Segments");
+		}
+		this.segments = segments;
+		this.deleted = deleted;
+		starts = new int[segments.length];
+		long rows = 0;
+		for (int i = 0; i < segments.length; i++) {
+			if (rows > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Too Many Rows in Segments");
+			}
+			starts[i] = (int) rows;
+			rows += segments[i].size();
+			size += segments[i].size() - ((deleted[i] == null) ? 0 : deleted[i].cardinality());
+		}
+	}
+
+	/**
+	 * Returns the number of segments
+	 * @return the number of segments
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Returns the store of a segment
+	 * @param segment, the segment
+	 * @return the store
+	 */
+	public FeatureStore getSegment(int segment) {
+		return segments[segment];
+	}
+
+	/**
+	 * Returns the removed rows of a segment
+	 * @param segment, the segment
+	 * @return the bit set of the removed rows, or null if no row of the segment was removed; it must not be changed
+	 */
+	public BitSet getDeleted(int segment) {
+		return deleted[segment];
+	}
+
+	/**
+	 * Returns the number of features in this table, not counting removed rows
+	 * @return the number of features
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String getName(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getName(row - starts[segment]);
+	}
+
+	@Override
+	public String getFeatureClass(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getFeatureClass(row - starts[segment]);
+	}
+
+	@Override
+	public String getState(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getState(row - starts[segment]);
+	}
+
+	@Override
+	public String getCounty(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getCounty(row - starts[segment]);
+	}
+
+	@Override
+	public double getLatitude(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getLatitude(row - starts[segment]);
+	}
+
+	@Override
+	public double getLongitude(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getLongitude(row - starts[segment]);
+	}
+
+	@Override
+	public int getElevation(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getElevation(row - starts[segment]);
+	}
+
+	@Override
+	public Feature getFeature(int row) {
+		int segment = segmentOf(row);
+		return segments[segment].getFeature(row - starts[segment]);
+	}
+
+	@Override
+	public FeatureList getFeatures(int[] rows, int count, boolean sorted) {
+		if (count == 0) {
+			return null;
+		}
+		FeatureList list = new FeatureList();
+		list.ensureCapacity(count);
+		for (int i = 0; i < count; i++) {
+			list.add(getFeature(rows[i]));
+		}
+		return list;
+	}
+
+	/**
+	 * Runs a query on every segment and merges the results
+	 * @param query; the parsed query
+	 * @return the stream of the matching rows, in natural ordering of their features (closest first for a nearest search),
+	 * after the offset and up to the limit of the query
+	 * @throws IllegalArgumentException if query is null.
+	 */
+	@Override
+	public IntStream rowStream(Query query) throws IllegalArgumentException {
+
+		if (query == null) {
+			throw new IllegalArgumentException("Null Argument Error in SegmentedTable");
+		}
+
+		//every segment has to find the whole page, the merge skips the offset
+		int page = (int) Math.min((long) query.getOffset() + query.getLimit(), Integer.MAX_VALUE);
+		Query segmentQuery = query.page(0, page);
+		PrimitiveIterator.OfInt[] results = new PrimitiveIterator.OfInt[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			int start = starts[i];
+			results[i] = QueryPlan.of(segments[i], segmentQuery, deleted[i]).rowStream().map(row -> start + row).iterator();
+		}
+
+		PrimitiveIterator.OfInt merged = (segments.length == 1) ? results[0] : new Merge(results, query);
+		IntStream rows = StreamSupport.intStream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false);
+		if (query.isClosestFirst()) {
+			rows = rows.limit(Math.min(query.getCount(), page));
+		}
+		return rows.skip(query.getOffset()).limit(query.getLimit());
+	}
+
+	/**
+	 * Completes the beginning of a feature name, counting the features of every segment that were not removed
+	 * @param prefix, the beginning of the names, compared ignoring case
+	 * @param count, the largest number of completions returned
+	 * @return the distinct names (ignoring case) that start with the prefix, the ones used by the most features first
+	 * and names used by as many features in alphabetical order; the last completion may be one of several names
+	 * used by as many features
+	 * @throws IllegalArgumentException if prefix is null or empty or count is not positive.
+	 */
+	@Override
+	public List<PrefixIndex.Completion> complete(String prefix, int count) throws IllegalArgumentException {
+
+		if (prefix == null || prefix.equals("") || count <= 0) {
+			throw new IllegalArgumentException("Prefix Input is Illegal");
+		}
+
+		PrimitiveIterator.OfInt[] tops = new PrimitiveIterator.OfInt[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			tops[i] = segments[i].getPrefixIndex().top(prefix);
+		}
+
+		//every segment lists its names by the number of their rows, removed ones included, so that number is
+		//the most the name can have in the segment; a name not seen yet has at most the sum of the last numbers
+		HashMap<String, PrefixIndex.Completion> seen = new HashMap<String, PrefixIndex.Completion>();
+		PriorityQueue<PrefixIndex.Completion> best = new PriorityQueue<PrefixIndex.Completion>(
+				(a, b) -> (a.getCount() != b.getCount()) ? Integer.compare(a.getCount(), b.getCount())
+						: PrefixIndex.fold(b.getName()).compareTo(PrefixIndex.fold(a.getName())));
+		while (true) {
+			long threshold = 0;
+			boolean advanced = false;
+			for (int i = 0; i < segments.length; i++) {
+				if (!tops[i].hasNext()) {
+					continue;
+				}
+				PrefixIndex prefixes = segments[i].getPrefixIndex();
+				int entry = tops[i].nextInt();
+				threshold += prefixes.getCount(entry);
+				advanced = true;
+				String key = prefixes.getKey(entry);
+				if (!seen.containsKey(key)) {
+					PrefixIndex.Completion completion = completion(key);
+					seen.put(key, completion);
+					if (completion != null) {
+						best.add(completion);
+						if (best.size() > count) {
+							best.poll();
+						}
+					}
+				}
+			}
+			if (!advanced || (best.size() == count && best.peek().getCount() >= threshold)) {
+				break;
+			}
+		}
+
+		ArrayList<PrefixIndex.Completion> completions = new ArrayList<PrefixIndex.Completion>(best);
+		completions.sort(best.comparator().reversed());
+		return completions;
+	}
+
+	/**
+	 * Summarizes the features of every group of an aggregation, skipping the removed rows;
+	 * every segment is summarized with its own dictionaries and the groups with the same values are merged
+	 * @param aggregation, the parsed aggregation
+	 * @return the groups with at least one feature, ordered by their values
+	 * @throws IllegalArgumentException if aggregation is null.
+	 */
+	@Override
+	public List<Aggregation.Group> aggregate(Aggregation aggregation) throws IllegalArgumentException {
+		if (aggregation == null) {
+			throw new IllegalArgumentException("Null Argument Error in SegmentedTable");
+		}
+		ArrayList<Aggregation.Group> groups = new ArrayList<Aggregation.Group>();
+		for (int i = 0; i < segments.length; i++) {
+			groups.addAll(aggregation.run(segments[i], deleted[i]));
+		}
+		return Aggregation.combine(groups);
+	}
+
+	/**
+	 * Counts the rows of all segments whose name has the given key and that were not removed
+	 * @return the completion with the name of the first of these rows in natural ordering, as a single store
+	 * holding the same features names it, or null if there are none
+	 */
+	private PrefixIndex.Completion completion(String key) {
+		//the first row of the name over all segments, equal features keep the first segment
+		int best = -1;
+		int total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			PrefixIndex prefixes = segments[i].getPrefixIndex();
+			int entry = prefixes.find(key);
+			if (entry < 0) {
+				continue;
+			}
+			if (deleted[i] == null || !prefixes.isContiguous()) {
+				int before = total;
+				for (int j = 0; j < prefixes.getCount(entry); j++) {
+					int row = prefixes.getRow(entry, j);
+					if (deleted[i] == null || !deleted[i].get(row)) {
+						//the rows are increasing, so the first one left is the first in natural ordering
+						if (total == before && (best < 0 || compare(starts[i] + row, best) < 0)) {
+							best = starts[i] + row;
+						}
+						total++;
+						if (deleted[i] == null) {
+							total += prefixes.getCount(entry) - 1;
+							break;
+						}
+					}
+				}
+				continue;
+			}
+
+			//the rows of the name follow each other, so only its removed rows are visited
+			int first = prefixes.getRow(entry, 0);
+			int end = first + prefixes.getCount(entry);
+			int live = first;
+			int removed = 0;
+			for (int row = deleted[i].nextSetBit(first); row >= 0 && row < end; row = deleted[i].nextSetBit(row + 1)) {
+				if (row == live) {
+					live++;
+				}
+				removed++;
+			}
+			if (live < end) {
+				if (best < 0 || compare(starts[i] + live, best) < 0) {
+					best = starts[i] + live;
+				}
+				total += end - first - removed;
+			}
+		}
+		return (total == 0) ? null : new PrefixIndex.Completion(getName(best), total);
+	}
+
+	/**
+	 * Finds the segment holding a row
+	 * @return the segment
+	 */
+	private int segmentOf(int row) {
+		int found = Arrays.binarySearch(starts, row);
+		if (found < 0) {
+			return -found - 2;
+		}
+		//skips empty segments that start at the same row
+		while (found + 1 < starts.length && starts[found + 1] == row) {
+			found++;
+		}
+		return found;
+	}
+
+	/**
+	 * Compares the features in two rows like Feature.compareTo does
+	 * @return a negative number, zero or a positive number if the first feature is less than, equal to or greater than the second
+	 */
+	private int compare(int a, int b) {
+		int c = getName(a).compareToIgnoreCase(getName(b));
+		if (c != 0) {
+			return c;
+		}
+		c = getState(a).compareToIgnoreCase(getState(b));
+		if (c != 0) {
+			return c;
+		}
+		c = getCounty(a).compareToIgnoreCase(getCounty(b));
+		if (c != 0) {
+			return c;
+		}
+		c = Location.compare(getLatitude(a), getLongitude(a), getElevation(a), getLatitude(b), getLongitude(b), getElevation(b));
+		if (c != 0) {
+			return c;
+		}
+		return getFeatureClass(a).compareToIgnoreCase(getFeatureClass(b));
+	}
+
+	/**
+	 * Merges the ordered results of the segments, keeping the next row of each segment in a priority queue.
+	 * Rows at the same distance come out in natural ordering of their features, and rows that compare equal
+	 * in the order of Query.compareTies, like the rows of one segment.
+	 */
+	private class Merge implements PrimitiveIterator.OfInt {
+
+		private PrimitiveIterator.OfInt[] results;
+		private PriorityQueue<Head> heads = new PriorityQueue<Head>();
+		private Query query;
+
+		Merge(PrimitiveIterator.OfInt[] results, Query query) {
+			this.results = results;
+			this.query = query;
+			for (int i = 0; i < results.length; i++) {
+				advance(i);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public int nextInt() {
+			Head head = heads.poll();
+			if (head == null) {
+				throw new NoSuchElementException();
+			}
+			advance(head.segment);
+			return head.row;
+		}
+
+		/**
+		 * Puts the next row of a segment in the queue, if it has one
+		 */
+		private void advance(int segment) {
+			if (results[segment].hasNext()) {
+				int row = results[segment].nextInt();
+				double distance = query.isClosestFirst()
+						? SpatialIndex.distance(query.getLatitude(), query.getLongitude(), getLatitude(row), getLongitude(row))
+						: 0;
+				heads.add(new Head(segment, row, distance));
+			}
+		}
+
+		/**
+		 * The next row of one segment
+		 */
+		private class Head implements Comparable<Head> {
+
+			private int segment;
+			private int row;
+			private double distance;
+
+			//sort key of the name, so most heads are ordered without comparing the names
+			private long nameKey;
+
+			Head(int segment, int row, double distance) {
+				this.segment = segment;
+				this.row = row;
+				this.distance = distance;
+				nameKey = Location.sortKey(getName(row));
+			}
+
+			@Override
+			public int compareTo(Head o) {
+				int c = query.isClosestFirst() ? Double.compare(distance, o.distance) : 0;
+				if (c == 0) {
+					c = (nameKey != o.nameKey) ? Long.compareUnsigned(nameKey, o.nameKey) : compare(row, o.row);
+				}
+				return (c != 0) ? c : query.compareTies(row, o.row);
+			}
+		}
+	}
+}
@@ -0,0 +1,563 @@
+package project2;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * The SpatialIndex class is a k-d tree over the latitude and longitude of the rows of a FeatureStore,
+ * used to find the features within a distance of a point or inside a latitude/longitude box
+ * without looking at every row.
+ *
+ * The tree is stored implicitly in one array of rows: the node covering order[lo..hi) keeps its
+ * splitting row at the middle position, rows before it are not greater in the split coordinate and
+ * rows after it are not smaller. The split coordinate alternates between latitude and longitude.
+ * Distances are great circle (haversine) distances in kilometers.
+ * Nearest neighbour searches visit the nodes best first, closest lower bound first, and keep the k closest
+ * rows found so far in a bounded heap; they stop as soon as no unvisited node can hold a closer row.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class SpatialIndex {
+
+	//mean radius of the earth in kilometers
+	public static final double EARTH_RADIUS_KM = 6371.0088;
+
+	//nodes with at most this many rows are scanned instead of split
+	private static final int LEAF_SIZE = 8;
+
+	//slack for rounding in the distance bounds, so that no row on the edge of the radius is missed
+	private static final double SLACK = 1e-9;
+
+	private double[] latitudes;
+	private double[] longitudes;
+	private int[] order;
+
+	/**
+	 * Constructs a SpatialIndex from an already built tree
+	 * @param latitudes, the latitude of every row
+	 * @param longitudes, the longitude of every row
+	 * @param order, the rows in tree order
+	 */
+	public SpatialIndex(double[] latitudes, double[] longitudes, int[] order) {
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.order = order;
+	}
+
+	/**
+	 * Builds the tree over the given coordinates
+	 * @param latitudes, the latitude of every row
+	 * @param longitudes, the longitude of every row
+	 * @return the index
+	 */
+	public static SpatialIndex of(double[] latitudes, double[] longitudes) {
+		int[] order = new int[latitudes.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		SpatialIndex index = new SpatialIndex(latitudes, longitudes, order);
+		index.build(0, order.length, 0);
+		return index;
+	}
+
+	/**
+	 * Returns the rows in tree order
+	 * @return the tree array
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * Finds the rows within the given distance of a point
+	 * @param lat, latitude of the point
+	 * @param lon, longitude of the point
+	 * @param radiusKm, the distance in kilometers
+	 * @return increasing array of the rows within the distance
+	 */
+	public int[] near(double lat, double lon, double radiusKm) {
+		return near(lat, lon, radiusKm, null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the smallest rows within the given distance of a point among the rows accepted by the filter
+	 * @param lat, latitude of the point
+	 * @param lon, longitude of the point
+	 * @param radiusKm, the distance in kilometers
+	 * @param filter, accepts the rows that may be returned, or null to accept every row
+	 * @param limit, the largest number of rows returned
+	 * @return increasing array of the first limit accepted rows within the distance
+	 */
+	public int[] near(double lat, double lon, double radiusKm, IntPredicate filter, int limit) {
+		Rows found = new Rows(filter, limit);
+		near(0, order.length, 0, -90, 90, -180, 180, lat, lon, radiusKm, found);
+		return found.sorted();
+	}
+
+	/**
+	 * Finds the rows inside a latitude/longitude box, edges included
+	 * @param minLat, southern edge
+	 * @param minLon, western edge
+	 * @param maxLat, northern edge
+	 * @param maxLon, eastern edge
+	 * @return increasing array of the rows inside the box
+	 */
+	public int[] inBox(double minLat, double minLon, double maxLat, double maxLon) {
+		return inBox(minLat, minLon, maxLat, maxLon, null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the smallest rows inside a latitude/longitude box, edges included, among the rows accepted by the filter
+	 * @param minLat, southern edge
+	 * @param minLon, western edge
+	 * @param maxLat, northern edge
+	 * @param maxLon, eastern edge
+	 * @param filter, accepts the rows that may be returned, or null to accept every row
+	 * @param limit, the largest number of rows returned
+	 * @return increasing array of the first limit accepted rows inside the box
+	 */
+	public int[] inBox(double minLat, double minLon, double maxLat, double maxLon, IntPredicate filter, int limit) {
+		Rows found = new Rows(filter, limit);
+		inBox(0, order.length, 0, minLat, minLon, maxLat, maxLon, found);
+		return found.sorted();
+	}
+
+	/**
+	 * Finds the k rows closest to a point among the rows accepted by the filter
+	 * @param lat, latitude of the point
+	 * @param lon, longitude of the point
+	 * @param k, the number of rows to find, at most the number of rows in the tree are found
+	 * @param filter, accepts the rows that may be returned, or null to accept every row
+	 * @return the closest rows, closest first; rows at the same distance are in increasing order
+	 */
+	public int[] nearest(double lat, double lon, int k, IntPredicate filter) {
+
+		//the heap is allocated up front, so it is never larger than the tree
+		k = Math.min(k, order.length);
+		Closest closest = new Closest(k);
+		if (k <= 0) {
+			return closest.rows();
+		}
+		PriorityQueue<Node> queue = new PriorityQueue<Node>();
+		queue.add(new Node(0, order.length, 0, -90, 90, -180, 180, 0));
+
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			//every remaining node is at least this far, so none of them holds a closer row
+			if (closest.isFull() && node.bound > closest.farthest() * (1 + SLACK) + SLACK) {
+				break;
+			}
+			if (node.hi - node.lo <= LEAF_SIZE) {
+				for (int i = node.lo; i < node.hi; i++) {
+					offer(order[i], lat, lon, filter, closest);
+				}
+				continue;
+			}
+
+			int mid = (node.lo + node.hi) >>> 1;
+			offer(order[mid], lat, lon, filter, closest);
+			double split = key(order[mid], node.depth);
+			Node left;
+			Node right;
+			if (node.depth % 2 == 0) {
+				left = new Node(node.lo, mid, node.depth + 1, node.minLat, split, node.minLon, node.maxLon, 0);
+				right = new Node(mid + 1, node.hi, node.depth + 1, split, node.maxLat, node.minLon, node.maxLon, 0);
+			}
+			else {
+				left = new Node(node.lo, mid, node.depth + 1, node.minLat, node.maxLat, node.minLon, split, 0);
+				right = new Node(mid + 1, node.hi, node.depth + 1, node.minLat, node.maxLat, split, node.maxLon, 0);
+			}
+			for (Node child : new Node[] {left, right}) {
+				if (child.lo < child.hi) {
+					child.bound = lowerBound(lat, lon, child.minLat, child.maxLat, child.minLon, child.maxLon);
+					if (!closest.isFull() || child.bound <= closest.farthest() * (1 + SLACK) + SLACK) {
+						queue.add(child);
+					}
+				}
+			}
+		}
+		return closest.rows();
+	}
+
+	/**
+	 * Offers a row to the heap of closest rows if the filter accepts it
+	 */
+	private void offer(int row, double lat, double lon, IntPredicate filter, Closest closest) {
+		if (filter == null || filter.test(row)) {
+			closest.offer(row, distance(lat, lon, latitudes[row], longitudes[row]));
+		}
+	}
+
+	/**
+	 * Computes the great circle distance between two points
+	 * @return the distance in kilometers
+	 */
+	public static double distance(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	/**
+	 * Computes a lower bound of the distance from a point to any point inside a latitude/longitude box.
+	 * Reaching the box means crossing one of its edges: a parallel, which is at least the latitude difference away,
+	 * or a meridian, which is at least the distance to the great circle through that meridian away.
+	 * @return the lower bound in kilometers
+	 */
+	static double lowerBound(double lat, double lon, double minLat, double maxLat, double minLon, double maxLon) {
+
+		double latGap = (lat < minLat) ? minLat - lat : (lat > maxLat) ? lat - maxLat : 0;
+		double bound = EARTH_RADIUS_KM * Math.toRadians(latGap);
+
+		if (lon < minLon || lon > maxLon) {
+			double cosLat = Math.abs(Math.cos(Math.toRadians(lat)));
+			double toWest = Math.abs(Math.sin(Math.toRadians(lon - minLon)));
+			double toEast = Math.abs(Math.sin(Math.toRadians(lon - maxLon)));
+			double cross = EARTH_RADIUS_KM * Math.asin(Math.min(1, cosLat * Math.min(toWest, toEast)));
+			bound = Math.max(bound, cross);
+		}
+		return bound;
+	}
+
+	/**
+	 * Returns the coordinate of a row that the nodes at the given depth are split by.
+	 * -0.0 is read as 0.0 and NaN as positive infinity, so that the keys can be ordered with < and >.
+	 */
+	private double key(int row, int depth) {
+		double value = (depth % 2 == 0) ? latitudes[row] : longitudes[row];
+		return (value != value) ? Double.POSITIVE_INFINITY : value + 0.0;
+	}
+
+	/**
+	 * Arranges order[lo..hi) into a tree, splitting on latitude at even depths and on longitude at odd depths
+	 */
+	private void build(int lo, int hi, int depth) {
+		while (hi - lo > LEAF_SIZE) {
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi, mid, depth);
+			build(lo, mid, depth + 1);
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	/**
+	 * Moves the row with the k-th smallest key of order[lo..hi) to position k, smaller or equal keys before it
+	 * and greater or equal keys after it (quickselect)
+	 */
+	private void select(int lo, int hi, int k, int depth) {
+		int left = lo;
+		int right = hi - 1;
+		while (left < right) {
+			//median of three as the pivot keeps sorted input from being quadratic
+			int mid = (left + right) >>> 1;
+			double a = key(order[left], depth);
+			double b = key(order[mid], depth);
+			double c = key(order[right], depth);
+			double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (key(order[i], depth) < pivot) {
+					i++;
+				}
+				while (key(order[j], depth) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				left = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Collects the rows of order[lo..hi) within the radius, the node covers the given box
+	 */
+	private void near(int lo, int hi, int depth, double minLat, double maxLat, double minLon, double maxLon,
+			double lat, double lon, double radiusKm, Rows found) {
+
+		while (lo < hi) {
+			if (lowerBound(lat, lon, minLat, maxLat, minLon, maxLon) > radiusKm * (1 + SLACK) + SLACK) {
+				return;
+			}
+			if (hi - lo <= LEAF_SIZE) {
+				for (int i = lo; i < hi; i++) {
+					int row = order[i];
+					if (distance(lat, lon, latitudes[row], longitudes[row]) <= radiusKm) {
+						found.add(row);
+					}
+				}
+				return;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			int row = order[mid];
+			if (distance(lat, lon, latitudes[row], longitudes[row]) <= radiusKm) {
+				found.add(row);
+			}
+			double split = key(row, depth);
+			if (depth % 2 == 0) {
+				near(lo, mid, depth + 1, minLat, split, minLon, maxLon, lat, lon, radiusKm, found);
+				minLat = split;
+			}
+			else {
+				near(lo, mid, depth + 1, minLat, maxLat, minLon, split, lat, lon, radiusKm, found);
+				minLon = split;
+			}
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	/**
+	 * Collects the rows of order[lo..hi) inside the query box
+	 */
+	private void inBox(int lo, int hi, int depth, double minLat, double minLon, double maxLat, double maxLon, Rows found) {
+
+		while (lo < hi) {
+			if (hi - lo <= LEAF_SIZE) {
+				for (int i = lo; i < hi; i++) {
+					if (contains(order[i], minLat, minLon, maxLat, maxLon)) {
+						found.add(order[i]);
+					}
+				}
+				return;
+			}
+
+			int mid = (lo + hi) >>> 1;
+			int row = order[mid];
+			if (contains(row, minLat, minLon, maxLat, maxLon)) {
+				found.add(row);
+			}
+			double split = key(row, depth);
+			double min = (depth % 2 == 0) ? minLat : minLon;
+			double max = (depth % 2 == 0) ? maxLat : maxLon;
+			//only the sides of the split that can hold keys inside the box are visited
+			if (min <= split) {
+				if (max >= split) {
+					inBox(lo, mid, depth + 1, minLat, minLon, maxLat, maxLon, found);
+				}
+				else {
+					hi = mid;
+					depth++;
+					continue;
+				}
+			}
+			else if (max < split) {
+				return;
+			}
+			lo = mid + 1;
+			depth++;
+		}
+	}
+
+	/**
+	 * Checks whether a row is inside the box, edges included
+	 */
+	private boolean contains(int row, double minLat, double minLon, double maxLat, double maxLon) {
+		return latitudes[row] >= minLat && latitudes[row] <= maxLat && longitudes[row] >= minLon && longitudes[row] <= maxLon;
+	}
+
+	/**
+	 * A node of the tree waiting to be visited, ordered by the lower bound of its distance to the query point
+	 */
+	private static class Node implements Comparable<Node> {
+
+		int lo;
+		int hi;
+		int depth;
+		double minLat;
+		double maxLat;
+		double minLon;
+		double maxLon;
+		double bound;
+
+		Node(int lo, int hi, int depth, double minLat, double maxLat, double minLon, double maxLon, double bound) {
+			this.lo = lo;
+			this.hi = hi;
+			this.depth = depth;
+			this.minLat = minLat;
+			this.maxLat = maxLat;
+			this.minLon = minLon;
+			this.maxLon = maxLon;
+			this.bound = bound;
+		}
+
+		@Override
+		public int compareTo(Node o) {
+			return Double.compare(bound, o.bound);
+		}
+	}
+
+	/**
+	 * Bounded max heap holding the k closest rows found so far; the farthest of them is at the top
+	 */
+	static class Closest {
+
+		private int[] rows;
+		private double[] distances;
+		private int size = 0;
+
+		Closest(int k) {
+			rows = new int[Math.max(k, 0)];
+			distances = new double[Math.max(k, 0)];
+		}
+
+		boolean isFull() {
+			return size == rows.length;
+		}
+
+		double farthest() {
+			return distances[0];
+		}
+
+		/**
+		 * Adds the row if the heap is not full or the row is closer than the farthest row in it
+		 */
+		void offer(int row, double distance) {
+			if (distance != distance) {
+				return;
+			}
+			if (size < rows.length) {
+				//sifts the new row up from the bottom
+				int i = size++;
+				while (i > 0 && after(distance, row, distances[(i - 1) / 2], rows[(i - 1) / 2])) {
+					rows[i] = rows[(i - 1) / 2];
+					distances[i] = distances[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				rows[i] = row;
+				distances[i] = distance;
+			}
+			else if (size > 0 && after(distances[0], rows[0], distance, row)) {
+				//replaces the farthest row and sifts the new row down
+				int i = 0;
+				while (2 * i + 1 < size) {
+					int child = 2 * i + 1;
+					if (child + 1 < size && after(distances[child + 1], rows[child + 1], distances[child], rows[child])) {
+						child++;
+					}
+					if (!after(distances[child], rows[child], distance, row)) {
+						break;
+					}
+					rows[i] = rows[child];
+					distances[i] = distances[child];
+					i = child;
+				}
+				rows[i] = row;
+				distances[i] = distance;
+			}
+		}
+
+		/**
+		 * Returns the rows in the heap, closest first
+		 */
+		int[] rows() {
+			int[] sorted = new int[size];
+			for (int i = 0; i < size; i++) {
+				sorted[i] = i;
+			}
+			IntSort.sort(sorted, 0, size, (a, b) -> after(distances[a], rows[a], distances[b], rows[b]) ? 1
+					: after(distances[b], rows[b], distances[a], rows[a]) ? -1 : 0);
+			int[] result = new int[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = rows[sorted[i]];
+			}
+			return result;
+		}
+
+		/**
+		 * Checks whether a row at distance d1 comes after a row at distance d2, rows at the same distance by row
+		 */
+		private static boolean after(double d1, int row1, double d2, int row2) {
+			return d1 > d2 || (d1 == d2 && row1 > row2);
+		}
+	}
+
+	/**
+	 * Growable array of found rows, keeping only the rows accepted by the filter.
+	 * Once limit rows are found it becomes a max-heap that keeps the limit smallest rows, so that a
+	 * search for the first rows in natural ordering uses memory for the rows returned only.
+	 */
+	private static class Rows {
+
+		private IntPredicate filter;
+		private int limit;
+		private int[] rows = new int[64];
+		private int size = 0;
+		private boolean heap = false;
+
+		Rows(IntPredicate filter, int limit) {
+			this.filter = filter;
+			this.limit = limit;
+		}
+
+		void add(int row) {
+			if (limit <= 0 || (filter != null && !filter.test(row))) {
+				return;
+			}
+			if (size < limit) {
+				if (size == rows.length) {
+					rows = Arrays.copyOf(rows, (int) Math.min((long) size * 2, limit));
+				}
+				rows[size++] = row;
+				return;
+			}
+			if (!heap) {
+				for (int i = size / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+				heap = true;
+			}
+			//replaces the largest kept row
+			if (row < rows[0]) {
+				rows[0] = row;
+				siftDown(0);
+			}
+		}
+
+		int[] sorted() {
+			int[] result = Arrays.copyOf(rows, size);
+			Arrays.sort(result);
+			return result;
+		}
+
+		/**
+		 * Moves the row at position i down the max-heap until both children are smaller
+		 */
+		private void siftDown(int i) {
+			int row = rows[i];
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && rows[child + 1] > rows[child]) {
+					child++;
+				}
+				if (rows[child] <= row) {
+					break;
+				}
+				rows[i] = rows[child];
+				i = child;
+			}
+			rows[i] = row;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package project2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The StringCache class canonicalizes the text values read from a file: it is a hash table from UTF-8 bytes
+ * to String, so that each repeated value is decoded only once and every row with that value shares one String.
+ * The bytes of the distinct values are kept one after another in a single growing byte array (the arena),
+ * and a slot of the table holds only the offset and length of its value in the arena, so the table adds
+ * no object per value besides the String itself.
+ *
+ * @author Eugene Chang
+ * @version 10/12/2021
+ */
+public class StringCache {
+
+	private byte[] arena = new byte[1 << 12];
+	private int used = 0;
+
+	//offset and length in the arena and String of every slot, lengths[slot] is -1 for an empty slot
+	private int[] offsets = new int[1 << 10];
+	private int[] lengths = new int[1 << 10];
+	private String[] values = new String[1 << 10];
+	private int[] hashes = new int[1 << 10];
+	private int size = 0;
+
+	/**
+	 * Default constructor for the StringCache
+	 * Constructs an empty StringCache.
+	 */
+	public StringCache() {
+		Arrays.fill(lengths, -1);
+	}
+
+	/**
+	 * Returns the number of distinct values decoded so far
+	 * @return the number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the String of bytes[0..length), decoding it only the first time it is seen
+	 * @param bytes, UTF-8 bytes
+	 * @param length, the number of bytes of the value
+	 * @return the shared String of the value
+	 */
+	public String get(byte[] bytes, int length) {
+		return get(bytes, 0, length);
+	}
+
+	/**
+	 * Returns the String of bytes[offset..offset + length), decoding it only the first time it is seen
+	 * @param bytes, UTF-8 bytes
+	 * @param offset, the first byte of the value
+	 * @param length, the number of bytes of the value
+	 * @return the shared String of the value
+	 */
+	public String get(byte[] bytes, int offset, int length) {
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + bytes[i];
+		}
+		int mask = lengths.length - 1;
+		int i = (hash ^ (hash >>> 16)) & mask;
+		while (lengths[i] >= 0) {
+			if (hashes[i] == hash && Arrays.equals(arena, offsets[i], offsets[i] + lengths[i], bytes, offset, offset + length)) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+
+		if (used + length > arena.length) {
+			arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(used + (long) length, 2L * arena.length)));
+		}
+		System.arraycopy(bytes, offset, arena, used, length);
+		offsets[i] = used;
+		lengths[i] = length;
+		hashes[i] = hash;
+		values[i] = new String(bytes, offset, length, StandardCharsets.UTF_8);
+		used += length;
+		String value = values[i];
+		size++;
+		if (size * 2 > lengths.length) {
+			grow();
+		}
+		return value;
+	}
+
+	/**
+	 * Doubles the table, placing the values again
+	 */
+	private void grow() {
+		int[] oldOffsets = offsets;
+		int[] oldLengths = lengths;
+		String[] oldValues = values;
+		int[] oldHashes = hashes;
+		offsets = new int[oldLengths.length * 2];
+		lengths = new int[oldLengths.length * 2];
+		values = new String[oldLengths.length * 2];
+		hashes = new int[oldLengths.length * 2];
+		Arrays.fill(lengths, -1);
+		int mask = lengths.length - 1;
+		for (int j = 0; j < oldLengths.length; j++) {
+			if (oldLengths[j] >= 0) {
+				int i = (oldHashes[j] ^ (oldHashes[j] >>> 16)) & mask;
+				while (lengths[i] >= 0) {
+					i = (i + 1) & mask;
+				}
+				offsets[i] = oldOffsets[j];
+				lengths[i] = oldLengths[j];
+				values[i] = oldValues[j];
+				hashes[i] = oldHashes[j];
+			}
+		}
+	}
+}